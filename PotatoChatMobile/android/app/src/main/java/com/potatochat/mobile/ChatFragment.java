@@ -1,20 +1,163 @@
 package com.potatochat.mobile;
 
 import android.os.Bundle;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import androidx.recyclerview.widget.SimpleItemAnimator;
+import com.potatochat.mobile.models.ChatMessage;
+import com.potatochat.mobile.models.ChatRoom;
+import com.potatochat.mobile.services.ApiService;
+import com.potatochat.mobile.services.ChatRepository;
+import java.util.List;
 
 public class ChatFragment extends Fragment {
-    
+    private static final String TAG = "ChatFragment";
+    private static final String ARG_ROOM_ID = "room_id";
+    // 距离两端还剩多少条时开始加载下一页
+    private static final int PREFETCH_DISTANCE = 15;
+
+    private RecyclerView messageList;
+    private LinearLayoutManager layoutManager;
+    private ChatMessageAdapter adapter;
+    private ChatViewModel viewModel;
+
+    private final ChatTimeline.Listener timelineListener = new ChatTimeline.Listener() {
+        @Override
+        public void onMessagesChanged(List<ChatMessage> messages) {
+            boolean atBottom = isAtBottom();
+            adapter.submitList(messages, () -> {
+                // 停在底部时跟随新消息
+                if (atBottom && adapter.getItemCount() > 0) {
+                    messageList.scrollToPosition(adapter.getItemCount() - 1);
+                }
+                loadMoreIfNeeded();
+            });
+        }
+
+        @Override
+        public void onError(String error) {
+            Log.e(TAG, "Load messages error: " + error);
+        }
+    };
+
+    public static ChatFragment newInstance(String roomId) {
+        ChatFragment fragment = new ChatFragment();
+        Bundle args = new Bundle();
+        args.putString(ARG_ROOM_ID, roomId);
+        fragment.setArguments(args);
+        return fragment;
+    }
+
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.fragment_chat, container, false);
+
+        messageList = view.findViewById(R.id.message_list);
+        layoutManager = new LinearLayoutManager(requireContext());
+        layoutManager.setStackFromEnd(true);
+        messageList.setLayoutManager(layoutManager);
+        messageList.setHasFixedSize(true);
+        messageList.setRecycledViewPool(ChatMessageAdapter.sharedPool());
+        // 新消息只做插入动画，内容变化不做交叉淡入
+        if (messageList.getItemAnimator() instanceof SimpleItemAnimator) {
+            ((SimpleItemAnimator) messageList.getItemAnimator()).setSupportsChangeAnimations(false);
+        }
+        adapter = new ChatMessageAdapter();
+        messageList.setAdapter(adapter);
+        messageList.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                loadMoreIfNeeded();
+            }
+        });
+
+        // 重建视图时时间线还在，直接拿到已加载的消息
+        viewModel = new ViewModelProvider(requireActivity()).get(ChatViewModel.class);
+        viewModel.attach(timelineListener);
+
+        Bundle args = getArguments();
+        if (args != null && args.getString(ARG_ROOM_ID) != null) {
+            openRoom(args.getString(ARG_ROOM_ID));
+        } else if (viewModel.getRoomId() == null) {
+            openFirstRoom();
+        }
         return view;
     }
-}
 
+    // 聊天标签页没有指定聊天室时打开列表中的第一个，列表通常已由启动预取拿到
+    private void openFirstRoom() {
+        StartupOrchestrator startup = StartupOrchestrator.get();
+        if (startup == null) {
+            return;
+        }
+        startup.getChatRooms(new ApiService.ApiListCallback<ChatRoom>() {
+            @Override
+            public void onSuccess(List<ChatRoom> rooms) {
+                if (getView() != null && viewModel.getRoomId() == null && !rooms.isEmpty()) {
+                    openRoom(rooms.get(0).getId());
+                }
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.e(TAG, "Load chat rooms error: " + error);
+            }
+        });
+    }
+
+    public void openRoom(String roomId) {
+        if (!roomId.equals(viewModel.getRoomId())) {
+            adapter.submitList(null, null);
+        }
+        viewModel.openRoom(roomId, ChatRepository.getInstance(requireContext()));
+    }
+
+    // ViewPager2 只让当前页进入 RESUMED，其他页的时间线暂停提交列表
+    @Override
+    public void onResume() {
+        super.onResume();
+        viewModel.setVisible(true);
+    }
+
+    @Override
+    public void onPause() {
+        viewModel.setVisible(false);
+        super.onPause();
+    }
+
+    private boolean isAtBottom() {
+        int count = adapter.getItemCount();
+        return count == 0 || layoutManager.findLastVisibleItemPosition() >= count - 1;
+    }
+
+    private void loadMoreIfNeeded() {
+        ChatTimeline timeline = viewModel.getTimeline();
+        if (timeline == null || adapter.getItemCount() == 0) {
+            return;
+        }
+        if (layoutManager.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE) {
+            timeline.loadOlder();
+        }
+        if (layoutManager.findLastVisibleItemPosition() >= adapter.getItemCount() - 1 - PREFETCH_DISTANCE) {
+            timeline.loadNewer();
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        // 时间线由 ChatViewModel 持有，只解除绑定
+        viewModel.detach();
+        // 把 ViewHolder 还给共享池
+        messageList.setAdapter(null);
+        super.onDestroyView();
+    }
+}
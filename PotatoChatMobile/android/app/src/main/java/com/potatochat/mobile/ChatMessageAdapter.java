@@ -0,0 +1,132 @@
+package com.potatochat.mobile;
+
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.TextView;
+import androidx.annotation.NonNull;
+import androidx.appcompat.widget.AppCompatTextView;
+import androidx.core.text.PrecomputedTextCompat;
+import androidx.core.widget.TextViewCompat;
+import androidx.recyclerview.widget.AdapterListUpdateCallback;
+import androidx.recyclerview.widget.AsyncDifferConfig;
+import androidx.recyclerview.widget.AsyncListDiffer;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.RecyclerView;
+import com.potatochat.mobile.models.ChatMessage;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+// 聊天消息列表适配器：DiffUtil 在后台线程计算差异，正文排版在后台线程预先完成
+public class ChatMessageAdapter extends RecyclerView.Adapter<ChatMessageAdapter.MessageViewHolder> {
+    private static final int VIEW_TYPE_MESSAGE = 0;
+
+    // 所有聊天室共用一个 ViewHolder 池，切换房间时不必重新 inflate
+    private static final RecyclerView.RecycledViewPool SHARED_POOL = new RecyclerView.RecycledViewPool();
+    private static final Executor DIFF_EXECUTOR = Executors.newSingleThreadExecutor();
+    private static final Executor TEXT_EXECUTOR = Executors.newSingleThreadExecutor();
+
+    static {
+        SHARED_POOL.setMaxRecycledViews(VIEW_TYPE_MESSAGE, 30);
+    }
+
+    private static final DiffUtil.ItemCallback<ChatMessage> DIFF_CALLBACK = new DiffUtil.ItemCallback<ChatMessage>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull ChatMessage oldItem, @NonNull ChatMessage newItem) {
+            return oldItem.getId().equals(newItem.getId());
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull ChatMessage oldItem, @NonNull ChatMessage newItem) {
+            return oldItem.getTimestamp() == newItem.getTimestamp()
+                    && equals(oldItem.getContent(), newItem.getContent())
+                    && equals(oldItem.getSenderName(), newItem.getSenderName());
+        }
+
+        private boolean equals(String a, String b) {
+            return a == null ? b == null : a.equals(b);
+        }
+    };
+
+    private final AsyncListDiffer<ChatMessage> differ = new AsyncListDiffer<>(
+            new AdapterListUpdateCallback(this),
+            new AsyncDifferConfig.Builder<>(DIFF_CALLBACK).setBackgroundThreadExecutor(DIFF_EXECUTOR).build());
+    // 只在主线程使用
+    private final SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm", Locale.getDefault());
+    private final Date date = new Date();
+
+    public ChatMessageAdapter() {
+        setHasStableIds(true);
+    }
+
+    public static RecyclerView.RecycledViewPool sharedPool() {
+        return SHARED_POOL;
+    }
+
+    // 差异计算完成并应用后回调 onCommitted
+    public void submitList(List<ChatMessage> messages, Runnable onCommitted) {
+        differ.submitList(messages, onCommitted);
+    }
+
+    public ChatMessage getItem(int position) {
+        return differ.getCurrentList().get(position);
+    }
+
+    @Override
+    public int getItemCount() {
+        return differ.getCurrentList().size();
+    }
+
+    @Override
+    public int getItemViewType(int position) {
+        return VIEW_TYPE_MESSAGE;
+    }
+
+    // 消息 id 的 64 位哈希作为稳定 id，不需要额外保存 id 映射
+    @Override
+    public long getItemId(int position) {
+        String id = getItem(position).getId();
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    @NonNull
+    @Override
+    public MessageViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_chat_message, parent, false);
+        return new MessageViewHolder(view);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull MessageViewHolder holder, int position) {
+        ChatMessage message = getItem(position);
+        holder.senderView.setText(message.getSenderName());
+        date.setTime(message.getTimestamp());
+        holder.timeView.setText(timeFormat.format(date));
+
+        String content = message.getContent() != null ? message.getContent() : "";
+        holder.contentView.setTextFuture(PrecomputedTextCompat.getTextFuture(
+                content, TextViewCompat.getTextMetricsParams(holder.contentView), TEXT_EXECUTOR));
+    }
+
+    static class MessageViewHolder extends RecyclerView.ViewHolder {
+        final TextView senderView;
+        final TextView timeView;
+        final AppCompatTextView contentView;
+
+        MessageViewHolder(@NonNull View itemView) {
+            super(itemView);
+            senderView = itemView.findViewById(R.id.message_sender);
+            timeView = itemView.findViewById(R.id.message_time);
+            contentView = itemView.findViewById(R.id.message_content);
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package com.potatochat.mobile;
+
+import com.potatochat.mobile.models.ChatMessage;
+import com.potatochat.mobile.services.ApiService;
+import com.potatochat.mobile.services.ChatRepository;
+import com.potatochat.mobile.services.RequestHandle;
+import com.potatochat.mobile.services.RequestScheduler;
+import com.potatochat.mobile.utils.MainThreadDispatcher;
+import com.potatochat.mobile.utils.SubscriptionIndex;
+import com.potatochat.mobile.utils.WebSocketManager;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+// 聊天时间线的分页窗口：向上加载更早的页，向下加载更新的页
+// 打开时经 ChatRepository 先显示本地存储的最近消息，再补上增量同步回来的新消息，作为最新一页
+// 内存中最多保留 MAX_MESSAGES 条，超出时丢弃离视口最远的一页
+// 停在最新一页时，实时推送和续传补拉的消息直接追加到末尾
+// 除构造外所有方法都在主线程调用
+class ChatTimeline {
+    static final int PAGE_SIZE = 50;
+    private static final int MAX_PAGES = 6;
+    private static final int MAX_MESSAGES = PAGE_SIZE * MAX_PAGES;
+
+    private static final Comparator<ChatMessage> BY_TIME = new Comparator<ChatMessage>() {
+        @Override
+        public int compare(ChatMessage a, ChatMessage b) {
+            return Long.compare(a.getTimestamp(), b.getTimestamp());
+        }
+    };
+
+    interface Listener {
+        // 按时间升序的当前窗口
+        void onMessagesChanged(List<ChatMessage> messages);
+        void onError(String error);
+    }
+
+    private static final class Page {
+        // 覆盖到的服务端页码；本地种子页不对齐服务端分页，按条数向下取整，可以是 0
+        int number;
+        final List<ChatMessage> messages;
+        // 服务端当前的最新一页，之后的实时消息接在它后面
+        final boolean newest;
+
+        Page(int number, List<ChatMessage> messages, boolean newest) {
+            this.number = number;
+            this.messages = messages;
+            this.newest = newest;
+        }
+    }
+
+    private final String roomId;
+    private final ChatRepository repository;
+    private final Listener listener;
+    private final MainThreadDispatcher mainThread = MainThreadDispatcher.get();
+    private final ChatRepository.RoomCallback roomCallback = new ChatRepository.RoomCallback() {
+        @Override
+        public void onLocalMessages(List<ChatMessage> messages) {
+            mainThread.execute(() -> onSeed(messages));
+        }
+
+        @Override
+        public void onNewMessages(List<ChatMessage> messages) {
+            mainThread.execute(() -> onSynced(messages));
+        }
+
+        @Override
+        public void onSyncComplete() {
+            mainThread.execute(() -> onSyncFinished(null));
+        }
+
+        @Override
+        public void onError(String error) {
+            mainThread.execute(() -> onSyncFinished(error));
+        }
+    };
+
+    // 队首是最早的一页
+    private final ArrayDeque<Page> pages = new ArrayDeque<>();
+    private final ArrayList<ChatMessage> liveTail = new ArrayList<>();
+    private Page seedPage;
+    // 首次同步完成前种子页的条数还会变，不能据此计算更早一页的页码
+    private boolean seeding = true;
+    private RequestHandle olderRequest;
+    private RequestHandle newerRequest;
+    private SubscriptionIndex.Subscription liveSubscription;
+    private boolean reachedOldest;
+    private boolean publishPending;
+    // 标签页不可见时不提交列表，恢复时补一次
+    private boolean paused;
+    private boolean publishDeferred;
+    private boolean closed;
+
+    private final Runnable publishTask = this::publish;
+
+    ChatTimeline(String roomId, ChatRepository repository, Listener listener) {
+        this.roomId = roomId;
+        this.repository = repository;
+        this.listener = listener;
+    }
+
+    void start() {
+        liveSubscription = WebSocketManager.getInstance().subscribe("chat_message", roomId,
+                message -> onLiveMessage(ChatMessage.fromJson(message)), mainThread);
+        repository.openRoom(roomId, roomCallback);
+    }
+
+    void close() {
+        closed = true;
+        if (liveSubscription != null) {
+            liveSubscription.unsubscribe();
+        }
+        repository.closeRoom(roomId, roomCallback);
+        if (olderRequest != null) {
+            olderRequest.cancel();
+        }
+        if (newerRequest != null) {
+            newerRequest.cancel();
+        }
+    }
+
+    // 实时消息照常收进窗口，只是不做列表比对和绑定
+    void setPaused(boolean paused) {
+        this.paused = paused;
+        if (!paused && publishDeferred) {
+            publishDeferred = false;
+            schedulePublish();
+        }
+    }
+
+    boolean isAtLiveEdge() {
+        return pages.isEmpty() || pages.peekLast().newest;
+    }
+
+    void loadOlder() {
+        if (olderRequest != null || reachedOldest || seeding || pages.isEmpty()) {
+            return;
+        }
+        Page oldest = pages.peekFirst();
+        // 离线时从本地存储取比它更早的消息
+        ChatMessage before = oldest.messages.isEmpty() ? null : oldest.messages.get(0);
+        if (before != null && before.getId() == null) {
+            before = null;
+        }
+        olderRequest = loadPage(oldest.number + 1, before, true);
+    }
+
+    // 种子页被丢弃后，队尾可能是向上翻时拿到的旧的第 1 页，重新加载一次
+    void loadNewer() {
+        if (newerRequest != null || isAtLiveEdge()) {
+            return;
+        }
+        newerRequest = loadPage(Math.max(1, pages.peekLast().number - 1), null, false);
+    }
+
+    private RequestHandle loadPage(int number, ChatMessage before, boolean older) {
+        return repository.loadPage(roomId, number, PAGE_SIZE, before, RequestScheduler.Priority.PREFETCH,
+                new ApiService.ApiListCallback<ChatMessage>() {
+                    @Override
+                    public void onSuccess(List<ChatMessage> messages) {
+                        mainThread.execute(() -> onPageLoaded(number, messages, older));
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        mainThread.execute(() -> {
+                            clearRequest(older);
+                            if (!closed) {
+                                listener.onError(error);
+                            }
+                        });
+                    }
+                });
+    }
+
+    private void clearRequest(boolean older) {
+        if (older) {
+            olderRequest = null;
+        } else {
+            newerRequest = null;
+        }
+    }
+
+    private void onPageLoaded(int number, List<ChatMessage> messages, boolean older) {
+        clearRequest(older);
+        if (closed) {
+            return;
+        }
+        List<ChatMessage> sorted = new ArrayList<>(messages);
+        Collections.sort(sorted, BY_TIME);
+        if (older) {
+            if (messages.size() < PAGE_SIZE) {
+                reachedOldest = true;
+            }
+            if (!sorted.isEmpty()) {
+                pages.addFirst(new Page(number, sorted, false));
+            }
+            while (size() > MAX_MESSAGES && pages.size() > 1) {
+                dropNewest();
+            }
+        } else {
+            pages.addLast(new Page(number, sorted, number == 1));
+            while (size() > MAX_MESSAGES && pages.size() > 1) {
+                dropOldest();
+            }
+        }
+        schedulePublish();
+    }
+
+    // 本地存储里的最近消息，先显示出来
+    private void onSeed(List<ChatMessage> messages) {
+        if (closed) {
+            return;
+        }
+        seedPage = new Page(0, new ArrayList<>(messages), true);
+        pages.addLast(seedPage);
+        schedulePublish();
+    }
+
+    // 首次同步的新消息并入种子页；之后是续传补拉，与实时消息一样追加到末尾
+    private void onSynced(List<ChatMessage> messages) {
+        if (closed) {
+            return;
+        }
+        if (seeding) {
+            seedPage.messages.addAll(messages);
+            Collections.sort(seedPage.messages, BY_TIME);
+            schedulePublish();
+        } else {
+            onCaughtUp(messages);
+        }
+    }
+
+    // 同步失败时本地消息照常显示，仍可向上翻页
+    private void onSyncFinished(String error) {
+        if (closed) {
+            return;
+        }
+        if (seeding) {
+            seeding = false;
+            // 读取本地存储失败时没有种子页，从服务端第 1 页开始
+            if (seedPage == null) {
+                onSeed(Collections.<ChatMessage>emptyList());
+            }
+            // 离线很久后增量可能很多，只保留最新的部分，页码按保留下来的条数算
+            List<ChatMessage> seed = seedPage.messages;
+            if (seed.size() > MAX_MESSAGES) {
+                seed.subList(0, seed.size() - MAX_MESSAGES).clear();
+                schedulePublish();
+            }
+            seedPage.number = seed.size() / PAGE_SIZE;
+        }
+        if (error != null) {
+            listener.onError(error);
+        }
+    }
+
+    // 离开最新一页后不再追加实时消息，回到底部时重新加载第 1 页即可拿到
+    private void onLiveMessage(ChatMessage message) {
+        if (closed || !isAtLiveEdge() || message.getId() == null) {
+            return;
+        }
+        liveTail.add(message);
+        // 至少保留一页，loadOlder 和补拉都以它为基准；只剩一页时靠 liveTail 自身的上限
+        while (size() > MAX_MESSAGES && pages.size() > 1) {
+            dropOldest();
+        }
+        if (liveTail.size() > MAX_MESSAGES) {
+            liveTail.subList(0, liveTail.size() - MAX_MESSAGES).clear();
+        }
+        schedulePublish();
+    }
+
+    // 断线期间无法续传的消息由 ChatRepository 补拉回来；不在最新一页时回到底部会重新加载，不用处理
+    private void onCaughtUp(List<ChatMessage> messages) {
+        if (!isAtLiveEdge()) {
+            return;
+        }
+        // 与已有消息的重复在 publish 时按 id 去掉
+        liveTail.addAll(messages);
+        Collections.sort(liveTail, BY_TIME);
+        // 至少保留一页，loadOlder 和补拉都以它为基准；只剩一页时靠 liveTail 自身的上限
+        while (size() > MAX_MESSAGES && pages.size() > 1) {
+            dropOldest();
+        }
+        if (liveTail.size() > MAX_MESSAGES) {
+            liveTail.subList(0, liveTail.size() - MAX_MESSAGES).clear();
+        }
+        schedulePublish();
+    }
+
+    private void dropNewest() {
+        Page dropped = pages.pollLast();
+        if (dropped != null && dropped.newest) {
+            liveTail.clear();
+        }
+    }
+
+    private void dropOldest() {
+        pages.pollFirst();
+        reachedOldest = false;
+    }
+
+    private int size() {
+        int size = liveTail.size();
+        for (Page page : pages) {
+            size += page.messages.size();
+        }
+        return size;
+    }
+
+    // 同一帧内的多次变化只提交一次列表
+    private void schedulePublish() {
+        if (paused) {
+            publishDeferred = true;
+            return;
+        }
+        if (!publishPending) {
+            publishPending = true;
+            mainThread.execute(publishTask);
+        }
+    }
+
+    private void publish() {
+        publishPending = false;
+        if (closed) {
+            return;
+        }
+        if (paused) {
+            publishDeferred = true;
+            return;
+        }
+        // 实时消息插入后服务端分页会整体后移，相邻页之间可能有重复，按 id 去重
+        List<ChatMessage> window = new ArrayList<>(size());
+        Set<String> seen = new HashSet<>();
+        for (Page page : pages) {
+            appendUnique(page.messages, window, seen);
+        }
+        appendUnique(liveTail, window, seen);
+        listener.onMessagesChanged(window);
+    }
+
+    private static void appendUnique(List<ChatMessage> source, List<ChatMessage> target, Set<String> seen) {
+        for (ChatMessage message : source) {
+            if (message.getId() != null && seen.add(message.getId())) {
+                target.add(message);
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package com.potatochat.mobile;
+
+import androidx.lifecycle.ViewModel;
+import com.potatochat.mobile.models.ChatMessage;
+import com.potatochat.mobile.services.ChatRepository;
+import java.util.List;
+
+// 聊天标签页的数据，作用域是 Activity
+// ViewPager2 销毁并重建聊天页时，当前聊天室的时间线、已加载的消息和实时订阅都保留，不用重新拉取
+// 页面不可见时时间线暂停提交列表；只在主线程访问
+public class ChatViewModel extends ViewModel implements ChatTimeline.Listener {
+    private ChatTimeline timeline;
+    private String roomId;
+    private List<ChatMessage> messages;
+    private ChatTimeline.Listener view;
+    private boolean visible;
+
+    // 已经打开的聊天室直接复用
+    void openRoom(String roomId, ChatRepository repository) {
+        if (roomId.equals(this.roomId)) {
+            return;
+        }
+        closeTimeline();
+        this.roomId = roomId;
+        timeline = new ChatTimeline(roomId, repository, this);
+        timeline.setPaused(!visible);
+        timeline.start();
+    }
+
+    String getRoomId() {
+        return roomId;
+    }
+
+    ChatTimeline getTimeline() {
+        return timeline;
+    }
+
+    // 视图创建后绑定，立即收到当前窗口
+    void attach(ChatTimeline.Listener view) {
+        this.view = view;
+        if (messages != null) {
+            view.onMessagesChanged(messages);
+        }
+    }
+
+    void detach() {
+        view = null;
+    }
+
+    void setVisible(boolean visible) {
+        this.visible = visible;
+        if (timeline != null) {
+            timeline.setPaused(!visible);
+        }
+    }
+
+    @Override
+    public void onMessagesChanged(List<ChatMessage> messages) {
+        this.messages = messages;
+        if (view != null) {
+            view.onMessagesChanged(messages);
+        }
+    }
+
+    @Override
+    public void onError(String error) {
+        if (view != null) {
+            view.onError(error);
+        }
+    }
+
+    private void closeTimeline() {
+        if (timeline != null) {
+            timeline.close();
+            timeline = null;
+        }
+        roomId = null;
+        messages = null;
+    }
+
+    @Override
+    protected void onCleared() {
+        closeTimeline();
+        view = null;
+    }
+}
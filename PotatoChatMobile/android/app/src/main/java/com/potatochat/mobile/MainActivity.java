@@ -23,6 +23,13 @@ public class MainActivity extends AppCompatActivity {
         
         initViews();
         setupViewPager();
+        // 布局完成后的第一帧
+        viewPager.post(() -> {
+            StartupOrchestrator startup = StartupOrchestrator.get();
+            if (startup != null) {
+                startup.milestone("first_frame");
+            }
+        });
     }
     
     private void initViews() {
@@ -32,6 +39,7 @@ public class MainActivity extends AppCompatActivity {
     
     private void setupViewPager() {
         pagerAdapter = new MainPagerAdapter(this);
+        viewPager.setOffscreenPageLimit(MainPagerAdapter.OFFSCREEN_PAGE_LIMIT);
         viewPager.setAdapter(pagerAdapter);
         
         new TabLayoutMediator(tabLayout, viewPager,
@@ -1,11 +1,20 @@
 package com.potatochat.mobile;
 
 import android.app.Application;
+import android.content.pm.ApplicationInfo;
+import android.os.SystemClock;
+import android.util.Log;
+import com.potatochat.mobile.utils.Logger;
 
 public class MainApplication extends Application {
     @Override
     public void onCreate() {
+        long startedAt = SystemClock.elapsedRealtime();
         super.onCreate();
+        // 正式包只输出 INFO 及以上，debug 日志的参数不会被格式化
+        boolean debuggable = (getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        Logger.setMinLevel(debuggable ? Log.DEBUG : Log.INFO);
+        // 连接、预热和首屏预取在后台进行，与 Activity 的布局和首帧并行
+        StartupOrchestrator.start(this, startedAt);
     }
 }
-
@@ -5,7 +5,13 @@ import androidx.fragment.app.Fragment;
 import androidx.fragment.app.FragmentActivity;
 import androidx.viewpager2.adapter.FragmentStateAdapter;
 
+// 标签页生命周期：
+//   当前页两侧各 OFFSCREEN_PAGE_LIMIT 页提前创建并保留，更远的页由 FragmentStateAdapter 销毁
+//   只有当前页处于 RESUMED，各页在 onResume / onPause 中开始和暂停界面更新
+//   已加载的数据和实时订阅放在 Activity 作用域的 ViewModel 中，页面被销毁重建时不重新拉取
 public class MainPagerAdapter extends FragmentStateAdapter {
+    // 相邻的聊天和交易页互相切换时不被销毁；调大会让更多页面常驻内存
+    static final int OFFSCREEN_PAGE_LIMIT = 1;
     
     public MainPagerAdapter(@NonNull FragmentActivity fragmentActivity) {
         super(fragmentActivity);
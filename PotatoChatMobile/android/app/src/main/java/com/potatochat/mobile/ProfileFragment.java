@@ -1,12 +1,18 @@
 package com.potatochat.mobile;
 
+import android.app.AlertDialog;
+import android.content.pm.ApplicationInfo;
+import android.graphics.Typeface;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ScrollView;
+import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import com.potatochat.mobile.metrics.MetricsRegistry;
 
 public class ProfileFragment extends Fragment {
     
@@ -14,7 +20,31 @@ public class ProfileFragment extends Fragment {
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.fragment_profile, container, false);
+
+        // 调试包中长按个人页显示性能指标
+        if ((requireContext().getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            view.setOnLongClickListener(v -> {
+                showMetrics();
+                return true;
+            });
+        }
         return view;
     }
+
+    private void showMetrics() {
+        TextView text = new TextView(requireContext());
+        text.setTypeface(Typeface.MONOSPACE);
+        text.setTextSize(10);
+        text.setTextIsSelectable(true);
+        text.setText(MetricsRegistry.get().dump());
+        ScrollView scroll = new ScrollView(requireContext());
+        scroll.addView(text);
+        new AlertDialog.Builder(requireContext())
+                .setTitle("Metrics")
+                .setView(scroll)
+                .setPositiveButton(android.R.string.ok, null)
+                .setNeutralButton("Reset", (dialog, which) -> MetricsRegistry.get().reset())
+                .show();
+    }
 }
 
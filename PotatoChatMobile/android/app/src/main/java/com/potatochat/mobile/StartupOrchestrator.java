@@ -0,0 +1,245 @@
+package com.potatochat.mobile;
+
+import android.content.Context;
+import android.os.SystemClock;
+import android.util.Log;
+import com.potatochat.mobile.metrics.MetricsRegistry;
+import com.potatochat.mobile.models.ChatMessage;
+import com.potatochat.mobile.models.ChatRoom;
+import com.potatochat.mobile.services.ApiService;
+import com.potatochat.mobile.services.ChatOutbox;
+import com.potatochat.mobile.services.JsonStreamDecoder;
+import com.potatochat.mobile.services.TokenManager;
+import com.potatochat.mobile.trading.PortfolioManager;
+import com.potatochat.mobile.utils.JsonCodec;
+import com.potatochat.mobile.utils.MainThreadDispatcher;
+import com.potatochat.mobile.utils.MessagePackCodec;
+import com.potatochat.mobile.utils.SharedScheduler;
+import com.potatochat.mobile.utils.WebSocketManager;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// 冷启动编排：在 Application.onCreate 中启动，首帧渲染的同时并行执行
+//   建立 WebSocket 连接、预热 HTTP 连接池、预热 JSON / MessagePack 解析、已登录时预取首屏数据
+// 各阶段完成时记录 startup.<阶段> 直方图，从 Application.onCreate 开始计算，与其他耗时指标一样以微秒为单位
+// 每个阶段每个进程只记录一次，导出后可以按版本比较首屏耗时
+final class StartupOrchestrator {
+    private static final String TAG = "StartupOrchestrator";
+    private static StartupOrchestrator instance;
+
+    private final Context context;
+    private final long startedAt;
+    private final ApiService apiService;
+    private final Set<String> reached = Collections.newSetFromMap(new ConcurrentHashMap<>());
+
+    // 首屏聊天室列表的预取结果，只在主线程访问
+    private boolean chatRoomsLoading;
+    private List<ChatRoom> chatRooms;
+    private final List<ApiService.ApiListCallback<ChatRoom>> chatRoomWaiters = new ArrayList<>();
+
+    private StartupOrchestrator(Context context, long startedAt) {
+        this.context = context;
+        this.startedAt = startedAt;
+        this.apiService = ApiService.getInstance(context);
+    }
+
+    // startedAt 为 Application.onCreate 开始时的 SystemClock.elapsedRealtime()
+    static synchronized StartupOrchestrator start(Context context, long startedAt) {
+        if (instance == null) {
+            instance = new StartupOrchestrator(context.getApplicationContext(), startedAt);
+            instance.run();
+        }
+        return instance;
+    }
+
+    static synchronized StartupOrchestrator get() {
+        return instance;
+    }
+
+    private void run() {
+        milestone("app_create");
+        // 网络恢复时立即重连，不等退避计时；登录前注册也没有副作用
+        WebSocketManager.getInstance().attachNetworkMonitor(context);
+        connectSocket();
+        apiService.warmUpConnection(() -> milestone("http_warm"));
+        SharedScheduler.get().execute(this::warmUpCodecs);
+        trackPortfolio();
+        if (apiService.isLoggedIn()) {
+            // 上次没发出去的消息在后台补发，不等用户打开聊天页
+            ChatOutbox.getInstance(context);
+            prefetchFirstScreen();
+        }
+    }
+
+    // 连接建立时间只记录第一次
+    private void connectSocket() {
+        if (!apiService.isLoggedIn()) {
+            return;
+        }
+        WebSocketManager webSocketManager = WebSocketManager.getInstance();
+        webSocketManager.addListener(new WebSocketManager.WebSocketListener() {
+            @Override
+            public void onConnected() {
+                milestone("socket_connected");
+                webSocketManager.removeListener(this);
+            }
+
+            @Override
+            public void onDisconnected() {
+            }
+
+            @Override
+            public void onMessage(JSONObject message) {
+            }
+
+            @Override
+            public void onError(String error) {
+            }
+        });
+        SharedScheduler.get().execute(webSocketManager::connect);
+    }
+
+    // 持仓跟随登录状态：已登录时立即加载，之后登录或换用户时重新加载，退出登录时停止
+    // 刷新令牌也会回调，同一用户再次 start 直接返回
+    private void trackPortfolio() {
+        TokenManager tokenManager = apiService.getTokenManager();
+        tokenManager.addListener(token -> {
+            PortfolioManager portfolio = PortfolioManager.getInstance(context);
+            String userId = tokenManager.getUserId();
+            if (token == null) {
+                portfolio.stop();
+            } else if (userId != null) {
+                portfolio.start(userId);
+            }
+        });
+        String userId = tokenManager.getUserId();
+        if (apiService.isLoggedIn() && userId != null) {
+            PortfolioManager.getInstance(context).start(userId);
+        }
+    }
+
+    // 首次解析时的类加载和 JsonReader / MessagePack 初始化放到后台，不占首屏请求的解析时间
+    private void warmUpCodecs() {
+        try {
+            byte[] rooms = "{\"data\":[{\"id\":\"0\",\"name\":\"\",\"type\":\"group\",\"unreadCount\":0,\"updatedAt\":0}]}"
+                    .getBytes(StandardCharsets.UTF_8);
+            JsonStreamDecoder.decodeDataArray(new ByteArrayInputStream(rooms), ChatRoom::read, room -> { });
+            byte[] messages = "{\"data\":[{\"id\":\"0\",\"roomId\":\"0\",\"content\":\"\",\"type\":\"text\",\"timestamp\":0}]}"
+                    .getBytes(StandardCharsets.UTF_8);
+            JsonStreamDecoder.decodeDataArray(new ByteArrayInputStream(messages), ChatMessage::read, message -> { });
+
+            JSONObject sample = new JSONObject()
+                    .put("type", "trading_update")
+                    .put("price", 0.5)
+                    .put("levels", new JSONArray().put(1));
+            byte[] json = JsonCodec.INSTANCE.encode(sample);
+            JsonCodec.INSTANCE.decode(json, 0, json.length);
+            byte[] packed = MessagePackCodec.INSTANCE.encode(sample);
+            MessagePackCodec.INSTANCE.decode(packed, 0, packed.length);
+        } catch (Exception e) {
+            Log.w(TAG, "Codec warm-up failed", e);
+        }
+        milestone("codec_warm");
+    }
+
+    // 首屏的聊天室列表和交易对；交易对进入响应缓存，聊天室列表留给第一个调用 getChatRooms 的界面
+    private void prefetchFirstScreen() {
+        String userId = apiService.getTokenManager().getUserId();
+        if (userId != null) {
+            chatRoomsLoading = true;
+            apiService.getChatRooms(userId, new ApiService.ApiListCallback<ChatRoom>() {
+                @Override
+                public void onSuccess(List<ChatRoom> items) {
+                    MainThreadDispatcher.get().execute(() -> onChatRoomsLoaded(items, null));
+                }
+
+                @Override
+                public void onError(String error) {
+                    MainThreadDispatcher.get().execute(() -> onChatRoomsLoaded(null, error));
+                }
+            });
+        }
+        apiService.getTradingPairs(new ApiService.ApiArrayCallback() {
+            @Override
+            public void onSuccess(JSONArray response) {
+                milestone("trading_pairs_loaded");
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.w(TAG, "Prefetch trading pairs failed: " + error);
+            }
+        });
+    }
+
+    private void onChatRoomsLoaded(List<ChatRoom> rooms, String error) {
+        chatRoomsLoading = false;
+        if (rooms != null) {
+            chatRooms = rooms;
+            milestone("chat_rooms_loaded");
+        }
+        List<ApiService.ApiListCallback<ChatRoom>> waiters = new ArrayList<>(chatRoomWaiters);
+        chatRoomWaiters.clear();
+        for (ApiService.ApiListCallback<ChatRoom> waiter : waiters) {
+            deliverChatRooms(waiter, rooms, error);
+        }
+    }
+
+    // 在主线程调用，在主线程回调：预取已完成时直接返回，进行中时等待同一次请求，没有预取时正常请求
+    // 预取结果只用一次，之后的调用总是请求最新列表
+    void getChatRooms(ApiService.ApiListCallback<ChatRoom> callback) {
+        if (chatRoomsLoading) {
+            chatRoomWaiters.add(callback);
+            return;
+        }
+        List<ChatRoom> rooms = chatRooms;
+        if (rooms != null) {
+            chatRooms = null;
+            deliverChatRooms(callback, rooms, null);
+            return;
+        }
+        String userId = apiService.getTokenManager().getUserId();
+        if (userId == null) {
+            callback.onError("Not logged in");
+            return;
+        }
+        apiService.getChatRooms(userId, new ApiService.ApiListCallback<ChatRoom>() {
+            @Override
+            public void onSuccess(List<ChatRoom> items) {
+                MainThreadDispatcher.get().execute(() -> deliverChatRooms(callback, items, null));
+            }
+
+            @Override
+            public void onError(String error) {
+                MainThreadDispatcher.get().execute(() -> callback.onError(error));
+            }
+        });
+    }
+
+    private void deliverChatRooms(ApiService.ApiListCallback<ChatRoom> callback, List<ChatRoom> rooms, String error) {
+        if (rooms == null) {
+            callback.onError(error);
+            return;
+        }
+        milestone("first_chat_list");
+        callback.onSuccess(rooms);
+    }
+
+    // 记录从启动到该阶段的耗时，同名阶段只记录第一次
+    void milestone(String name) {
+        if (!reached.add(name)) {
+            return;
+        }
+        long elapsed = SystemClock.elapsedRealtime() - startedAt;
+        // 直方图统一以微秒记录
+        MetricsRegistry.get().histogram("startup." + name).record(elapsed * 1000);
+        Log.i(TAG, name + " at " + elapsed + "ms");
+    }
+}
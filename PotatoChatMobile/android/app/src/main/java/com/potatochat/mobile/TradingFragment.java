@@ -1,20 +1,238 @@
 package com.potatochat.mobile;
 
+import android.graphics.Color;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+import android.widget.Toast;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import androidx.lifecycle.ViewModelProvider;
+import com.potatochat.mobile.models.Quote;
+import com.potatochat.mobile.trading.FixedPoint;
+import com.potatochat.mobile.trading.OrderBook;
+import com.potatochat.mobile.trading.OrderBookManager;
+import com.potatochat.mobile.trading.OrderGateway;
+import com.potatochat.mobile.trading.PendingOrder;
+import com.potatochat.mobile.utils.MainThreadDispatcher;
+import com.potatochat.mobile.utils.MarketDataPipeline;
+import com.potatochat.mobile.utils.WebSocketManager;
+import java.util.List;
+
+public class TradingFragment extends Fragment implements OrderBookManager.Listener {
+    private static final String ARG_SYMBOL = "symbol";
+    private static final String DEFAULT_SYMBOL = "BTC/USDT";
+    private static final int LEVELS = 10;
+
+    private String symbol;
+    private OrderBookManager orderBookManager;
+    private OrderGateway orderGateway;
+    private TextView[] bidPrices;
+    private TextView[] bidSizes;
+    private TextView[] askPrices;
+    private TextView[] askSizes;
+    // 刷新时复用，避免每次分配
+    private final long[] levelPrices = new long[LEVELS];
+    private final long[] levelSizes = new long[LEVELS];
+    private final StringBuilder text = new StringBuilder(24);
+    private long renderedVersion = -1;
+    private EditText priceInput;
+    private EditText amountInput;
+    private LinearLayout openOrdersList;
+    private TextView openOrdersEmpty;
+    private TextView lastPrice;
+    private MarketDataPipeline marketData;
+    private final OrderGateway.OrderListener orderListener = order -> renderOpenOrders();
+    // 管道每批最多回调一次，快市里也只按批次刷新最新价
+    private final MarketDataPipeline.MarketDataListener quoteListener = snapshot -> {
+        Quote quote = snapshot.get(symbol);
+        if (quote != null) {
+            MainThreadDispatcher.get().execute(() -> renderLastPrice(quote));
+        }
+    };
+
+    public static TradingFragment newInstance(String symbol) {
+        TradingFragment fragment = new TradingFragment();
+        Bundle args = new Bundle();
+        args.putString(ARG_SYMBOL, symbol);
+        fragment.setArguments(args);
+        return fragment;
+    }
 
-public class TradingFragment extends Fragment {
-    
     @Nullable
     @Override
     public View onCreateView(@NonNull LayoutInflater inflater, @Nullable ViewGroup container, @Nullable Bundle savedInstanceState) {
         View view = inflater.inflate(R.layout.fragment_trading, container, false);
+
+        Bundle args = getArguments();
+        symbol = args != null && args.getString(ARG_SYMBOL) != null ? args.getString(ARG_SYMBOL) : DEFAULT_SYMBOL;
+        ((TextView) view.findViewById(R.id.order_book_title)).setText("盘口 " + symbol);
+        lastPrice = view.findViewById(R.id.last_price);
+        marketData = WebSocketManager.getInstance().getMarketDataPipeline();
+
+        // 档位行只 inflate 一次，之后原地更新文字
+        bidPrices = new TextView[LEVELS];
+        bidSizes = new TextView[LEVELS];
+        askPrices = new TextView[LEVELS];
+        askSizes = new TextView[LEVELS];
+        inflateLevels(inflater, view.findViewById(R.id.bid_list), bidPrices, bidSizes, Color.parseColor("#2E7D32"));
+        inflateLevels(inflater, view.findViewById(R.id.ask_list), askPrices, askSizes, Color.parseColor("#C62828"));
+
+        // 关注由 TradingViewModel 持有，重建视图时订单簿已经是最新的
+        orderBookManager = OrderBookManager.getInstance(requireContext());
+        TradingViewModel viewModel = new ViewModelProvider(requireActivity()).get(TradingViewModel.class);
+        renderedVersion = -1;
+        render(viewModel.watch(requireContext(), symbol));
+
+        // 下单统一走 OrderGateway：clientOrderId 在提交时生成一次，超时改走 REST 也用同一个，不会重复成交
+        orderGateway = OrderGateway.getInstance(requireContext());
+        priceInput = view.findViewById(R.id.order_price);
+        amountInput = view.findViewById(R.id.order_amount);
+        view.findViewById(R.id.buy_button).setOnClickListener(v -> submitOrder("buy"));
+        view.findViewById(R.id.sell_button).setOnClickListener(v -> submitOrder("sell"));
+        openOrdersList = view.findViewById(R.id.open_orders_list);
+        openOrdersEmpty = view.findViewById(R.id.open_orders_empty);
         return view;
     }
-}
 
+    // 只有当前页接收订单簿变化；其他页不注册监听，深度帧只更新订单簿，不占主线程
+    @Override
+    public void onResume() {
+        super.onResume();
+        orderBookManager.addListener(this);
+        OrderBook book = orderBookManager.getOrderBook(symbol);
+        if (book != null) {
+            render(book);
+        }
+        orderGateway.addListener(orderListener);
+        renderOpenOrders();
+        marketData.watch(symbol);
+        marketData.addListener(quoteListener);
+    }
+
+    @Override
+    public void onPause() {
+        orderBookManager.removeListener(this);
+        orderGateway.removeListener(orderListener);
+        marketData.removeListener(quoteListener);
+        marketData.unwatch(symbol);
+        super.onPause();
+    }
+
+    private void renderLastPrice(Quote quote) {
+        if (lastPrice == null) {
+            return;
+        }
+        text.setLength(0);
+        text.append("最新价 ");
+        FixedPoint.append(text, FixedPoint.fromDouble(quote.getPrice()), 2);
+        lastPrice.setText(text.toString());
+    }
+
+    private void submitOrder(String side) {
+        double price;
+        double amount;
+        try {
+            price = Double.parseDouble(priceInput.getText().toString().trim());
+            amount = Double.parseDouble(amountInput.getText().toString().trim());
+        } catch (NumberFormatException e) {
+            price = 0;
+            amount = 0;
+        }
+        if (!(price > 0) || !(amount > 0) || Double.isInfinite(price) || Double.isInfinite(amount)) {
+            Toast.makeText(requireContext(), "请输入有效的价格和数量", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        orderGateway.submit(symbol, side, amount, price);
+        amountInput.setText(null);
+    }
+
+    // 提交后立即显示，确认后更新状态；发送失败的订单点击后移除
+    private void renderOpenOrders() {
+        List<PendingOrder> orders = orderGateway.getOpenOrders();
+        openOrdersList.removeAllViews();
+        openOrdersEmpty.setVisibility(orders.isEmpty() ? View.VISIBLE : View.GONE);
+        LayoutInflater inflater = getLayoutInflater();
+        for (PendingOrder order : orders) {
+            View row = inflater.inflate(R.layout.item_open_order, openOrdersList, false);
+            TextView summary = row.findViewById(R.id.order_summary);
+            TextView status = row.findViewById(R.id.order_status);
+            text.setLength(0);
+            text.append("buy".equals(order.getSide()) ? "买 " : "卖 ").append(order.getSymbol()).append(' ');
+            FixedPoint.append(text, order.getAmount(), 4);
+            text.append(" @ ");
+            FixedPoint.append(text, order.getPrice(), 2);
+            summary.setText(text.toString());
+            summary.setTextColor(Color.parseColor("buy".equals(order.getSide()) ? "#2E7D32" : "#C62828"));
+            switch (order.getStatus()) {
+                case PENDING:
+                    status.setText("等待确认");
+                    break;
+                case ACCEPTED:
+                    status.setText("已挂单");
+                    break;
+                default:
+                    status.setText("发送失败");
+                    status.setTextColor(Color.parseColor("#C62828"));
+                    row.setOnClickListener(v -> orderGateway.dismiss(order.getClientOrderId()));
+                    break;
+            }
+            openOrdersList.addView(row);
+        }
+    }
+
+    private void inflateLevels(LayoutInflater inflater, LinearLayout list, TextView[] prices, TextView[] sizes, int color) {
+        for (int i = 0; i < LEVELS; i++) {
+            View row = inflater.inflate(R.layout.item_price_level, list, false);
+            prices[i] = row.findViewById(R.id.level_price);
+            sizes[i] = row.findViewById(R.id.level_size);
+            prices[i].setTextColor(color);
+            list.addView(row);
+        }
+    }
+
+    @Override
+    public void onOrderBookChanged(OrderBook book) {
+        if (symbol.equals(book.getSymbol()) && bidPrices != null) {
+            render(book);
+        }
+    }
+
+    private void render(OrderBook book) {
+        long version = book.getVersion();
+        if (version == renderedVersion) {
+            return;
+        }
+        renderedVersion = version;
+        renderSide(book.copyBids(LEVELS, levelPrices, levelSizes), bidPrices, bidSizes);
+        renderSide(book.copyAsks(LEVELS, levelPrices, levelSizes), askPrices, askSizes);
+    }
+
+    private void renderSide(int count, TextView[] prices, TextView[] sizes) {
+        for (int i = 0; i < LEVELS; i++) {
+            if (i < count) {
+                text.setLength(0);
+                FixedPoint.append(text, levelPrices[i], 2);
+                prices[i].setText(text);
+                text.setLength(0);
+                FixedPoint.append(text, levelSizes[i], 4);
+                sizes[i].setText(text);
+            } else {
+                prices[i].setText(null);
+                sizes[i].setText(null);
+            }
+        }
+    }
+
+    @Override
+    public void onDestroyView() {
+        bidPrices = null;
+        lastPrice = null;
+        super.onDestroyView();
+    }
+}
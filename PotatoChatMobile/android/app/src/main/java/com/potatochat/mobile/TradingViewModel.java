@@ -0,0 +1,39 @@
+package com.potatochat.mobile;
+
+import android.content.Context;
+import androidx.lifecycle.ViewModel;
+import com.potatochat.mobile.trading.OrderBook;
+import com.potatochat.mobile.trading.OrderBookManager;
+
+// 交易标签页的数据，作用域是 Activity
+// 交易页被 ViewPager2 销毁重建时不取消关注，订单簿继续按增量维护，回来时不用重新拉快照
+// 只在主线程访问
+public class TradingViewModel extends ViewModel {
+    private OrderBookManager orderBookManager;
+    private String symbol;
+    private OrderBook book;
+
+    OrderBook watch(Context context, String symbol) {
+        if (symbol.equals(this.symbol)) {
+            return book;
+        }
+        unwatch();
+        orderBookManager = OrderBookManager.getInstance(context);
+        this.symbol = symbol;
+        book = orderBookManager.watch(symbol);
+        return book;
+    }
+
+    private void unwatch() {
+        if (symbol != null) {
+            orderBookManager.unwatch(symbol);
+            symbol = null;
+            book = null;
+        }
+    }
+
+    @Override
+    protected void onCleared() {
+        unwatch();
+    }
+}
@@ -0,0 +1,87 @@
+package com.potatochat.mobile.metrics;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class HistogramTest {
+
+    @Test
+    public void smallValuesHaveExactBuckets() {
+        for (int value = 0; value < 8; value++) {
+            assertEquals(value, Histogram.indexOf(value));
+            assertEquals(value, Histogram.lowerBound(value));
+        }
+    }
+
+    @Test
+    public void bucketsAreContiguousAndWithinRelativeError() {
+        // 每个值都落在下界不大于它、下一个桶下界大于它的桶里，桶宽不超过下界的 1/8
+        for (long value = 8; value < 1 << 20; value += 1 + value / 97) {
+            int index = Histogram.indexOf(value);
+            long low = Histogram.lowerBound(index);
+            long next = Histogram.lowerBound(index + 1);
+            assertTrue(value + " below bucket " + low, low <= value);
+            assertTrue(value + " beyond bucket " + next, value < next);
+            assertTrue("bucket too wide at " + low, next - low <= Math.max(1, low / 8));
+        }
+    }
+
+    @Test
+    public void overflowGoesToLastBucket() {
+        int last = Histogram.indexOf(Long.MAX_VALUE);
+        assertEquals(last, Histogram.indexOf(1L << 50));
+        assertTrue(Histogram.indexOf(1L << 40) <= last);
+    }
+
+    @Test
+    public void quantilesStayWithinBucketError() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500, snapshot.getMean());
+        assertEquals(1000, snapshot.getMax());
+        assertWithin(500, snapshot.getValueAtQuantile(0.5));
+        assertWithin(990, snapshot.getValueAtQuantile(0.99));
+        assertWithin(1000, snapshot.getValueAtQuantile(1.0));
+        assertEquals(1, snapshot.getValueAtQuantile(0));
+    }
+
+    @Test
+    public void quantileNeverExceedsMax() {
+        Histogram histogram = new Histogram();
+        // 960 所在的桶是 [960, 1023]，中点 991 大于最大值
+        histogram.record(960);
+        assertEquals(960, histogram.snapshot().getValueAtQuantile(0.99));
+    }
+
+    @Test
+    public void negativeValuesRecordAsZeroAndNanosConvertToMicros() {
+        Histogram histogram = new Histogram();
+        histogram.record(-5);
+        histogram.recordNanos(3_000_000);
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(2, snapshot.getCount());
+        assertEquals(3000, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtQuantile(0.5));
+    }
+
+    @Test
+    public void resetClearsEverything() {
+        Histogram histogram = new Histogram();
+        histogram.record(42);
+        histogram.reset();
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(0, snapshot.getCount());
+        assertEquals(0, snapshot.getMax());
+        assertEquals(0, snapshot.getValueAtQuantile(0.99));
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue("expected ~" + expected + " but was " + actual, Math.abs(actual - expected) <= expected / 8);
+    }
+}
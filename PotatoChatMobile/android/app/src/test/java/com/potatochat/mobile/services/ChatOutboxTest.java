@@ -0,0 +1,422 @@
+package com.potatochat.mobile.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.potatochat.mobile.models.ChatMessage;
+import com.potatochat.mobile.models.OutboxMessage;
+import com.potatochat.mobile.utils.Backoff;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.net.ServerSocketFactory;
+
+public class ChatOutboxTest {
+    private final MemoryStorage storage = new MemoryStorage();
+    private final BlockingQueue<Send> sends = new LinkedBlockingQueue<>();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        scheduler.shutdownNow();
+    }
+
+    @Test
+    public void drainsLeftoverMessagesInOrderPerRoom() throws Exception {
+        storage.add(message("a1", "room-a"));
+        storage.add(message("a2", "room-a"));
+        storage.add(message("b1", "room-b"));
+        ChatOutbox outbox = newOutbox(0.0);
+
+        // 不同聊天室并行，同一聊天室只发最前面的一条
+        Set<String> firstRound = new HashSet<>();
+        Send first = nextSend();
+        Send second = nextSend();
+        firstRound.add(first.message.getClientMessageId());
+        firstRound.add(second.message.getClientMessageId());
+        assertEquals(new HashSet<>(Arrays.asList("a1", "b1")), firstRound);
+        assertNoSend();
+
+        Send a1 = first.message.getClientMessageId().equals("a1") ? first : second;
+        Send b1 = a1 == first ? second : first;
+        a1.succeed("m-a1");
+        assertEquals("a2", nextSend().message.getClientMessageId());
+        b1.succeed("m-b1");
+        flush();
+
+        assertEquals(2, outbox.getSentCount());
+        assertEquals(1, storage.messages.size());
+        assertEquals(2, storage.sent.size());
+    }
+
+    @Test
+    public void retriesTransientFailureWithSameClientMessageId() throws Exception {
+        ChatOutbox outbox = newOutbox(0.0);
+        String id = outbox.send("room-a", "hello", "text");
+
+        Send first = nextSend();
+        assertEquals(id, first.message.getClientMessageId());
+        first.fail("HTTP 503");
+
+        // 退避为 0 时立即重发，服务端按 clientMessageId 去重
+        Send retry = nextSend();
+        assertEquals(id, retry.message.getClientMessageId());
+        assertEquals(1, retry.message.getAttempts());
+        retry.succeed("m-1");
+        flush();
+
+        assertEquals(1, outbox.getRetryCount());
+        assertEquals(1, outbox.getSentCount());
+        assertTrue(storage.messages.isEmpty());
+    }
+
+    @Test
+    public void waitsForBackoffUntilRetryNow() throws Exception {
+        ChatOutbox outbox = newOutbox(0.99);
+        outbox.send("room-a", "hello", "text");
+        nextSend().fail("timeout");
+
+        // 第一次重试约 2 秒后才到期
+        assertNoSend();
+        outbox.retryNow();
+        Send retry = nextSend();
+        assertEquals(1, retry.message.getAttempts());
+        retry.succeed("m-1");
+        flush();
+        assertTrue(storage.messages.isEmpty());
+    }
+
+    @Test
+    public void dropsRejectedMessageAndContinuesWithNext() throws Exception {
+        storage.add(message("a1", "room-a"));
+        storage.add(message("a2", "room-a"));
+        ChatOutbox outbox = newOutbox(0.0);
+
+        nextSend().fail("HTTP 400 Bad Request");
+        Send next = nextSend();
+        assertEquals("a2", next.message.getClientMessageId());
+        next.succeed("m-a2");
+        flush();
+
+        assertEquals(1, outbox.getFailedCount());
+        assertEquals(1, outbox.getSentCount());
+        assertTrue(storage.messages.isEmpty());
+    }
+
+    @Test
+    public void keepsUnauthorizedMessageForRetry() throws Exception {
+        ChatOutbox outbox = newOutbox(0.99);
+        outbox.send("room-a", "hello", "text");
+        nextSend().fail("HTTP 401 Unauthorized");
+        flush();
+
+        assertEquals(0, outbox.getFailedCount());
+        assertEquals(1, storage.messages.size());
+        assertEquals(1, storage.messages.get(0).getAttempts());
+    }
+
+    // 真实 HTTP：请求形状和错误文本与 ApiService.sendMessage 一致，服务端按 clientMessageId 注入 503 / 429 / 400
+    @Test
+    public void drainsAgainstMockServerWithTransientFailures() throws Exception {
+        int rooms = 5;
+        int perRoom = 20;
+        Map<String, AtomicInteger> attempts = new ConcurrentHashMap<>();
+        Map<String, List<Integer>> accepted = new ConcurrentHashMap<>();
+        Set<String> acceptedIds = ConcurrentHashMap.newKeySet();
+        AtomicInteger duplicates = new AtomicInteger();
+        MockWebServer server = new MockWebServer();
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                String roomId = request.getPath().split("/")[3];
+                String clientMessageId = request.getHeader("Idempotency-Key");
+                int index;
+                try {
+                    String content = new JSONObject(request.getBody().readUtf8()).getString("content");
+                    index = Integer.parseInt(content.substring(content.indexOf('#') + 1));
+                } catch (Exception e) {
+                    return error(500, "bad request body");
+                }
+                int attempt = attempts.computeIfAbsent(clientMessageId, id -> new AtomicInteger()).getAndIncrement();
+                if (index == 12) {
+                    return error(400, "content rejected");
+                }
+                if (index % 7 == 3 && attempt < 2) {
+                    return error(429, "slow down");
+                }
+                if (index % 5 == 1 && attempt < 1) {
+                    return error(503, "unavailable");
+                }
+                if (!acceptedIds.add(clientMessageId)) {
+                    duplicates.incrementAndGet();
+                } else {
+                    accepted.computeIfAbsent(roomId, id -> Collections.synchronizedList(new ArrayList<>()))
+                            .add(index);
+                }
+                return new MockResponse().setResponseCode(201).setBody("{\"data\":{\"id\":\"s-" + clientMessageId
+                        + "\",\"roomId\":\"" + roomId + "\",\"content\":\"#" + index + "\",\"timestamp\":1}}");
+            }
+        });
+        server.setServerSocketFactory(noDelaySockets());
+        server.start();
+        OkHttpTransport transport = new OkHttpTransport();
+        ExecutorService http = Executors.newFixedThreadPool(4);
+        try {
+            ChatOutbox outbox = new ChatOutbox(storage, (message, callback) -> http.execute(() ->
+                    post(transport, server, message, callback)), executor, scheduler, Runnable::run,
+                    new Backoff(1000, 60000, new Random() {
+                        // 退避为 0，只测排队和重试本身
+                        @Override
+                        public double nextDouble() {
+                            return 0;
+                        }
+                    }));
+
+            int expectedRetries = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < perRoom; i++) {
+                for (int r = 0; r < rooms; r++) {
+                    outbox.send("r" + r, "r" + r + "#" + i, "text");
+                }
+                if (i != 12) {
+                    expectedRetries += rooms * (i % 7 == 3 ? 2 : i % 5 == 1 ? 1 : 0);
+                }
+            }
+            int total = rooms * perRoom;
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(20);
+            while (outbox.getSentCount() + outbox.getFailedCount() < total && System.nanoTime() < deadline) {
+                Thread.sleep(2);
+            }
+            double seconds = (System.nanoTime() - start) / 1e9;
+            flush();
+
+            assertEquals(total - rooms, outbox.getSentCount());
+            assertEquals(rooms, outbox.getFailedCount());
+            assertEquals(expectedRetries, outbox.getRetryCount());
+            assertEquals(0, duplicates.get());
+            assertTrue(storage.messages.isEmpty());
+            assertEquals(total - rooms, storage.sent.size());
+            // 每个聊天室按发送顺序到达服务端，被拒绝的那条不挡住后面的
+            for (int r = 0; r < rooms; r++) {
+                List<Integer> expected = new ArrayList<>();
+                for (int i = 0; i < perRoom; i++) {
+                    if (i != 12) {
+                        expected.add(i);
+                    }
+                }
+                assertEquals(expected, accepted.get("r" + r));
+            }
+            System.out.printf("outbox drain: %d messages, %d requests in %.2fs (%.0f msg/s), %d retries%n",
+                    total, server.getRequestCount(), seconds, total / seconds, outbox.getRetryCount());
+        } finally {
+            http.shutdownNow();
+            transport.shutdown();
+            server.shutdown();
+        }
+    }
+
+    private static void post(OkHttpTransport transport, MockWebServer server, OutboxMessage message,
+                             ApiService.ApiCallback callback) {
+        try {
+            byte[] body = new JSONObject().put("content", message.getContent()).put("type", message.getType())
+                    .put("clientMessageId", message.getClientMessageId()).toString()
+                    .getBytes(StandardCharsets.UTF_8);
+            try (HttpTransport.Response response = transport.execute(new HttpTransport.Request("POST",
+                    server.url("/chat/rooms/" + message.getRoomId() + "/messages").toString(),
+                    Collections.singletonMap("Idempotency-Key", message.getClientMessageId()), body))) {
+                JSONObject json = new JSONObject(read(response.body()));
+                if (response.isSuccessful()) {
+                    callback.onSuccess(json);
+                } else {
+                    callback.onError("HTTP " + response.code + ": " + json.optString("message", "Unknown error"));
+                }
+            }
+        } catch (Exception e) {
+            callback.onError(e.getMessage());
+        }
+    }
+
+    // MockWebServer 分两次写响应头和响应体，本机回环上遇到 Nagle + 延迟 ACK 每个请求要等约 40ms，
+    // 测出来的就不是发件箱自己的速率
+    private static ServerSocketFactory noDelaySockets() {
+        return new ServerSocketFactory() {
+            @Override
+            public ServerSocket createServerSocket() throws IOException {
+                return new ServerSocket() {
+                    @Override
+                    public Socket accept() throws IOException {
+                        Socket socket = new Socket();
+                        implAccept(socket);
+                        socket.setTcpNoDelay(true);
+                        return socket;
+                    }
+                };
+            }
+
+            @Override
+            public ServerSocket createServerSocket(int port) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public ServerSocket createServerSocket(int port, int backlog) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public ServerSocket createServerSocket(int port, int backlog, InetAddress address) {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private static MockResponse error(int code, String message) {
+        return new MockResponse().setResponseCode(code).setBody("{\"message\":\"" + message + "\"}");
+    }
+
+    private static String read(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int n;
+        while ((n = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private ChatOutbox newOutbox(double jitter) {
+        Random random = new Random() {
+            @Override
+            public double nextDouble() {
+                return jitter;
+            }
+        };
+        return new ChatOutbox(storage, (message, callback) -> sends.add(new Send(message, callback)),
+                executor, scheduler, Runnable::run, new Backoff(1000, 60000, random));
+    }
+
+    private Send nextSend() throws InterruptedException {
+        Send send = sends.poll(2, TimeUnit.SECONDS);
+        assertNotNull("Expected a send", send);
+        return send;
+    }
+
+    private void assertNoSend() throws Exception {
+        flush();
+        assertNull(sends.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    // 等发件箱线程处理完已提交的任务
+    private void flush() throws Exception {
+        executor.submit(() -> { }).get(2, TimeUnit.SECONDS);
+    }
+
+    private static OutboxMessage message(String clientMessageId, String roomId) {
+        return new OutboxMessage(clientMessageId, roomId, "content " + clientMessageId, "text", 0, 0, 0);
+    }
+
+    private static final class Send {
+        final OutboxMessage message;
+        final ApiService.ApiCallback callback;
+
+        Send(OutboxMessage message, ApiService.ApiCallback callback) {
+            this.message = message;
+            this.callback = callback;
+        }
+
+        void succeed(String id) throws Exception {
+            callback.onSuccess(new JSONObject().put("data",
+                    new JSONObject().put("id", id).put("roomId", message.getRoomId())));
+        }
+
+        void fail(String error) {
+            callback.onError(error);
+        }
+    }
+
+    // 按写入顺序保存，与数据库里的 seq 顺序一致；测试线程也会读取，所以加锁
+    private static final class MemoryStorage implements ChatOutbox.Storage {
+        final List<OutboxMessage> messages = new ArrayList<>();
+        final List<ChatMessage> sent = new ArrayList<>();
+
+        @Override
+        public synchronized void add(OutboxMessage message) {
+            messages.add(message);
+        }
+
+        @Override
+        public synchronized List<OutboxMessage> heads() {
+            List<OutboxMessage> heads = new ArrayList<>();
+            Set<String> rooms = new HashSet<>();
+            for (OutboxMessage message : messages) {
+                if (rooms.add(message.getRoomId())) {
+                    heads.add(message);
+                }
+            }
+            return heads;
+        }
+
+        @Override
+        public synchronized List<OutboxMessage> pending(String roomId) {
+            List<OutboxMessage> pending = new ArrayList<>();
+            for (OutboxMessage message : messages) {
+                if (message.getRoomId().equals(roomId)) {
+                    pending.add(message);
+                }
+            }
+            return pending;
+        }
+
+        @Override
+        public synchronized void updateAttempt(String clientMessageId, int attempts, long nextAttemptAt) {
+            for (int i = 0; i < messages.size(); i++) {
+                OutboxMessage message = messages.get(i);
+                if (message.getClientMessageId().equals(clientMessageId)) {
+                    messages.set(i, new OutboxMessage(clientMessageId, message.getRoomId(), message.getContent(),
+                            message.getType(), message.getCreatedAt(), attempts, nextAttemptAt));
+                }
+            }
+        }
+
+        @Override
+        public synchronized void remove(String clientMessageId) {
+            messages.removeIf(message -> message.getClientMessageId().equals(clientMessageId));
+        }
+
+        @Override
+        public synchronized void insertSent(ChatMessage message) {
+            sent.add(message);
+        }
+    }
+}
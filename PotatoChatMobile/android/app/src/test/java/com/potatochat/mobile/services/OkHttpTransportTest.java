@@ -0,0 +1,108 @@
+package com.potatochat.mobile.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+
+// 连接复用用 RecordedRequest.getSequenceNumber 判断：同一条连接上的请求序号依次递增，新连接从 0 开始
+public class OkHttpTransportTest {
+    private final MockWebServer server = new MockWebServer();
+    private OkHttpTransport transport;
+
+    @Before
+    public void setUp() throws Exception {
+        server.start();
+        transport = new OkHttpTransport();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        transport.shutdown();
+        server.shutdown();
+    }
+
+    @Test
+    public void sequentialRequestsReuseOneConnection() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            server.enqueue(new MockResponse().setBody("{\"n\":" + i + "}"));
+        }
+        for (int i = 0; i < 10; i++) {
+            try (HttpTransport.Response response = get("/ping")) {
+                assertEquals("{\"n\":" + i + "}", read(response.body()));
+            }
+        }
+
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, server.takeRequest().getSequenceNumber());
+        }
+        assertEquals(1, transport.connectionCount());
+    }
+
+    @Test
+    public void evictedConnectionIsReopened() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}"));
+        server.enqueue(new MockResponse().setBody("{}"));
+        get("/a").close();
+        transport.evictIdleConnections();
+        assertEquals(0, transport.connectionCount());
+
+        get("/b").close();
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+        assertEquals(0, server.takeRequest().getSequenceNumber());
+    }
+
+    @Test
+    public void sendsBodyAndHeaders() throws Exception {
+        server.enqueue(new MockResponse().setResponseCode(201).setHeader("X-Request-Id", "r-1").setBody("{}"));
+        byte[] body = "{\"symbol\":\"BTC/USDT\"}".getBytes(StandardCharsets.UTF_8);
+        try (HttpTransport.Response response = transport.execute(new HttpTransport.Request("POST",
+                server.url("/trading/orders").toString(), Collections.singletonMap("Idempotency-Key", "c-1"), body))) {
+            assertEquals(201, response.code);
+            assertTrue(response.isSuccessful());
+            // 响应头名统一为小写，查询时不区分大小写
+            assertEquals("r-1", response.header("X-Request-Id"));
+        }
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("POST", request.getMethod());
+        assertEquals("c-1", request.getHeader("Idempotency-Key"));
+        assertTrue(request.getHeader("Content-Type").startsWith("application/json"));
+        assertEquals("{\"symbol\":\"BTC/USDT\"}", request.getBody().readUtf8());
+        assertEquals("br,gzip", request.getHeader("Accept-Encoding"));
+    }
+
+    @Test
+    public void postWithoutBodySendsEmptyBody() throws Exception {
+        server.enqueue(new MockResponse().setBody("{}"));
+        transport.execute(new HttpTransport.Request("POST", server.url("/logout").toString(), null, null)).close();
+
+        RecordedRequest request = server.takeRequest();
+        assertEquals("POST", request.getMethod());
+        assertEquals(0, request.getBodySize());
+    }
+
+    private HttpTransport.Response get(String path) throws IOException {
+        return transport.execute(new HttpTransport.Request("GET", server.url(path).toString(), null, null));
+    }
+
+    private static String read(InputStream stream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[256];
+        int n;
+        while ((n = stream.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,71 @@
+package com.potatochat.mobile.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import org.json.JSONObject;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class RequestCoalescerTest {
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+    private final List<Object> results = new ArrayList<>();
+    private final AtomicInteger fetches = new AtomicInteger();
+
+    private final ApiService.ApiCallback callback = new ApiService.ApiCallback() {
+        @Override
+        public void onSuccess(JSONObject response) {
+            results.add(response);
+        }
+
+        @Override
+        public void onError(String error) {
+            results.add("error: " + error);
+        }
+    };
+
+    @Test
+    public void waitersShareOneFetch() {
+        List<Runnable> queued = new ArrayList<>();
+        JSONObject response = new JSONObject();
+        for (int i = 0; i < 3; i++) {
+            coalescer.execute("/trading/portfolio/u1", "error", callback, queued::add, () -> {
+                fetches.incrementAndGet();
+                return response;
+            });
+        }
+        assertEquals(1, queued.size());
+        assertEquals(2, coalescer.getCoalescedCount());
+
+        queued.get(0).run();
+        assertEquals(1, fetches.get());
+        assertEquals(3, results.size());
+        assertSame(response, results.get(2));
+    }
+
+    @Test
+    public void rejectedExecutionFailsWaitersAndClearsKey() {
+        Executor rejecting = command -> {
+            throw new RejectedExecutionException("shut down");
+        };
+        coalescer.execute("/market/prices", "error", callback, rejecting, () -> {
+            fetches.incrementAndGet();
+            return new JSONObject();
+        });
+        assertEquals(1, results.size());
+        assertEquals("error: shut down", results.get(0));
+
+        // 同一个 key 不会一直挂着，下一次正常发出请求
+        coalescer.execute("/market/prices", "error", callback, Runnable::run, () -> {
+            fetches.incrementAndGet();
+            return new JSONObject();
+        });
+        assertEquals(1, fetches.get());
+        assertEquals(2, results.size());
+        assertEquals(0, coalescer.getCoalescedCount());
+    }
+}
@@ -0,0 +1,157 @@
+package com.potatochat.mobile.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+// 用一个阻塞任务占住并发槽位，再按不同顺序排队，放开后检查执行顺序
+public class RequestSchedulerTest {
+    private static final String HOST = "api.potatochat.com";
+    private static final String OTHER_HOST = "cdn.potatochat.com";
+
+    private final List<String> order = new CopyOnWriteArrayList<>();
+    private RequestScheduler scheduler;
+
+    @After
+    public void tearDown() {
+        if (scheduler != null) {
+            scheduler.shutdown();
+        }
+    }
+
+    @Test
+    public void runsQueuedRequestsByPriority() throws Exception {
+        scheduler = new RequestScheduler(1, 1, 1);
+        CountDownLatch gate = block(RequestScheduler.Priority.INTERACTIVE, HOST);
+
+        CountDownLatch done = new CountDownLatch(6);
+        submit(RequestScheduler.Priority.PREFETCH, HOST, "prefetch-1", done);
+        submit(RequestScheduler.Priority.INTERACTIVE, HOST, "interactive-1", done);
+        submit(RequestScheduler.Priority.PREFETCH, HOST, "prefetch-2", done);
+        submit(RequestScheduler.Priority.TRADING, HOST, "trading-1", done);
+        submit(RequestScheduler.Priority.INTERACTIVE, HOST, "interactive-2", done);
+        submit(RequestScheduler.Priority.TRADING, HOST, "trading-2", done);
+        assertEquals(2, scheduler.getQueuedCount(RequestScheduler.Priority.TRADING));
+
+        gate.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        // 同一优先级内保持提交顺序
+        assertEquals(Arrays.asList("trading-1", "trading-2", "interactive-1", "interactive-2",
+                "prefetch-1", "prefetch-2"), order);
+        // 只有一个槽位，预取开始前交易和交互的统计已经记完
+        assertEquals(2, scheduler.getStats(RequestScheduler.Priority.TRADING).getCompletedCount());
+        assertEquals(3, scheduler.getStats(RequestScheduler.Priority.INTERACTIVE).getCompletedCount());
+    }
+
+    @Test
+    public void cancelledRequestNeverRuns() throws Exception {
+        scheduler = new RequestScheduler(1, 1, 1);
+        CountDownLatch gate = block(RequestScheduler.Priority.INTERACTIVE, HOST);
+
+        CountDownLatch done = new CountDownLatch(1);
+        RequestHandle cancelled = submit(RequestScheduler.Priority.INTERACTIVE, HOST, "cancelled", null);
+        submit(RequestScheduler.Priority.INTERACTIVE, HOST, "kept", done);
+        cancelled.cancel();
+        assertEquals(1, scheduler.getQueuedCount(RequestScheduler.Priority.INTERACTIVE));
+
+        gate.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("kept"), order);
+        assertEquals(1, scheduler.getStats(RequestScheduler.Priority.INTERACTIVE).getCancelledCount());
+    }
+
+    @Test
+    public void perHostLimitLetsOtherHostsThrough() throws Exception {
+        scheduler = new RequestScheduler(4, 1, 4);
+        CountDownLatch gate = block(RequestScheduler.Priority.INTERACTIVE, HOST);
+
+        CountDownLatch other = new CountDownLatch(1);
+        CountDownLatch sameHost = new CountDownLatch(1);
+        submit(RequestScheduler.Priority.INTERACTIVE, HOST, "same-host", sameHost);
+        submit(RequestScheduler.Priority.INTERACTIVE, OTHER_HOST, "other-host", other);
+
+        assertTrue(other.await(5, TimeUnit.SECONDS));
+        assertFalse(sameHost.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, scheduler.getQueuedCount(RequestScheduler.Priority.INTERACTIVE));
+
+        gate.countDown();
+        assertTrue(sameHost.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void tradingIgnoresPerHostLimit() throws Exception {
+        scheduler = new RequestScheduler(4, 1, 4);
+        CountDownLatch gate = block(RequestScheduler.Priority.INTERACTIVE, HOST);
+
+        CountDownLatch done = new CountDownLatch(1);
+        submit(RequestScheduler.Priority.TRADING, HOST, "trading", done);
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        gate.countDown();
+    }
+
+    @Test
+    public void prefetchLimitLeavesRoomForInteractive() throws Exception {
+        scheduler = new RequestScheduler(4, 4, 1);
+        CountDownLatch gate = block(RequestScheduler.Priority.PREFETCH, HOST);
+
+        CountDownLatch prefetch = new CountDownLatch(1);
+        CountDownLatch interactive = new CountDownLatch(1);
+        submit(RequestScheduler.Priority.PREFETCH, HOST, "prefetch", prefetch);
+        submit(RequestScheduler.Priority.INTERACTIVE, HOST, "interactive", interactive);
+
+        assertTrue(interactive.await(5, TimeUnit.SECONDS));
+        assertFalse(prefetch.await(100, TimeUnit.MILLISECONDS));
+
+        gate.countDown();
+        assertTrue(prefetch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void shutdownDropsQueuedAndNewRequests() throws Exception {
+        scheduler = new RequestScheduler(1, 1, 1);
+        CountDownLatch gate = block(RequestScheduler.Priority.INTERACTIVE, HOST);
+        submit(RequestScheduler.Priority.INTERACTIVE, HOST, "queued", null);
+
+        scheduler.shutdown();
+        submit(RequestScheduler.Priority.TRADING, HOST, "after-shutdown", null);
+        assertEquals(0, scheduler.getQueuedCount(RequestScheduler.Priority.INTERACTIVE));
+        assertEquals(0, scheduler.getQueuedCount(RequestScheduler.Priority.TRADING));
+
+        gate.countDown();
+        Thread.sleep(100);
+        assertTrue(order.isEmpty());
+    }
+
+    // 提交一个等待放行的任务，返回前确认它已经占住槽位
+    private CountDownLatch block(RequestScheduler.Priority priority, String host) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch gate = new CountDownLatch(1);
+        scheduler.submit(priority, host, () -> {
+            started.countDown();
+            try {
+                gate.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        return gate;
+    }
+
+    private RequestHandle submit(RequestScheduler.Priority priority, String host, String name, CountDownLatch done) {
+        return scheduler.submit(priority, host, () -> {
+            order.add(name);
+            if (done != null) {
+                done.countDown();
+            }
+        });
+    }
+}
@@ -0,0 +1,61 @@
+package com.potatochat.mobile.trading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class FixedPointTest {
+
+    @Test
+    public void parsesDecimalStringsWithoutRounding() {
+        assertEquals(150_000_000L, FixedPoint.parse("1.5"));
+        assertEquals(-1L, FixedPoint.parse("-0.00000001"));
+        assertEquals(10_000_000L, FixedPoint.parse("0.1"));
+        // 超过 8 位的小数直接截断
+        assertEquals(12_345_678L, FixedPoint.parse("0.123456789"));
+    }
+
+    @Test
+    public void parsesJsonNumbers() {
+        assertEquals(5 * FixedPoint.SCALE, FixedPoint.parse((Object) 5L));
+        assertEquals(250_000_000L, FixedPoint.parse((Object) 2.5));
+    }
+
+    @Test
+    public void acceptsLargestRepresentableValue() {
+        assertEquals(Long.MAX_VALUE, FixedPoint.parse("92233720368.54775807"));
+    }
+
+    @Test
+    public void rejectsValuesThatWouldOverflow() {
+        String[] values = {"92233720369", "92233720368.54775808", "-100000000000", "123456789012345678901"};
+        for (String value : values) {
+            try {
+                FixedPoint.parse(value);
+                fail("Expected overflow for " + value);
+            } catch (NumberFormatException expected) {
+                // 溢出时不能返回回绕后的值
+            }
+        }
+        try {
+            FixedPoint.parse((Object) 100_000_000_000L);
+            fail("Expected overflow for long input");
+        } catch (NumberFormatException expected) {
+            // 同上
+        }
+    }
+
+    @Test
+    public void multipliesWithoutOverflowingIntermediateProduct() {
+        long quantity = FixedPoint.parse("50000");
+        long price = FixedPoint.parse("60000.5");
+        assertEquals(FixedPoint.parse("3000025000"), FixedPoint.multiply(quantity, price));
+    }
+
+    @Test
+    public void formatsWithRequestedDecimals() {
+        assertEquals("-1.50", FixedPoint.toString(FixedPoint.parse("-1.5"), 2));
+        assertEquals("42", FixedPoint.toString(FixedPoint.parse("42.9"), 0));
+    }
+}
@@ -0,0 +1,120 @@
+package com.potatochat.mobile.trading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+public class OrderBookTest {
+    private final OrderBook book = new OrderBook("BTC/USDT");
+    private final long[] prices = new long[10];
+    private final long[] sizes = new long[10];
+
+    @Test
+    public void snapshotSortsBothSides() throws Exception {
+        book.applySnapshot(frame(10, levels("100", "1", "102", "2", "101", "3"), levels("105", "1", "103", "2", "104", "3")));
+
+        assertFalse(book.isResyncing());
+        assertEquals(10, book.getSequence());
+        // 买盘降序、卖盘升序
+        assertEquals(3, book.copyBids(10, prices, sizes));
+        assertPrices("102", "101", "100");
+        assertEquals(3, book.copyAsks(10, prices, sizes));
+        assertPrices("103", "104", "105");
+        assertEquals(FixedPoint.parse("102"), book.getBestBid());
+        assertEquals(FixedPoint.parse("103"), book.getBestAsk());
+    }
+
+    @Test
+    public void updatesInsertReplaceAndDeleteLevels() throws Exception {
+        book.applySnapshot(frame(1, levels("100", "1", "99", "1"), levels("101", "1")));
+        long version = book.getVersion();
+
+        assertEquals(OrderBook.Result.APPLIED,
+                book.applyUpdate(frame(2, levels("99.5", "4", "100", "0", "99", "2"), levels("101", "0"))));
+        assertTrue(book.getVersion() > version);
+        assertEquals(2, book.copyBids(10, prices, sizes));
+        assertPrices("99.5", "99");
+        assertEquals(FixedPoint.parse("4"), sizes[0]);
+        assertEquals(FixedPoint.parse("2"), sizes[1]);
+        assertEquals(0, book.getAskDepth());
+        assertEquals(0, book.getBestAsk());
+    }
+
+    @Test
+    public void staleUpdatesAreIgnored() throws Exception {
+        book.applySnapshot(frame(5, levels("100", "1"), null));
+        assertEquals(OrderBook.Result.STALE, book.applyUpdate(frame(5, levels("100", "9"), null)));
+        assertEquals(OrderBook.Result.STALE, book.applyUpdate(frame(3, levels("100", "9"), null)));
+        book.copyBids(1, prices, sizes);
+        assertEquals(FixedPoint.parse("1"), sizes[0]);
+    }
+
+    @Test
+    public void gapTriggersResyncAndBufferedUpdatesReplayAfterSnapshot() throws Exception {
+        book.applySnapshot(frame(1, levels("100", "1"), null));
+        assertEquals(OrderBook.Result.GAP, book.applyUpdate(frame(3, levels("100", "3"), null)));
+        assertTrue(book.isResyncing());
+        assertEquals(1, book.getGapCount());
+        assertEquals(OrderBook.Result.BUFFERED, book.applyUpdate(frame(4, levels("100", "4"), null)));
+
+        // 快照已经包含 3，补上 4；缓存里的 3 作为旧增量丢弃
+        book.applySnapshot(frame(3, levels("100", "3"), null));
+        assertFalse(book.isResyncing());
+        assertEquals(4, book.getSequence());
+        book.copyBids(1, prices, sizes);
+        assertEquals(FixedPoint.parse("4"), sizes[0]);
+    }
+
+    @Test
+    public void gapInsideBufferedUpdatesKeepsResyncing() throws Exception {
+        book.invalidate();
+        book.applyUpdate(frame(12, null, null));
+        book.applySnapshot(frame(10, levels("100", "1"), null));
+
+        assertTrue(book.isResyncing());
+        assertEquals(10, book.getSequence());
+    }
+
+    @Test
+    public void manyLevelsGrowTheArrays() throws Exception {
+        JSONArray bids = new JSONArray();
+        for (int i = 1; i <= 200; i++) {
+            bids.put(new JSONArray().put(String.valueOf(i)).put("1"));
+        }
+        book.applySnapshot(frame(1, bids, null));
+        assertEquals(200, book.getBidDepth());
+        assertEquals(FixedPoint.parse("200"), book.getBestBid());
+        // 只复制调用方数组放得下的档数
+        assertEquals(10, book.copyBids(50, prices, sizes));
+        assertEquals(FixedPoint.parse("191"), prices[9]);
+    }
+
+    private void assertPrices(String... expected) {
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(FixedPoint.parse(expected[i]), prices[i]);
+        }
+    }
+
+    private static JSONArray levels(String... values) {
+        JSONArray levels = new JSONArray();
+        for (int i = 0; i < values.length; i += 2) {
+            levels.put(new JSONArray().put(values[i]).put(values[i + 1]));
+        }
+        return levels;
+    }
+
+    private static JSONObject frame(long seq, JSONArray bids, JSONArray asks) throws Exception {
+        JSONObject frame = new JSONObject().put("seq", seq);
+        if (bids != null) {
+            frame.put("bids", bids);
+        }
+        if (asks != null) {
+            frame.put("asks", asks);
+        }
+        return frame;
+    }
+}
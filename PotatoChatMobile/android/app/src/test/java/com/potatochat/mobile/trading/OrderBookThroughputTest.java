@@ -0,0 +1,78 @@
+package com.potatochat.mobile.trading;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import com.potatochat.mobile.utils.AllocationCounter;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import java.math.BigDecimal;
+
+// 基准式测试：帧预先构造好，只统计 applyUpdate 本身的吞吐和每次更新的分配字节数
+// 吞吐只打印不断言；分配量断言一个宽松上限，防止有人在热路径上引入装箱或临时对象
+public class OrderBookThroughputTest {
+    private static final int DEPTH = 50;
+    private static final int WARMUP = 20_000;
+    private static final int UPDATES = 100_000;
+    // 偶发的 TLAB 统计抖动留一点余量；每次更新若新建对象，至少会分配几十字节
+    private static final double MAX_BYTES_PER_UPDATE = 16;
+
+    @Test
+    public void appliesDeltasWithoutAllocating() throws Exception {
+        assumeTrue("Thread allocation counter not supported", AllocationCounter.isSupported());
+        OrderBook book = new OrderBook("BTC/USDT");
+        book.applySnapshot(snapshot());
+        JSONObject[] frames = new JSONObject[WARMUP + UPDATES];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = delta(i + 1, i);
+        }
+
+        for (int i = 0; i < WARMUP; i++) {
+            book.applyUpdate(frames[i]);
+        }
+
+        long bytesBefore = AllocationCounter.allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = WARMUP; i < frames.length; i++) {
+            book.applyUpdate(frames[i]);
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocated = AllocationCounter.allocatedBytes() - bytesBefore;
+
+        assertEquals(frames.length, book.getSequence());
+        assertEquals(DEPTH, book.getBidDepth());
+        double bytesPerUpdate = (double) allocated / UPDATES;
+        System.out.printf("order book: %.0f updates/s, %.2f bytes/update (%d updates, depth %d)%n",
+                UPDATES * 1e9 / elapsed, bytesPerUpdate, UPDATES, DEPTH);
+        assertTrue("Allocated " + bytesPerUpdate + " bytes per update", bytesPerUpdate < MAX_BYTES_PER_UPDATE);
+    }
+
+    private static JSONObject snapshot() throws Exception {
+        JSONArray bids = new JSONArray();
+        JSONArray asks = new JSONArray();
+        for (int i = 0; i < DEPTH; i++) {
+            bids.put(level(6_425_000 - i * 50, "1.5"));
+            asks.put(level(6_425_050 + i * 50, "1.5"));
+        }
+        return new JSONObject().put("seq", 0).put("bids", bids).put("asks", asks);
+    }
+
+    // 每帧改两档数量，再删一档、加回一档，档数保持不变
+    private static JSONObject delta(long seq, int i) throws Exception {
+        int bidLevel = i % DEPTH;
+        int askLevel = (i * 7) % DEPTH;
+        String size = BigDecimal.valueOf(1 + i % 97, 2).toPlainString();
+        JSONArray bids = new JSONArray()
+                .put(level(6_425_000 - bidLevel * 50, size));
+        JSONArray asks = new JSONArray()
+                .put(level(6_425_050 + askLevel * 50, "0"))
+                .put(level(6_425_050 + askLevel * 50, size));
+        return new JSONObject().put("seq", seq).put("bids", bids).put("asks", asks);
+    }
+
+    private static JSONArray level(long priceCents, String size) {
+        return new JSONArray().put(BigDecimal.valueOf(priceCents, 2).toPlainString()).put(size);
+    }
+}
@@ -0,0 +1,22 @@
+package com.potatochat.mobile.utils;
+
+import java.lang.management.ManagementFactory;
+
+// 当前线程累计分配的字节数，用 HotSpot 的 com.sun.management.ThreadMXBean 读取
+// 不支持的 JVM 上 isSupported 返回 false，测试应跳过
+public final class AllocationCounter {
+    private static final java.lang.management.ThreadMXBean BEAN = ManagementFactory.getThreadMXBean();
+
+    private AllocationCounter() {
+    }
+
+    public static boolean isSupported() {
+        return BEAN instanceof com.sun.management.ThreadMXBean
+                && ((com.sun.management.ThreadMXBean) BEAN).isThreadAllocatedMemorySupported()
+                && ((com.sun.management.ThreadMXBean) BEAN).isThreadAllocatedMemoryEnabled();
+    }
+
+    public static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) BEAN).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+}
@@ -0,0 +1,159 @@
+package com.potatochat.mobile.utils;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// 假时钟调度器：任务只在 advance 时按到期顺序在调用线程上执行；取消的任务立即移出队列
+public class FakeScheduler extends AbstractExecutorService implements ScheduledExecutorService {
+    private final PriorityQueue<Task<?>> queue = new PriorityQueue<>();
+    private long now;
+    private long sequence;
+
+    private final class Task<V> extends FutureTask<V> implements ScheduledFuture<V> {
+        private final long seq = sequence++;
+        private final long period;
+        private long time;
+
+        Task(Callable<V> callable, long time, long period) {
+            super(callable);
+            this.time = time;
+            this.period = period;
+        }
+
+        @Override
+        public void run() {
+            if (period == 0) {
+                super.run();
+                return;
+            }
+            if (runAndReset()) {
+                // 执行期间被其他线程取消的不再放回队列
+                synchronized (FakeScheduler.this) {
+                    if (!isCancelled()) {
+                        time = now + period;
+                        queue.add(this);
+                    }
+                }
+            }
+        }
+
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            boolean cancelled = super.cancel(mayInterruptIfRunning);
+            synchronized (FakeScheduler.this) {
+                queue.remove(this);
+            }
+            return cancelled;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            synchronized (FakeScheduler.this) {
+                return unit.convert(time - now, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            Task<?> task = (Task<?>) other;
+            int byTime = Long.compare(time, task.time);
+            return byTime != 0 ? byTime : Long.compare(seq, task.seq);
+        }
+    }
+
+    public synchronized long now() {
+        return now;
+    }
+
+    // 尚未执行也未取消的任务数
+    public synchronized int pendingCount() {
+        return queue.size();
+    }
+
+    // 把时钟拨快 delay，期间到期的任务依次执行，包括执行中新安排的
+    public void advance(long delay, TimeUnit unit) {
+        long target;
+        synchronized (this) {
+            target = now + unit.toMillis(delay);
+        }
+        while (true) {
+            Task<?> task;
+            synchronized (this) {
+                task = queue.peek();
+                if (task == null || task.time > target) {
+                    now = target;
+                    return;
+                }
+                queue.poll();
+                now = task.time;
+            }
+            task.run();
+        }
+    }
+
+    private synchronized <V> Task<V> enqueue(Callable<V> callable, long delay, long period, TimeUnit unit) {
+        Task<V> task = new Task<>(callable, now + Math.max(unit.toMillis(delay), 0), unit.toMillis(period));
+        queue.add(task);
+        return task;
+    }
+
+    @Override
+    public ScheduledFuture<?> schedule(Runnable command, long delay, TimeUnit unit) {
+        return enqueue(Executors.callable(command), delay, 0, unit);
+    }
+
+    @Override
+    public <V> ScheduledFuture<V> schedule(Callable<V> callable, long delay, TimeUnit unit) {
+        return enqueue(callable, delay, 0, unit);
+    }
+
+    // 假时钟下没有执行耗时，固定频率和固定延迟相同
+    @Override
+    public ScheduledFuture<?> scheduleAtFixedRate(Runnable command, long initialDelay, long period, TimeUnit unit) {
+        return enqueue(Executors.callable(command), initialDelay, period, unit);
+    }
+
+    @Override
+    public ScheduledFuture<?> scheduleWithFixedDelay(Runnable command, long initialDelay, long delay, TimeUnit unit) {
+        return enqueue(Executors.callable(command), initialDelay, delay, unit);
+    }
+
+    // 与 schedule(command, 0) 相同，在下一次 advance 时执行
+    @Override
+    public void execute(Runnable command) {
+        schedule(command, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void shutdown() {
+    }
+
+    @Override
+    public List<Runnable> shutdownNow() {
+        return Collections.emptyList();
+    }
+
+    @Override
+    public boolean isShutdown() {
+        return false;
+    }
+
+    @Override
+    public boolean isTerminated() {
+        return false;
+    }
+
+    @Override
+    public boolean awaitTermination(long timeout, TimeUnit unit) {
+        return false;
+    }
+}
@@ -0,0 +1,165 @@
+package com.potatochat.mobile.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import android.util.Log;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+
+public class LoggerTest {
+    private final List<String> lines = new ArrayList<>();
+    private final List<Throwable> errors = new ArrayList<>();
+    private final Logger log = new Logger("Test");
+    private int previousLevel;
+    // 只有分配量测试用：阻止 JIT 把“之前”的字符串拼接当作死代码消除
+    private int sinkChars;
+
+    // 记录 toString 被调用的次数，用来确认未开启的级别不会格式化参数
+    private static final class Probe {
+        int formatted;
+
+        @Override
+        public String toString() {
+            formatted++;
+            return "probe";
+        }
+    }
+
+    @Before
+    public void setUp() {
+        previousLevel = Logger.getMinLevel();
+        Logger.setSink((level, tag, message, error) -> {
+            lines.add(level + " " + tag + " " + message);
+            errors.add(error);
+        });
+    }
+
+    @After
+    public void tearDown() {
+        Logger.setMinLevel(previousLevel);
+        Logger.setSink(null);
+    }
+
+    @Test
+    public void disabledLevelsSkipFormatting() {
+        Logger.setMinLevel(Log.INFO);
+        Probe probe = new Probe();
+        log.d("frame", "value", probe);
+        log.d("frame", "a", probe, "b", probe);
+        log.sampled("frame", "frame", "value", probe);
+
+        assertTrue(lines.isEmpty());
+        assertEquals(0, probe.formatted);
+        assertFalse(log.isDebugEnabled());
+        assertTrue(log.isEnabled(Log.WARN));
+    }
+
+    @Test
+    public void formatsEventWithFields() {
+        Logger.setMinLevel(Log.DEBUG);
+        log.i("connected");
+        log.d("frame", "bytes", 42L);
+        log.i("reconnect", "attempt", 3, "delayMs", 500L);
+
+        assertEquals(Log.INFO + " Test connected", lines.get(0));
+        assertEquals(Log.DEBUG + " Test frame bytes=42", lines.get(1));
+        assertEquals(Log.INFO + " Test reconnect attempt=3 delayMs=500", lines.get(2));
+    }
+
+    @Test
+    public void errorsCarryThrowable() {
+        Logger.setMinLevel(Log.ERROR);
+        RuntimeException failure = new RuntimeException("boom");
+        log.w("ignored");
+        log.e("decode failed", "bytes", 7, failure);
+
+        assertEquals(1, lines.size());
+        assertEquals(Log.ERROR + " Test decode failed bytes=7", lines.get(0));
+        assertSame(failure, errors.get(0));
+    }
+
+    @Test
+    public void sampledEventsPassFirstOfEveryN() {
+        Logger.setMinLevel(Log.DEBUG);
+        log.setSampleRate("frame", 3);
+        for (int i = 0; i < 7; i++) {
+            log.sampled("frame", "frame", "seq", i);
+        }
+        // 第 1、4、7 次输出
+        assertEquals(3, lines.size());
+        assertTrue(lines.get(0).endsWith("seq=0"));
+        assertTrue(lines.get(1).endsWith("seq=3"));
+        assertTrue(lines.get(2).endsWith("seq=6"));
+
+        // 采样率为 1 时取消采样
+        log.setSampleRate("frame", 1);
+        log.sampled("frame", "frame", "seq", 7);
+        log.sampled("frame", "frame", "seq", 8);
+        assertEquals(5, lines.size());
+    }
+
+    // 之前：每帧都拼接整条 JSON 再交给 Log.d；之后：关闭的级别直接返回，开启时按 1/100 采样
+    @Test
+    public void perFrameLoggingAllocations() throws Exception {
+        assumeTrue("Thread allocation counter not supported", AllocationCounter.isSupported());
+        Logger.setSink((level, tag, message, error) -> sinkChars += message.length());
+        JSONObject frame = new JSONObject().put("type", "trading_update")
+                .put("data", new JSONObject().put("symbol", "BTC/USDT").put("seq", 42)
+                        .put("bids", new JSONArray().put(new JSONArray().put("64250.37").put("0.5"))));
+        int frames = 20_000;
+
+        long before = bytesPerFrame(frames, () -> {
+            String line = "Received message: " + frame.toString();
+            sinkChars += line.length();
+        });
+
+        Logger.setMinLevel(Log.INFO);
+        long disabled = bytesPerFrame(frames, () -> {
+            log.d("frame", "bytes", 128L);
+            log.sampled("trading_update", "Received", "type", "trading_update", "bytes", 128L);
+        });
+
+        Logger.setMinLevel(Log.DEBUG);
+        log.setSampleRate("trading_update", 100);
+        long sampled = bytesPerFrame(frames, () ->
+                log.sampled("trading_update", "Received", "type", "trading_update", "bytes", 128L));
+
+        System.out.printf("logging bytes/frame: before=%d, disabled=%d, sampled 1/100=%d%n",
+                before, disabled, sampled);
+        assertEquals(0, disabled);
+        assertTrue("sampled " + sampled + " vs before " + before, sampled * 10 < before);
+    }
+
+    private static long bytesPerFrame(int frames, Runnable perFrame) {
+        // 先跑一轮让 JIT 稳定下来
+        for (int i = 0; i < frames; i++) {
+            perFrame.run();
+        }
+        long start = AllocationCounter.allocatedBytes();
+        for (int i = 0; i < frames; i++) {
+            perFrame.run();
+        }
+        return (AllocationCounter.allocatedBytes() - start) / frames;
+    }
+
+    @Test
+    public void disabledLevelDoesNotConsumeSamples() {
+        log.setSampleRate("frame", 2);
+        Logger.setMinLevel(Log.INFO);
+        log.sampled("frame", "frame", "seq", 0);
+
+        Logger.setMinLevel(Log.DEBUG);
+        log.sampled("frame", "frame", "seq", 1);
+        assertEquals(1, lines.size());
+        assertTrue(lines.get(0).endsWith("seq=1"));
+    }
+}
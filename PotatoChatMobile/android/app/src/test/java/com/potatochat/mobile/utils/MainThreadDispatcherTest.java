@@ -0,0 +1,106 @@
+package com.potatochat.mobile.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 用手动推进的“帧”代替 Choreographer：frames 里每个任务就是一次向主线程的 post
+public class MainThreadDispatcherTest {
+    private final List<Runnable> frames = new ArrayList<>();
+    private final MainThreadDispatcher dispatcher = new MainThreadDispatcher(frames::add);
+    private final AtomicInteger ran = new AtomicInteger();
+
+    @Test
+    public void burstFromManyThreadsPostsOnce() throws Exception {
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for (int i = 0; i < 2500; i++) {
+                    dispatcher.execute(ran::incrementAndGet);
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(1, dispatcher.getPostCount());
+        assertEquals(10_000, dispatcher.getPendingCount());
+
+        runFrames();
+        assertEquals(10_000, ran.get());
+        assertEquals(10_000, dispatcher.getDeliveredCount());
+        // 1 万个空回调一帧跑得完；机器很忙时超出预算会顺延，但 post 次数仍然远小于回调数
+        assertTrue("Posted " + dispatcher.getPostCount() + " times", dispatcher.getPostCount() <= 10);
+    }
+
+    @Test
+    public void postsOncePerFrameWithPendingWork() {
+        for (int frame = 0; frame < 20; frame++) {
+            for (int i = 0; i < 100; i++) {
+                dispatcher.execute(ran::incrementAndGet);
+            }
+            runFrames();
+        }
+        assertEquals(2000, ran.get());
+        // 每帧一次；GC 或 JIT 偶尔让某一帧超出预算，顺延时多 post 一次
+        long posts = dispatcher.getPostCount();
+        assertTrue("Posted " + posts + " times for 20 frames", posts >= 20 && posts <= 30);
+        assertTrue(dispatcher.getMaxBatchSize() <= 100);
+
+        // 没有回调时不 post
+        runFrames();
+        assertEquals(posts, dispatcher.getPostCount());
+    }
+
+    @Test
+    public void overBudgetFrameDefersRestToNextFrame() {
+        for (int i = 0; i < 4; i++) {
+            dispatcher.execute(() -> {
+                sleep(5);
+                ran.incrementAndGet();
+            });
+        }
+        runOneFrame();
+        // 8ms 预算最多容下两个 5ms 的回调，剩下的重新 post
+        assertTrue(ran.get() >= 1 && ran.get() <= 2);
+        assertEquals(1, frames.size());
+        assertEquals(2, dispatcher.getPostCount());
+
+        runFrames();
+        assertEquals(4, ran.get());
+    }
+
+    @Test
+    public void failingCallbackDoesNotStopTheFrame() {
+        dispatcher.execute(() -> {
+            throw new IllegalStateException("boom");
+        });
+        dispatcher.execute(ran::incrementAndGet);
+        runFrames();
+        assertEquals(1, ran.get());
+        assertEquals(2, dispatcher.getDeliveredCount());
+    }
+
+    private void runOneFrame() {
+        frames.remove(0).run();
+    }
+
+    private void runFrames() {
+        while (!frames.isEmpty()) {
+            runOneFrame();
+        }
+    }
+
+    private static void sleep(long ms) {
+        try {
+            Thread.sleep(ms);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
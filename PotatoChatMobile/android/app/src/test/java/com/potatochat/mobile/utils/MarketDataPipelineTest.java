@@ -0,0 +1,77 @@
+package com.potatochat.mobile.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.potatochat.mobile.models.Quote;
+import org.json.JSONObject;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+public class MarketDataPipelineTest {
+    private final FakeScheduler scheduler = new FakeScheduler();
+    private final MarketDataPipeline pipeline = new MarketDataPipeline(scheduler);
+    private final List<Map<String, Quote>> batches = new ArrayList<>();
+
+    @Test
+    public void conflatesTicksToOneBatchPerInterval() throws Exception {
+        pipeline.addListener(batches::add);
+        pipeline.watch("BTC/USDT");
+        pipeline.watch("ETH/USDT");
+        for (int i = 1; i <= 50; i++) {
+            pipeline.onTick(tick("BTC/USDT", 100 + i));
+        }
+        pipeline.onTick(tick("ETH/USDT", 10));
+        pipeline.onTick(tick("DOGE/USDT", 1));
+        // 同一批次只安排一次 flush
+        assertEquals(1, scheduler.pendingCount());
+
+        scheduler.advance(100, TimeUnit.MILLISECONDS);
+        assertEquals(1, batches.size());
+        assertEquals(150, batches.get(0).get("BTC/USDT").getPrice(), 0);
+        assertEquals(10, batches.get(0).get("ETH/USDT").getPrice(), 0);
+        assertFalse(batches.get(0).containsKey("DOGE/USDT"));
+
+        assertEquals(52, pipeline.getReceivedTicks());
+        assertEquals(1, pipeline.getDroppedTicks());
+        assertEquals(49, pipeline.getConflatedTicks());
+        assertEquals(2, pipeline.getDeliveredTicks());
+        assertEquals(1, pipeline.getDeliveredBatches());
+        // 没有新行情时不再唤醒
+        assertEquals(0, scheduler.pendingCount());
+    }
+
+    @Test
+    public void unwatchDropsPendingQuoteOnceLastWatcherLeaves() throws Exception {
+        pipeline.addListener(batches::add);
+        pipeline.watch("BTC/USDT");
+        pipeline.watch("BTC/USDT");
+        pipeline.onTick(tick("BTC/USDT", 100));
+
+        pipeline.unwatch("BTC/USDT");
+        assertTrue(pipeline.isWatched("BTC/USDT"));
+        pipeline.unwatch("BTC/USDT");
+        assertFalse(pipeline.isWatched("BTC/USDT"));
+
+        scheduler.advance(100, TimeUnit.MILLISECONDS);
+        assertTrue(batches.isEmpty());
+    }
+
+    @Test
+    public void depthAndAckFramesAreNotQuotes() throws Exception {
+        assertTrue(MarketDataPipeline.isQuote(new JSONObject().put("symbol", "BTC/USDT").put("price", 1)));
+        assertFalse(MarketDataPipeline.isQuote(new JSONObject().put("symbol", "BTC/USDT").put("seq", 7)
+                .put("price", 1)));
+        assertFalse(MarketDataPipeline.isQuote(new JSONObject().put("clientOrderId", "c-1").put("price", 1)));
+        assertFalse(MarketDataPipeline.isQuote(new JSONObject().put("symbol", "BTC/USDT")));
+    }
+
+    private static JSONObject tick(String symbol, double price) throws Exception {
+        return new JSONObject().put("type", "trading_update")
+                .put("data", new JSONObject().put("symbol", symbol).put("price", price));
+    }
+}
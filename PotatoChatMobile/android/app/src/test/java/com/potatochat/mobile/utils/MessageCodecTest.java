@@ -0,0 +1,100 @@
+package com.potatochat.mobile.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import java.io.ByteArrayInputStream;
+import java.math.BigDecimal;
+
+// 两种编码都要能无损往返；msgpack 的体积应该更小。编解码耗时只打印，不做断言
+public class MessageCodecTest {
+    private static final int WARMUP = 2_000;
+    private static final int ITERATIONS = 20_000;
+
+    @Test
+    public void bothCodecsRoundTrip() throws Exception {
+        for (JSONObject frame : new JSONObject[]{depthFrame(), chatFrame()}) {
+            for (MessageCodec codec : new MessageCodec[]{JsonCodec.INSTANCE, MessagePackCodec.INSTANCE}) {
+                byte[] data = codec.encode(frame);
+                assertTrue(codec.name() + " " + frame, frame.similar(codec.decode(data, 0, data.length)));
+                assertTrue(codec.name() + " stream", frame.similar(codec.decode(new ByteArrayInputStream(data))));
+            }
+        }
+    }
+
+    @Test
+    public void numberTypesMatchJson() throws Exception {
+        JSONObject frame = new JSONObject().put("seq", 7).put("ts", 1_700_000_000_000L).put("price", 0.5)
+                .put("last", 64_250.37).put("amount", 2.0).put("nothing", JSONObject.NULL);
+        for (MessageCodec codec : new MessageCodec[]{JsonCodec.INSTANCE, MessagePackCodec.INSTANCE}) {
+            byte[] data = codec.encode(frame);
+            JSONObject decoded = codec.decode(data, 0, data.length);
+
+            assertEquals(codec.name(), Integer.class, decoded.get("seq").getClass());
+            assertEquals(codec.name(), Long.class, decoded.get("ts").getClass());
+            assertEquals(codec.name(), 0.5, decoded.getDouble("price"), 0);
+            assertEquals(codec.name(), 64_250.37, decoded.getDouble("last"), 0);
+            // 整数值的小数两种编码都按整数传
+            assertEquals(codec.name(), Integer.class, decoded.get("amount").getClass());
+            assertTrue(codec.name(), decoded.isNull("nothing"));
+        }
+    }
+
+    @Test
+    public void messagePackIsSmallerAndReportsTiming() throws Exception {
+        for (JSONObject frame : new JSONObject[]{depthFrame(), chatFrame()}) {
+            byte[] json = JsonCodec.INSTANCE.encode(frame);
+            byte[] packed = MessagePackCodec.INSTANCE.encode(frame);
+            assertTrue("msgpack " + packed.length + " bytes vs json " + json.length, packed.length < json.length);
+            System.out.printf("codec size %s: json=%d bytes msgpack=%d bytes (%.0f%%)%n", frame.getString("type"),
+                    json.length, packed.length, 100.0 * packed.length / json.length);
+        }
+        report(JsonCodec.INSTANCE, depthFrame());
+        report(MessagePackCodec.INSTANCE, depthFrame());
+    }
+
+    private static void report(MessageCodec codec, JSONObject frame) throws Exception {
+        byte[] data = codec.encode(frame);
+        for (int i = 0; i < WARMUP; i++) {
+            codec.decode(codec.encode(frame), 0, data.length);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            data = codec.encode(frame);
+        }
+        long encodeNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            codec.decode(data, 0, data.length);
+        }
+        long decodeNanos = System.nanoTime() - start;
+        System.out.printf("codec %s: encode %.2f us/op, decode %.2f us/op%n", codec.name(),
+                encodeNanos / 1000.0 / ITERATIONS, decodeNanos / 1000.0 / ITERATIONS);
+    }
+
+    // 20 档深度增量，和线上 trading_update 的形状一致：档位是十进制字符串，由 FixedPoint 精确解析
+    private static JSONObject depthFrame() throws Exception {
+        JSONArray bids = new JSONArray();
+        JSONArray asks = new JSONArray();
+        for (int i = 0; i < 20; i++) {
+            bids.put(new JSONArray().put(decimal(6_425_037 - i * 7, 2)).put(decimal(1_250 + i * 313, 4)));
+            asks.put(new JSONArray().put(decimal(6_425_051 + i * 7, 2)).put(decimal(17_500 + i * 91, 4)));
+        }
+        return new JSONObject().put("type", "trading_update")
+                .put("data", new JSONObject().put("symbol", "BTC/USDT").put("seq", 123_456).put("bids", bids)
+                        .put("asks", asks).put("timestamp", 1_700_000_000_123L));
+    }
+
+    private static String decimal(long unscaled, int scale) {
+        return BigDecimal.valueOf(unscaled, scale).toPlainString();
+    }
+
+    private static JSONObject chatFrame() throws Exception {
+        return new JSONObject().put("type", "chat_message").put("id", "m-42").put("roomId", "r-1")
+                .put("senderId", "u-7").put("content", "土豆聊天 hello").put("messageType", "text")
+                .put("timestamp", 1_700_000_000_456L).put("edited", false);
+    }
+}
@@ -0,0 +1,203 @@
+package com.potatochat.mobile.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.List;
+
+public class OutboundQueueTest {
+    private final List<JSONObject> sent = new ArrayList<>();
+    private final OutboundQueue.Sender sender = message -> sent.add(message);
+
+    @Test
+    public void coalescesByTypeAndRoom() throws Exception {
+        OutboundQueue queue = new OutboundQueue(100, OutboundQueue.OverflowPolicy.FAIL, 0);
+        queue.offer(typing("r1", 1));
+        queue.offer(typing("r2", 1));
+        queue.offer(typing("r1", 2));
+        queue.offer(message("r1", "m1"));
+        queue.offer(typing("r1", 3));
+        queue.offer(frame("read_receipt", "r1").put("seq", 1));
+
+        // 同房间同类型只保留最新一条，其余类型、其他房间各自排队
+        assertEquals(4, queue.getDepth());
+        assertEquals(2, queue.getCoalescedCount());
+
+        assertEquals(4, queue.flush(sender));
+        assertEquals("typing", sent.get(0).getString("type"));
+        assertEquals("r1", sent.get(0).getString("roomId"));
+        assertEquals(3, sent.get(0).getInt("seq"));
+        assertEquals("r2", sent.get(1).getString("roomId"));
+        assertEquals("m1", sent.get(2).getString("id"));
+        assertEquals("read_receipt", sent.get(3).getString("type"));
+    }
+
+    @Test
+    public void chatMessagesAreNeverCoalesced() throws Exception {
+        OutboundQueue queue = new OutboundQueue(100, OutboundQueue.OverflowPolicy.FAIL, 0);
+        for (int i = 0; i < 5; i++) {
+            queue.offer(message("r1", "m" + i));
+        }
+        assertEquals(5, queue.getDepth());
+        assertEquals(0, queue.getCoalescedCount());
+
+        queue.flush(sender);
+        for (int i = 0; i < 5; i++) {
+            assertEquals("m" + i, sent.get(i).getString("id"));
+        }
+    }
+
+    @Test
+    public void sentEntryNoLongerAbsorbsNewFrames() throws Exception {
+        OutboundQueue queue = new OutboundQueue(100, OutboundQueue.OverflowPolicy.FAIL, 0);
+        queue.offer(typing("r1", 1));
+        queue.flush(sender);
+        queue.offer(typing("r1", 2));
+
+        assertEquals(1, queue.getDepth());
+        assertEquals(0, queue.getCoalescedCount());
+    }
+
+    @Test
+    public void failedSendKeepsRemainingInOrder() throws Exception {
+        OutboundQueue queue = new OutboundQueue(100, OutboundQueue.OverflowPolicy.FAIL, 0);
+        for (int i = 0; i < 4; i++) {
+            queue.offer(message("r1", "m" + i));
+        }
+        // 第三条发送失败，停止并保留它和之后的消息
+        assertEquals(2, queue.flush(message -> sent.size() < 2 && sent.add(message)));
+        assertEquals(2, queue.getDepth());
+
+        assertEquals(2, queue.flush(sender));
+        assertEquals("m2", sent.get(2).getString("id"));
+        assertEquals("m3", sent.get(3).getString("id"));
+    }
+
+    @Test
+    public void batchesLeadingCoalescedFrames() throws Exception {
+        OutboundQueue queue = new OutboundQueue(100, OutboundQueue.OverflowPolicy.FAIL, 0);
+        queue.setBatchingEnabled(true);
+        queue.setMaxBatchSize(2);
+        queue.offer(typing("r1", 1));
+        queue.offer(typing("r2", 1));
+        queue.offer(typing("r3", 1));
+        queue.offer(message("r1", "m1"));
+
+        assertEquals(4, queue.flush(sender));
+        // 2 条一帧，剩下 1 条单独发，聊天消息不进 batch
+        assertEquals(3, sent.size());
+        JSONArray batch = sent.get(0).getJSONArray("messages");
+        assertEquals("batch", sent.get(0).getString("type"));
+        assertEquals(2, batch.length());
+        assertEquals("r1", batch.getJSONObject(0).getString("roomId"));
+        assertEquals("r3", sent.get(1).getString("roomId"));
+        assertEquals("m1", sent.get(2).getString("id"));
+        assertEquals(3, queue.getSentFrames());
+        assertEquals(4, queue.getSentMessages());
+    }
+
+    @Test
+    public void failedBatchIsRequeued() throws Exception {
+        OutboundQueue queue = new OutboundQueue(100, OutboundQueue.OverflowPolicy.FAIL, 0);
+        queue.setBatchingEnabled(true);
+        queue.offer(typing("r1", 1));
+        queue.offer(typing("r2", 1));
+
+        assertEquals(0, queue.flush(message -> false));
+        assertEquals(2, queue.getDepth());
+        // 重新入队后仍可合并
+        queue.offer(typing("r1", 2));
+        assertEquals(2, queue.getDepth());
+
+        queue.flush(sender);
+        JSONArray batch = sent.get(0).getJSONArray("messages");
+        assertEquals(2, batch.getJSONObject(0).getInt("seq"));
+    }
+
+    @Test
+    public void failPolicyRejectsWhenFull() throws Exception {
+        OutboundQueue queue = new OutboundQueue(2, OutboundQueue.OverflowPolicy.FAIL, 0);
+        assertTrue(queue.offer(typing("r1", 1)));
+        assertTrue(queue.offer(message("r1", "m1")));
+        assertFalse(queue.offer(message("r1", "m2")));
+        assertFalse(queue.offer(typing("r2", 1)));
+        // 合并到已有条目不占容量
+        assertTrue(queue.offer(typing("r1", 2)));
+        assertEquals(2, queue.getDepth());
+        assertEquals(2, queue.getRejectedCount());
+    }
+
+    @Test
+    public void dropOldestEvictsHeadAndItsCoalesceKey() throws Exception {
+        OutboundQueue queue = new OutboundQueue(2, OutboundQueue.OverflowPolicy.DROP_OLDEST, 0);
+        queue.offer(typing("r1", 1));
+        queue.offer(message("r1", "m1"));
+        queue.offer(message("r1", "m2"));
+        assertEquals(1, queue.getDroppedCount());
+
+        // 被丢弃的 typing 不再接收合并，新的 typing 重新排队
+        queue.offer(typing("r1", 2));
+        assertEquals(2, queue.getDroppedCount());
+        assertEquals(0, queue.getCoalescedCount());
+
+        queue.flush(sender);
+        assertEquals("m2", sent.get(0).getString("id"));
+        assertEquals(2, sent.get(1).getInt("seq"));
+    }
+
+    @Test
+    public void blockPolicyTimesOutWhenNotDrained() throws Exception {
+        OutboundQueue queue = new OutboundQueue(1, OutboundQueue.OverflowPolicy.BLOCK, 20);
+        queue.offer(message("r1", "m1"));
+        assertFalse(queue.offer(message("r1", "m2")));
+        assertEquals(1, queue.getRejectedCount());
+    }
+
+    @Test
+    public void blockPolicyResumesAfterFlush() throws Exception {
+        OutboundQueue queue = new OutboundQueue(1, OutboundQueue.OverflowPolicy.BLOCK, 5000);
+        queue.offer(message("r1", "m1"));
+        Thread drainer = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            queue.flush(message -> true);
+        });
+        drainer.start();
+
+        assertTrue(queue.offer(message("r1", "m2")));
+        drainer.join();
+        assertEquals(1, queue.getDepth());
+        assertEquals(0, queue.getRejectedCount());
+    }
+
+    @Test
+    public void clearDropsPendingAndCoalesceKeys() throws Exception {
+        OutboundQueue queue = new OutboundQueue(10, OutboundQueue.OverflowPolicy.FAIL, 0);
+        queue.offer(typing("r1", 1));
+        queue.clear();
+        queue.offer(typing("r1", 2));
+
+        assertEquals(1, queue.getDepth());
+        assertEquals(0, queue.getCoalescedCount());
+    }
+
+    private static JSONObject frame(String type, String roomId) throws Exception {
+        return new JSONObject().put("type", type).put("roomId", roomId);
+    }
+
+    private static JSONObject typing(String roomId, int seq) throws Exception {
+        return frame("typing", roomId).put("seq", seq);
+    }
+
+    private static JSONObject message(String roomId, String id) throws Exception {
+        return frame("chat_message", roomId).put("id", id);
+    }
+}
@@ -0,0 +1,155 @@
+package com.potatochat.mobile.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Before;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+public class StreamResumeTest {
+    private final FakeScheduler scheduler = new FakeScheduler();
+    private final StreamResume resume = new StreamResume(scheduler);
+    private final List<String> chatResets = new ArrayList<>();
+    private final List<String> marketResets = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        resume.addResetListener("chat:", chatResets::add);
+        resume.addResetListener("market:", marketResets::add);
+    }
+
+    @Test
+    public void dropsDuplicateAndOlderFrames() throws Exception {
+        assertTrue(resume.accept(frame("chat:r1", 1)));
+        assertTrue(resume.accept(frame("chat:r1", 2)));
+        assertFalse(resume.accept(frame("chat:r1", 2)));
+        assertFalse(resume.accept(frame("chat:r1", 1)));
+        assertTrue(resume.accept(frame("chat:r1", 3)));
+        // 各个流的序号互不影响
+        assertTrue(resume.accept(frame("chat:r2", 1)));
+        assertTrue(chatResets.isEmpty());
+    }
+
+    @Test
+    public void acceptsFramesWithoutSequence() throws Exception {
+        assertTrue(resume.accept(new JSONObject().put("type", "pong")));
+        assertTrue(resume.accept(new JSONObject().put("type", "chat_message").put("stream", "chat:r1")));
+        assertEquals(0, resume.getTrackedStreamCount());
+    }
+
+    @Test
+    public void gapOnLiveConnectionResetsOnlyThatStream() throws Exception {
+        resume.accept(frame("chat:r1", 1));
+        resume.accept(frame("market:BTC", 1));
+
+        // 缺口之后的帧照常处理，缺失部分走快照
+        assertTrue(resume.accept(frame("chat:r1", 5)));
+        assertEquals(Collections.singletonList("chat:r1"), chatResets);
+        assertTrue(marketResets.isEmpty());
+        assertTrue(resume.accept(frame("chat:r1", 6)));
+        assertEquals(1, chatResets.size());
+    }
+
+    @Test
+    public void buildsResumeRequestFromLastAppliedSequences() throws Exception {
+        assertNull(resume.buildResumeRequest());
+        resume.setSessionId("s-1");
+        resume.accept(frame("chat:r1", 7));
+        resume.accept(frame("market:BTC", 3));
+
+        JSONObject request = resume.buildResumeRequest();
+        assertEquals("resume", request.getString("type"));
+        assertEquals("s-1", request.getString("sessionId"));
+        assertEquals(StreamResume.MAX_REPLAY, request.getInt("maxReplay"));
+        JSONObject streams = request.getJSONObject("streams");
+        assertEquals(2, streams.length());
+        assertEquals(7, streams.getLong("chat:r1"));
+        assertEquals(3, streams.getLong("market:BTC"));
+    }
+
+    @Test
+    public void replayedFramesAreDedupedAndGapWaitsForAck() throws Exception {
+        resume.accept(frame("chat:r1", 7));
+        resume.buildResumeRequest();
+
+        // 补发从 8 开始，和实时推送重叠的部分丢弃
+        assertTrue(resume.accept(frame("chat:r1", 8)));
+        assertFalse(resume.accept(frame("chat:r1", 8)));
+        // 续传期间的缺口等 resume_ack 再判断
+        assertTrue(resume.accept(frame("chat:r1", 20)));
+        assertTrue(chatResets.isEmpty());
+
+        resume.onResumeAck(new JSONObject().put("type", "resume_ack").put("expired", new JSONArray()));
+        assertTrue(chatResets.isEmpty());
+        assertEquals(0, scheduler.pendingCount());
+    }
+
+    @Test
+    public void expiredStreamsResetAndRestartSequence() throws Exception {
+        resume.accept(frame("chat:r1", 7));
+        resume.accept(frame("market:BTC", 3));
+        resume.buildResumeRequest();
+
+        resume.onResumeAck(new JSONObject().put("type", "resume_ack")
+                .put("expired", new JSONArray().put("market:BTC")));
+        assertTrue(chatResets.isEmpty());
+        assertEquals(Collections.singletonList("market:BTC"), marketResets);
+
+        // 快照之后服务端的序号重新作为基准，不算缺口
+        assertTrue(resume.accept(frame("market:BTC", 5000)));
+        assertEquals(1, marketResets.size());
+    }
+
+    @Test
+    public void missingAckResetsEveryResumedStream() throws Exception {
+        resume.accept(frame("chat:r1", 7));
+        resume.accept(frame("market:BTC", 3));
+        resume.buildResumeRequest();
+
+        scheduler.advance(4999, TimeUnit.MILLISECONDS);
+        assertTrue(chatResets.isEmpty());
+        scheduler.advance(1, TimeUnit.MILLISECONDS);
+        assertEquals(Collections.singletonList("chat:r1"), chatResets);
+        assertEquals(Collections.singletonList("market:BTC"), marketResets);
+
+        // 超时后才到的 ack 不再重复重置
+        resume.onResumeAck(new JSONObject().put("type", "resume_ack")
+                .put("expired", new JSONArray(Arrays.asList("chat:r1"))));
+        assertEquals(1, chatResets.size());
+    }
+
+    @Test
+    public void clearForgetsStreamsAndPendingResume() throws Exception {
+        resume.accept(frame("chat:r1", 7));
+        resume.buildResumeRequest();
+        resume.clear();
+
+        assertEquals(0, resume.getTrackedStreamCount());
+        assertEquals(0, scheduler.pendingCount());
+        assertNull(resume.buildResumeRequest());
+    }
+
+    @Test
+    public void removedListenerIsNotNotified() throws Exception {
+        StreamResume.ResetListener listener = stream -> chatResets.add("removed:" + stream);
+        resume.addResetListener("chat:r1", listener);
+        resume.removeResetListener(listener);
+
+        resume.accept(frame("chat:r1", 1));
+        resume.accept(frame("chat:r1", 3));
+        assertEquals(Collections.singletonList("chat:r1"), chatResets);
+    }
+
+    private static JSONObject frame(String stream, long seq) throws Exception {
+        return new JSONObject().put("type", "chat_message").put("stream", stream).put("streamSeq", seq);
+    }
+}
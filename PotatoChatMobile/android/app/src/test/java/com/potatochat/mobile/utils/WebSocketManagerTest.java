@@ -0,0 +1,216 @@
+package com.potatochat.mobile.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 心跳、pong 超时和重连都在假时钟上推进，连接走本地 MockWebServer
+public class WebSocketManagerTest {
+    private static final int CYCLES = 1000;
+
+    private final MockWebServer server = new MockWebServer();
+    private final FakeScheduler scheduler = new FakeScheduler();
+    private final Semaphore connected = new Semaphore(0);
+    private final Semaphore disconnected = new Semaphore(0);
+    private final AtomicInteger pings = new AtomicInteger();
+    private final AtomicInteger orders = new AtomicInteger();
+    // 为 true 时服务端握手后立即关闭连接
+    private final AtomicBoolean dropOnOpen = new AtomicBoolean();
+    // 为 false 时服务端收到 ping 不回复
+    private final AtomicBoolean answerPings = new AtomicBoolean(true);
+    private WebSocketManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().withWebSocketUpgrade(new okhttp3.WebSocketListener() {
+                    @Override
+                    public void onOpen(WebSocket webSocket, Response response) {
+                        if (dropOnOpen.get()) {
+                            webSocket.close(1001, "going away");
+                        }
+                    }
+
+                    @Override
+                    public void onMessage(WebSocket webSocket, String text) {
+                        if (text.contains("\"trading_order\"")) {
+                            orders.incrementAndGet();
+                        }
+                        if (text.contains("\"ping\"")) {
+                            pings.incrementAndGet();
+                            if (answerPings.get()) {
+                                webSocket.send("{\"type\":\"pong\"}");
+                            }
+                        }
+                    }
+
+                    @Override
+                    public void onClosing(WebSocket webSocket, int code, String reason) {
+                        webSocket.close(code, null);
+                    }
+                });
+            }
+        });
+        server.start();
+        manager = new WebSocketManager("ws://" + server.getHostName() + ":" + server.getPort() + "/v1", scheduler,
+                new Backoff(1000, 60000, new Random() {
+                    // 固定抖动：第一次重连在 500ms，不会落进拨时钟的同一个窗口
+                    @Override
+                    public double nextDouble() {
+                        return 0.5;
+                    }
+                }));
+        manager.addListener(new WebSocketManager.WebSocketListener() {
+            @Override
+            public void onConnected() {
+                connected.release();
+            }
+
+            @Override
+            public void onDisconnected() {
+                disconnected.release();
+            }
+
+            @Override
+            public void onMessage(JSONObject message) {
+            }
+
+            @Override
+            public void onError(String error) {
+            }
+        });
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        manager.cleanup();
+        server.shutdown();
+    }
+
+    @Test
+    public void connectDisconnectCyclesLeaveNoTimersOrThreads() throws Exception {
+        // 先跑几轮让 OkHttp 的线程池起来
+        for (int i = 0; i < 10; i++) {
+            cycle();
+        }
+        int threadsBefore = Thread.activeCount();
+
+        for (int i = 0; i < CYCLES; i++) {
+            cycle();
+            assertEquals("Timers left after cycle " + i, 0, scheduler.pendingCount());
+        }
+
+        assertTrue("Expected a heartbeat per cycle, got " + pings.get(), pings.get() >= CYCLES);
+        // OkHttp 和 MockWebServer 的空闲线程会复用；机器繁忙时线程池会多留几个空闲线程，
+        // 但每轮泄漏一个线程的话会多出上千个
+        int threadsAfter = Thread.activeCount();
+        assertTrue("Threads grew from " + threadsBefore + " to " + threadsAfter,
+                threadsAfter < threadsBefore + CYCLES / 20);
+    }
+
+    @Test
+    public void droppedConnectionKeepsOnlyOneReconnectPending() throws Exception {
+        dropOnOpen.set(true);
+        manager.connect("token");
+
+        for (int i = 0; i < 200; i++) {
+            awaitConnected();
+            awaitDisconnected();
+            // 服务端关闭后心跳停止，只剩一个重连任务
+            awaitPending(1);
+            // 连上时 reconnectAttempts 清零，第一次退避不超过 1 秒
+            scheduler.advance(1, TimeUnit.SECONDS);
+        }
+        awaitConnected();
+        awaitDisconnected();
+
+        manager.disconnect();
+        assertEquals(0, scheduler.pendingCount());
+    }
+
+    @Test
+    public void missingPongTriggersReconnect() throws Exception {
+        answerPings.set(false);
+        manager.connect("token");
+        awaitConnected();
+
+        scheduler.advance(30_020, TimeUnit.MILLISECONDS);
+        assertEquals(0, manager.getReconnectAttempts());
+        // pong 超时在当前线程上判定连接已断
+        scheduler.advance(10, TimeUnit.SECONDS);
+        awaitDisconnected();
+        // 心跳和 pong 计时都已取消，只等待重连
+        awaitPending(1);
+        assertEquals(1, manager.getReconnectAttempts());
+
+        answerPings.set(true);
+        scheduler.advance(1, TimeUnit.SECONDS);
+        awaitConnected();
+    }
+
+    @Test
+    public void tradingOrderIsNeverQueuedForReplay() throws Exception {
+        // 未连接时直接拒绝，由 OrderGateway 改走 REST；重连后不能再重放出第二单
+        assertFalse(manager.sendTradingOrder("BTC/USDT", "buy", 1, 100, "c-1"));
+        assertEquals(0, manager.getOutboundQueue().getDepth());
+
+        manager.connect("token");
+        awaitConnected();
+        assertTrue(manager.sendTradingOrder("BTC/USDT", "buy", 1, 100, "c-2"));
+        assertEquals(0, manager.getOutboundQueue().getDepth());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (orders.get() < 1 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(1, orders.get());
+    }
+
+    // 连接、等到一次心跳并收到 pong、断开
+    private void cycle() throws Exception {
+        int expectedPings = pings.get() + 1;
+        manager.connect("token");
+        awaitConnected();
+        // 心跳到期后 ping 在 20ms 的合并窗口之后发出
+        scheduler.advance(30_020, TimeUnit.MILLISECONDS);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (pings.get() < expectedPings && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        manager.disconnect();
+    }
+
+    private void awaitConnected() throws InterruptedException {
+        assertTrue("Not connected", connected.tryAcquire(5, TimeUnit.SECONDS));
+    }
+
+    private void awaitDisconnected() throws InterruptedException {
+        assertTrue("Not disconnected", disconnected.tryAcquire(5, TimeUnit.SECONDS));
+    }
+
+    // 断开通知先于安排重连，稍等调度
+    private void awaitPending(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.pendingCount() != count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, scheduler.pendingCount());
+    }
+}
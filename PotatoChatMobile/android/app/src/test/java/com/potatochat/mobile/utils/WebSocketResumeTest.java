@@ -0,0 +1,290 @@
+package com.potatochat.mobile.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 本地续传服务端：按序号记录 chat:r1 的全部帧，重连收到 resume 后先补发缺失的帧再恢复实时推送
+// 缺失超过 maxReplay 时不补发，在 resume_ack 的 expired 中列出
+public class WebSocketResumeTest {
+    private static final String STREAM = "chat:r1";
+
+    private final MockWebServer server = new MockWebServer();
+    private final FakeScheduler scheduler = new FakeScheduler();
+    private final Semaphore connected = new Semaphore(0);
+    private final Semaphore disconnected = new Semaphore(0);
+    private final List<Long> received = new CopyOnWriteArrayList<>();
+    private final List<String> resets = new CopyOnWriteArrayList<>();
+
+    // 以下字段由 this 保护：生产帧、切换实时连接、补发互斥，保证补发先于实时帧
+    private final List<String> log = new ArrayList<>();
+    private WebSocket live;
+    private boolean firstConnection = true;
+    private int resumeRequests;
+
+    private WebSocketManager manager;
+
+    @Before
+    public void setUp() throws Exception {
+        server.setDispatcher(new Dispatcher() {
+            @Override
+            public MockResponse dispatch(RecordedRequest request) {
+                return new MockResponse().withWebSocketUpgrade(new okhttp3.WebSocketListener() {
+                    @Override
+                    public void onOpen(WebSocket webSocket, Response response) {
+                        onServerOpen(webSocket);
+                    }
+
+                    @Override
+                    public void onMessage(WebSocket webSocket, String text) {
+                        onServerMessage(webSocket, text);
+                    }
+
+                    @Override
+                    public void onClosing(WebSocket webSocket, int code, String reason) {
+                        webSocket.close(code, null);
+                    }
+                });
+            }
+        });
+        server.start();
+        manager = new WebSocketManager("ws://" + server.getHostName() + ":" + server.getPort() + "/v1", scheduler,
+                new Backoff(1000, 60000, new Random() {
+                    // 固定抖动：第一次重连在 500ms，不会落进拨时钟的同一个窗口
+                    @Override
+                    public double nextDouble() {
+                        return 0.5;
+                    }
+                }));
+        manager.addListener(new WebSocketManager.WebSocketListener() {
+            @Override
+            public void onConnected() {
+                connected.release();
+            }
+
+            @Override
+            public void onDisconnected() {
+                disconnected.release();
+            }
+
+            @Override
+            public void onMessage(JSONObject message) {
+            }
+
+            @Override
+            public void onError(String error) {
+            }
+        });
+        manager.subscribe("chat_message", "r1", message -> received.add(message.optLong("streamSeq")));
+        manager.getStreamResume().addResetListener("chat:", resets::add);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        manager.cleanup();
+        server.shutdown();
+    }
+
+    @Test
+    public void resumesEveryFrameAcrossDropsUnderLoad() throws Exception {
+        manager.connect("token");
+        awaitConnected();
+
+        AtomicBoolean producing = new AtomicBoolean(true);
+        // 约每秒 5000 帧；断线窗口内积压的帧远少于 MAX_REPLAY
+        Thread producer = new Thread(() -> {
+            while (producing.get()) {
+                publish();
+                if (published() % 5 == 0) {
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        producer.start();
+        try {
+            for (int drop = 0; drop < 10; drop++) {
+                awaitReceived(received.size() + 200);
+                dropLive();
+                awaitDisconnected();
+                // 断线期间继续产生帧，重连后靠续传补齐
+                awaitPublished(published() + 100);
+                awaitReconnectScheduled();
+                scheduler.advance(1, TimeUnit.SECONDS);
+                awaitConnected();
+            }
+        } finally {
+            producing.set(false);
+            producer.join();
+        }
+
+        int total = published();
+        awaitReceived(total);
+        assertEquals(10, resumeRequests());
+        assertTrue("Unexpected resets " + resets, resets.isEmpty());
+        // 每个序号恰好一次且按顺序
+        assertEquals(total, received.size());
+        for (int i = 0; i < total; i++) {
+            assertEquals(i + 1, (long) received.get(i));
+        }
+    }
+
+    @Test
+    public void gapBeyondMaxReplayFallsBackToSnapshot() throws Exception {
+        manager.connect("token");
+        awaitConnected();
+        for (int i = 0; i < 10; i++) {
+            publish();
+        }
+        awaitReceived(10);
+
+        dropLive();
+        awaitDisconnected();
+        for (int i = 0; i < StreamResume.MAX_REPLAY + 1; i++) {
+            publish();
+        }
+        awaitReconnectScheduled();
+        scheduler.advance(1, TimeUnit.SECONDS);
+        awaitConnected();
+
+        awaitResets(1);
+        assertEquals(Collections.singletonList(STREAM), resets);
+        assertEquals(10, received.size());
+
+        // 快照之后的实时帧以新的序号为基准，不再重置
+        publish();
+        awaitReceived(11);
+        assertEquals(StreamResume.MAX_REPLAY + 12, (long) received.get(10));
+        assertEquals(1, resets.size());
+    }
+
+    // 首次连接没有可续传的流，先发出握手完成前产生的帧再推送实时帧；重连等 resume 之后再推送
+    private synchronized void onServerOpen(WebSocket webSocket) {
+        if (firstConnection) {
+            firstConnection = false;
+            for (String frame : log) {
+                webSocket.send(frame);
+            }
+            live = webSocket;
+        }
+    }
+
+    private void onServerMessage(WebSocket webSocket, String text) {
+        JSONObject message;
+        try {
+            message = new JSONObject(text);
+        } catch (Exception e) {
+            return;
+        }
+        String type = message.optString("type");
+        if ("ping".equals(type)) {
+            webSocket.send("{\"type\":\"pong\"}");
+        } else if ("resume".equals(type)) {
+            resume(webSocket, message);
+        }
+    }
+
+    private synchronized void resume(WebSocket webSocket, JSONObject request) {
+        resumeRequests++;
+        JSONObject streams = request.optJSONObject("streams");
+        long last = streams != null ? streams.optLong(STREAM, 0) : 0;
+        int maxReplay = request.optInt("maxReplay", Integer.MAX_VALUE);
+        JSONArray expired = new JSONArray();
+        if (log.size() - last > maxReplay) {
+            expired.put(STREAM);
+        } else {
+            for (int i = (int) last; i < log.size(); i++) {
+                webSocket.send(log.get(i));
+            }
+        }
+        webSocket.send("{\"type\":\"resume_ack\",\"expired\":" + expired + "}");
+        live = webSocket;
+    }
+
+    private synchronized void publish() {
+        int seq = log.size() + 1;
+        String frame = "{\"type\":\"chat_message\",\"stream\":\"" + STREAM + "\",\"streamSeq\":" + seq
+                + ",\"roomId\":\"r1\",\"id\":\"m" + seq + "\",\"content\":\"hello\",\"timestamp\":" + seq + "}";
+        log.add(frame);
+        if (live != null) {
+            live.send(frame);
+        }
+    }
+
+    // 服务端主动断开；已排队的帧仍会发出，之后产生的帧只进日志
+    private synchronized void dropLive() {
+        if (live != null) {
+            live.close(1001, "going away");
+            live = null;
+        }
+    }
+
+    private synchronized int published() {
+        return log.size();
+    }
+
+    private synchronized int resumeRequests() {
+        return resumeRequests;
+    }
+
+    private void awaitConnected() throws InterruptedException {
+        assertTrue("Not connected", connected.tryAcquire(5, TimeUnit.SECONDS));
+    }
+
+    private void awaitDisconnected() throws InterruptedException {
+        assertTrue("Not disconnected", disconnected.tryAcquire(5, TimeUnit.SECONDS));
+    }
+
+    // 断开通知先于安排重连，拨时钟前等重连任务排上
+    private void awaitReconnectScheduled() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (scheduler.pendingCount() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue("Reconnect not scheduled", scheduler.pendingCount() > 0);
+    }
+
+    private void awaitReceived(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (received.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertTrue("Received " + received.size() + " of " + count, received.size() >= count);
+    }
+
+    private void awaitPublished(int count) throws InterruptedException {
+        while (published() < count) {
+            Thread.sleep(1);
+        }
+    }
+
+    private void awaitResets(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (resets.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(1);
+        }
+        assertEquals(count, resets.size());
+    }
+}
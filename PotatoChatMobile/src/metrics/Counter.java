@@ -0,0 +1,27 @@
+package com.potatochat.mobile.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// 单调递增计数器，记录时不分配内存
+public final class Counter {
+    private final AtomicLong value = new AtomicLong();
+
+    Counter() {
+    }
+
+    public void inc() {
+        value.incrementAndGet();
+    }
+
+    public void add(long delta) {
+        value.addAndGet(delta);
+    }
+
+    public long get() {
+        return value.get();
+    }
+
+    void reset() {
+        value.set(0);
+    }
+}
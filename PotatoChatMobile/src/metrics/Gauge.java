@@ -0,0 +1,6 @@
+package com.potatochat.mobile.metrics;
+
+// 瞬时值（例如队列深度），只在导出时读取
+public interface Gauge {
+    long read();
+}
@@ -0,0 +1,10 @@
+package com.potatochat.mobile.metrics;
+
+// 导出目标，例如 logcat、调试面板或上报服务；按名称顺序逐项回调，在导出线程执行
+public interface MetricsExporter {
+    void onCounter(String name, long value);
+
+    void onGauge(String name, long value);
+
+    void onHistogram(String name, Histogram.Snapshot snapshot);
+}
@@ -0,0 +1,156 @@
+package com.potatochat.mobile.metrics;
+
+import android.util.Log;
+import com.potatochat.mobile.utils.SharedScheduler;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// 进程内的指标注册表
+// counter / histogram 按名称首次获取时创建，之后返回同一个实例；热路径上应持有引用而不是每次按名称查找
+// 命名约定：前缀.对象.指标，延迟类直方图单位为微秒
+public final class MetricsRegistry {
+    private static final String TAG = "Metrics";
+    private static MetricsRegistry instance;
+
+    private final Map<String, Counter> counters = new ConcurrentSkipListMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentSkipListMap<>();
+    private final Map<String, Gauge> gauges = new ConcurrentSkipListMap<>();
+    private final Map<MetricsExporter, ScheduledFuture<?>> exporters = new ConcurrentHashMap<>();
+
+    private MetricsRegistry() {
+    }
+
+    public static synchronized MetricsRegistry get() {
+        if (instance == null) {
+            instance = new MetricsRegistry();
+        }
+        return instance;
+    }
+
+    public Counter counter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    public Histogram histogram(String name) {
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    // 同名 gauge 以最后一次注册的为准
+    public void gauge(String name, Gauge gauge) {
+        gauges.put(name, gauge);
+    }
+
+    public void removeGauge(String name) {
+        gauges.remove(name);
+    }
+
+    public void exportTo(MetricsExporter exporter) {
+        for (Map.Entry<String, Counter> entry : counters.entrySet()) {
+            exporter.onCounter(entry.getKey(), entry.getValue().get());
+        }
+        for (Map.Entry<String, Gauge> entry : gauges.entrySet()) {
+            long value;
+            try {
+                value = entry.getValue().read();
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Gauge read failed: " + entry.getKey(), e);
+                continue;
+            }
+            exporter.onGauge(entry.getKey(), value);
+        }
+        for (Map.Entry<String, Histogram> entry : histograms.entrySet()) {
+            Histogram.Snapshot snapshot = entry.getValue().snapshot();
+            if (snapshot.getCount() > 0) {
+                exporter.onHistogram(entry.getKey(), snapshot);
+            }
+        }
+    }
+
+    // 按固定周期在共享调度线程上导出；同一个 exporter 重复调用时替换原来的周期
+    public void startExporting(MetricsExporter exporter, long periodMs) {
+        stopExporting(exporter);
+        exporters.put(exporter, SharedScheduler.get().scheduleAtFixedRate(() -> {
+            try {
+                exportTo(exporter);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Export failed", e);
+            }
+        }, periodMs, periodMs, TimeUnit.MILLISECONDS));
+    }
+
+    public void stopExporting(MetricsExporter exporter) {
+        ScheduledFuture<?> future = exporters.remove(exporter);
+        if (future != null) {
+            future.cancel(false);
+        }
+    }
+
+    // 文本形式的全部指标，用于调试面板和日志
+    public String dump() {
+        TextExporter text = new TextExporter();
+        exportTo(text);
+        return text.toString();
+    }
+
+    public void reset() {
+        for (Counter counter : counters.values()) {
+            counter.reset();
+        }
+        for (Histogram histogram : histograms.values()) {
+            histogram.reset();
+        }
+    }
+
+    public static final class TextExporter implements MetricsExporter {
+        private final StringBuilder text = new StringBuilder();
+
+        @Override
+        public void onCounter(String name, long value) {
+            text.append(name).append(' ').append(value).append('\n');
+        }
+
+        @Override
+        public void onGauge(String name, long value) {
+            text.append(name).append(' ').append(value).append('\n');
+        }
+
+        @Override
+        public void onHistogram(String name, Histogram.Snapshot snapshot) {
+            text.append(name)
+                    .append(" n=").append(snapshot.getCount())
+                    .append(" mean=").append(snapshot.getMean())
+                    .append(" p50=").append(snapshot.getValueAtQuantile(0.5))
+                    .append(" p90=").append(snapshot.getValueAtQuantile(0.9))
+                    .append(" p99=").append(snapshot.getValueAtQuantile(0.99))
+                    .append(" max=").append(snapshot.getMax())
+                    .append('\n');
+        }
+
+        @Override
+        public String toString() {
+            return text.toString();
+        }
+    }
+
+    // 每项指标写一行 logcat
+    public static final class LogcatExporter implements MetricsExporter {
+        @Override
+        public void onCounter(String name, long value) {
+            Log.i(TAG, name + " " + value);
+        }
+
+        @Override
+        public void onGauge(String name, long value) {
+            Log.i(TAG, name + " " + value);
+        }
+
+        @Override
+        public void onHistogram(String name, Histogram.Snapshot snapshot) {
+            Log.i(TAG, name + " n=" + snapshot.getCount() + " p50=" + snapshot.getValueAtQuantile(0.5)
+                    + " p99=" + snapshot.getValueAtQuantile(0.99) + " max=" + snapshot.getMax());
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.potatochat.mobile.models;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import org.json.JSONObject;
+import java.io.IOException;
+
+public class ChatMessage {
+    private final String id;
+    private final String roomId;
+    private final String senderId;
+    private final String senderName;
+    private final String content;
+    private final String type;
+    private final long timestamp;
+
+    public ChatMessage(String id, String roomId, String senderId, String senderName,
+                       String content, String type, long timestamp) {
+        this.id = id;
+        this.roomId = roomId;
+        this.senderId = senderId;
+        this.senderName = senderName;
+        this.content = content;
+        this.type = type;
+        this.timestamp = timestamp;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public String getSenderId() {
+        return senderId;
+    }
+
+    public String getSenderName() {
+        return senderName;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    // 从流中读取一条消息，未知字段直接跳过
+    public static ChatMessage read(JsonReader reader) throws IOException {
+        return read(reader, null);
+    }
+
+    // 按聊天室拉取的历史消息可能不带 roomId，缺省时使用请求的 roomId，否则无法写入本地存储
+    public static ChatMessage read(JsonReader reader, String defaultRoomId) throws IOException {
+        String id = null, roomId = defaultRoomId, senderId = null, senderName = null;
+        String content = null, type = null;
+        long timestamp = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "roomId":
+                    roomId = reader.nextString();
+                    break;
+                case "senderId":
+                    senderId = reader.nextString();
+                    break;
+                case "senderName":
+                    senderName = reader.nextString();
+                    break;
+                case "content":
+                    content = reader.nextString();
+                    break;
+                case "type":
+                case "messageType":
+                    type = reader.nextString();
+                    break;
+                case "timestamp":
+                    timestamp = readLong(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new ChatMessage(id, roomId, senderId, senderName, content, type, timestamp);
+    }
+
+    // WebSocket 推送的 chat_message 帧
+    public static ChatMessage fromJson(JSONObject json) {
+        String type = json.optString("messageType", null);
+        if (type == null) {
+            type = json.optString("type", null);
+        }
+        return new ChatMessage(
+                json.optString("id", null),
+                json.optString("roomId", null),
+                json.optString("senderId", null),
+                json.optString("senderName", null),
+                json.optString("content", null),
+                type,
+                json.optLong("timestamp", 0));
+    }
+
+    static long readLong(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NUMBER) {
+            return reader.nextLong();
+        }
+        try {
+            return Long.parseLong(reader.nextString());
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+}
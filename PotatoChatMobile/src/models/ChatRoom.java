@@ -0,0 +1,79 @@
+package com.potatochat.mobile.models;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import java.io.IOException;
+
+public class ChatRoom {
+    private final String id;
+    private final String name;
+    private final String type;
+    private final int unreadCount;
+    private final long updatedAt;
+
+    public ChatRoom(String id, String name, String type, int unreadCount, long updatedAt) {
+        this.id = id;
+        this.name = name;
+        this.type = type;
+        this.unreadCount = unreadCount;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public int getUnreadCount() {
+        return unreadCount;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    // 从流中读取一个聊天室，未知字段（包括嵌套的 lastMessage 等）直接跳过
+    public static ChatRoom read(JsonReader reader) throws IOException {
+        String id = null, name = null, type = null;
+        int unreadCount = 0;
+        long updatedAt = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (field) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "name":
+                    name = reader.nextString();
+                    break;
+                case "type":
+                    type = reader.nextString();
+                    break;
+                case "unreadCount":
+                    unreadCount = (int) ChatMessage.readLong(reader);
+                    break;
+                case "updatedAt":
+                    updatedAt = ChatMessage.readLong(reader);
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return new ChatRoom(id, name, type, unreadCount, updatedAt);
+    }
+}
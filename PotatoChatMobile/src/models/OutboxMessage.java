@@ -0,0 +1,52 @@
+package com.potatochat.mobile.models;
+
+// 待发送的聊天消息，发送前先持久化；clientMessageId 供服务端去重
+public class OutboxMessage {
+    private final String clientMessageId;
+    private final String roomId;
+    private final String content;
+    private final String type;
+    private final long createdAt;
+    private final int attempts;
+    private final long nextAttemptAt;
+
+    public OutboxMessage(String clientMessageId, String roomId, String content, String type,
+                         long createdAt, int attempts, long nextAttemptAt) {
+        this.clientMessageId = clientMessageId;
+        this.roomId = roomId;
+        this.content = content;
+        this.type = type;
+        this.createdAt = createdAt;
+        this.attempts = attempts;
+        this.nextAttemptAt = nextAttemptAt;
+    }
+
+    public String getClientMessageId() {
+        return clientMessageId;
+    }
+
+    public String getRoomId() {
+        return roomId;
+    }
+
+    public String getContent() {
+        return content;
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    // 已失败的发送次数
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public long getNextAttemptAt() {
+        return nextAttemptAt;
+    }
+}
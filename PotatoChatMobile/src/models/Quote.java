@@ -0,0 +1,48 @@
+package com.potatochat.mobile.models;
+
+import org.json.JSONObject;
+
+public class Quote {
+    private final String symbol;
+    private final double price;
+    private final double change;
+    private final double volume;
+    private final long timestamp;
+
+    public Quote(String symbol, double price, double change, double volume, long timestamp) {
+        this.symbol = symbol;
+        this.price = price;
+        this.change = change;
+        this.volume = volume;
+        this.timestamp = timestamp;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public double getPrice() {
+        return price;
+    }
+
+    public double getChange() {
+        return change;
+    }
+
+    public double getVolume() {
+        return volume;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    // trading_update 帧的行情字段，可能在顶层也可能在 data 里
+    public static Quote fromJson(String symbol, JSONObject json) {
+        return new Quote(symbol,
+                json.optDouble("price", 0),
+                json.optDouble("change", 0),
+                json.optDouble("volume", 0),
+                json.optLong("timestamp", 0));
+    }
+}
@@ -0,0 +1,187 @@
+package com.potatochat.mobile.services;
+
+import com.potatochat.mobile.metrics.Counter;
+import com.potatochat.mobile.metrics.Histogram;
+import com.potatochat.mobile.metrics.MetricsRegistry;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import okhttp3.Call;
+import okhttp3.EventListener;
+import okhttp3.Handshake;
+import okhttp3.Protocol;
+import okhttp3.Response;
+
+// 按接口统计 HTTP 各阶段耗时：api.<接口>.dns / connect / tls / ttfb / decode / total，单位微秒
+// 接口名把路径中的 id 段替换为 {id}，例如 /users/{id}、/chat/rooms/{id}/messages
+final class ApiMetrics {
+    private static final Map<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+    static final class Endpoint {
+        final Counter calls;
+        final Counter errors;
+        final Histogram dns;
+        final Histogram connect;
+        final Histogram tls;
+        final Histogram ttfb;
+        final Histogram decode;
+        final Histogram total;
+
+        Endpoint(String template) {
+            MetricsRegistry registry = MetricsRegistry.get();
+            String prefix = "api." + template + ".";
+            calls = registry.counter(prefix + "calls");
+            errors = registry.counter(prefix + "errors");
+            dns = registry.histogram(prefix + "dns");
+            connect = registry.histogram(prefix + "connect");
+            tls = registry.histogram(prefix + "tls");
+            ttfb = registry.histogram(prefix + "ttfb");
+            decode = registry.histogram(prefix + "decode");
+            total = registry.histogram(prefix + "total");
+        }
+    }
+
+    private ApiMetrics() {
+    }
+
+    // path 可以带查询参数；basePath 前缀（例如 /v1）会被去掉
+    static Endpoint forPath(String basePath, String path) {
+        String template = templateOf(basePath, path);
+        return endpoints.computeIfAbsent(template, Endpoint::new);
+    }
+
+    static String templateOf(String basePath, String path) {
+        int end = path.indexOf('?');
+        if (end < 0) {
+            end = path.length();
+        }
+        int start = basePath != null && path.startsWith(basePath) ? basePath.length() : 0;
+        StringBuilder template = new StringBuilder(end - start);
+        int segmentStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || path.charAt(i) == '/') {
+                if (i > segmentStart) {
+                    template.append('/');
+                    if (isIdSegment(path, segmentStart, i)) {
+                        template.append("{id}");
+                    } else {
+                        template.append(path, segmentStart, i);
+                    }
+                }
+                segmentStart = i + 1;
+            }
+        }
+        return template.length() == 0 ? "/" : template.toString();
+    }
+
+    // 含数字或大写字母的段视为 id（用户 id、聊天室 id、BTC/USDT 这样的交易对）
+    private static boolean isIdSegment(String path, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = path.charAt(i);
+            if ((c >= '0' && c <= '9') || (c >= 'A' && c <= 'Z') || c == '%') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static EventListener.Factory eventListenerFactory(String basePath) {
+        return call -> new CallListener(forPath(basePath, call.request().url().encodedPath()));
+    }
+
+    // 每个请求一个实例，只在该请求的线程上回调
+    private static final class CallListener extends EventListener {
+        private final Endpoint endpoint;
+        private long callStart;
+        private long dnsStart;
+        private long connectStart;
+        private long secureConnectStart;
+        private long requestStart;
+        private boolean failed;
+
+        CallListener(Endpoint endpoint) {
+            this.endpoint = endpoint;
+        }
+
+        @Override
+        public void callStart(Call call) {
+            callStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsStart(Call call, String domainName) {
+            dnsStart = System.nanoTime();
+        }
+
+        @Override
+        public void dnsEnd(Call call, String domainName, List<InetAddress> inetAddressList) {
+            endpoint.dns.recordNanos(System.nanoTime() - dnsStart);
+        }
+
+        @Override
+        public void connectStart(Call call, InetSocketAddress inetSocketAddress, Proxy proxy) {
+            connectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectStart(Call call) {
+            secureConnectStart = System.nanoTime();
+        }
+
+        @Override
+        public void secureConnectEnd(Call call, Handshake handshake) {
+            endpoint.tls.recordNanos(System.nanoTime() - secureConnectStart);
+        }
+
+        @Override
+        public void connectEnd(Call call, InetSocketAddress inetSocketAddress, Proxy proxy, Protocol protocol) {
+            endpoint.connect.recordNanos(System.nanoTime() - connectStart);
+        }
+
+        @Override
+        public void connectFailed(Call call, InetSocketAddress inetSocketAddress, Proxy proxy,
+                                  Protocol protocol, IOException ioe) {
+            endpoint.connect.recordNanos(System.nanoTime() - connectStart);
+        }
+
+        @Override
+        public void requestHeadersStart(Call call) {
+            requestStart = System.nanoTime();
+        }
+
+        // 从开始发送请求到收到响应头，复用连接时即为服务端耗时加一个往返
+        @Override
+        public void responseHeadersStart(Call call) {
+            endpoint.ttfb.recordNanos(System.nanoTime() - requestStart);
+        }
+
+        @Override
+        public void responseHeadersEnd(Call call, Response response) {
+            if (response.code() >= 400) {
+                failed = true;
+            }
+        }
+
+        @Override
+        public void callEnd(Call call) {
+            finish(failed);
+        }
+
+        @Override
+        public void callFailed(Call call, IOException ioe) {
+            finish(true);
+        }
+
+        private void finish(boolean error) {
+            endpoint.total.recordNanos(System.nanoTime() - callStart);
+            endpoint.calls.inc();
+            if (error) {
+                endpoint.errors.inc();
+            }
+        }
+    }
+}
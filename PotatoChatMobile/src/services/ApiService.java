@@ -1,27 +1,91 @@
 package com.potatochat.mobile.services;
 
 import android.content.Context;
+import android.text.TextUtils;
 import android.util.Log;
+import com.potatochat.mobile.metrics.MetricsRegistry;
+import com.potatochat.mobile.models.ChatMessage;
+import com.potatochat.mobile.models.ChatRoom;
+import com.potatochat.mobile.utils.JsonCodec;
+import com.potatochat.mobile.utils.MainThreadDispatcher;
+import com.potatochat.mobile.utils.MessageCodec;
+import com.potatochat.mobile.utils.MessagePackCodec;
+import com.potatochat.mobile.utils.SharedScheduler;
+import com.potatochat.mobile.utils.WebSocketManager;
 import org.json.JSONObject;
 import org.json.JSONArray;
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.zip.GZIPOutputStream;
 
 public class ApiService {
     private static final String TAG = "ApiService";
     private static final String BASE_URL = "https://api.potatochat.com/v1";
+    private static final String API_HOST = URI.create(BASE_URL).getHost();
+    private static final String API_BASE_PATH = URI.create(BASE_URL).getPath();
     private static ApiService instance;
-    private ExecutorService executor;
+    private final RequestScheduler scheduler;
+    private final TokenManager tokens;
     private Context context;
+    private volatile HttpTransport transport;
+    private volatile boolean binaryCodecEnabled = false;
+    // 服务端返回过 MessagePack 响应后，请求体也改用 MessagePack
+    private volatile MessageCodec requestCodec = JsonCodec.INSTANCE;
+
+    private final ResponseCache responseCache;
+    private final Set<String> revalidating = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final RequestCoalescer coalescer = new RequestCoalescer();
+    private volatile MicroBatcher profileBatcher;
+    private volatile Executor callbackExecutor = MainThreadDispatcher.IMMEDIATE;
+    // 请求体达到该字节数时 gzip 压缩，负数表示关闭；需要服务端支持 Content-Encoding: gzip
+    private volatile int requestCompressionThreshold = -1;
 
     private ApiService(Context context) {
         this.context = context;
-        this.executor = Executors.newFixedThreadPool(4);
+        // 总并发 6，同一 host 最多 4 个，预取最多 2 个，保证下单请求总能尽快拿到空位
+        this.scheduler = new RequestScheduler(6, 4, 2);
+        this.transport = new OkHttpTransport(new OkHttpTransport.Config()
+                .eventListenerFactory(ApiMetrics.eventListenerFactory(API_BASE_PATH)));
+        this.responseCache = new ResponseCache(new File(context.getCacheDir(), "api-cache"),
+                512 * 1024, 5 * 1024 * 1024);
+        // 交易对几乎不变；用户资料和持仓短时间有效，过期后先返回旧数据再后台刷新
+        responseCache.setPolicy("/trading/pairs", 60 * 60_000, 24 * 60 * 60_000);
+        responseCache.setPolicy("/users/", 60_000, 10 * 60_000);
+        responseCache.setPolicy("/trading/portfolio/", 10_000, 60_000);
+
+        // 令牌只在内存中读取；401 时刷新并重放请求
+        this.tokens = TokenManager.getInstance(context);
+        tokens.setRefresher(this::refreshTokens, executorFor(RequestScheduler.Priority.TRADING));
+        WebSocketManager webSocketManager = WebSocketManager.getInstance();
+        webSocketManager.setTokenProvider(tokens);
+        tokens.addListener(webSocketManager::onAuthTokenChanged);
+        // 退出登录或刷新令牌被拒绝后，上一个用户的资料和持仓缓存都不能再返回
+        tokens.addListener(token -> {
+            if (token == null) {
+                responseCache.clear();
+            }
+        });
+
+        MetricsRegistry metrics = MetricsRegistry.get();
+        for (RequestScheduler.Priority priority : RequestScheduler.Priority.values()) {
+            metrics.gauge("api.queue." + priority.name().toLowerCase(Locale.US),
+                    () -> scheduler.getQueuedCount(priority));
+        }
     }
 
     public static synchronized ApiService getInstance(Context context) {
@@ -31,6 +95,66 @@ public class ApiService {
         return instance;
     }
 
+    // 替换传输层实现，例如使用自定义超时配置或测试用的本地服务器
+    public void setTransport(HttpTransport transport) {
+        HttpTransport previous = this.transport;
+        this.transport = transport;
+        if (previous != null && previous != transport) {
+            previous.shutdown();
+        }
+    }
+
+    public HttpTransport getTransport() {
+        return transport;
+    }
+
+    // 开启后通过 Accept 协商 MessagePack，服务端不支持时继续使用 JSON
+    // 流式解析的列表接口始终使用 JSON
+    public void setBinaryCodecEnabled(boolean enabled) {
+        this.binaryCodecEnabled = enabled;
+        if (!enabled) {
+            requestCodec = JsonCodec.INSTANCE;
+        }
+    }
+
+    public MessageCodec getRequestCodec() {
+        return requestCodec;
+    }
+
+    // 请求体不小于 minBytes 时用 gzip 压缩后发送；传负数关闭（默认）
+    public void setRequestCompressionThreshold(int minBytes) {
+        this.requestCompressionThreshold = minBytes;
+    }
+
+    // 在 windowMs 内收集 getUserProfile 的 userId，合并为一次 /users/batch 请求；0 表示关闭
+    public void setProfileBatchWindow(long windowMs) {
+        profileBatcher = windowMs > 0
+                ? new MicroBatcher(windowMs, 50, SharedScheduler.get(),
+                        executorFor(RequestScheduler.Priority.INTERACTIVE), this::fetchProfiles)
+                : null;
+    }
+
+    // 回调执行的线程，默认在请求线程上直接回调
+    // 传入 MainThreadDispatcher.get() 则切到主线程，同一帧内的多个结果合并为一次 post
+    public void setCallbackExecutor(Executor callbackExecutor) {
+        this.callbackExecutor = callbackExecutor != null ? callbackExecutor : MainThreadDispatcher.IMMEDIATE;
+    }
+
+    // 被合并的重复请求数
+    public long getCoalescedRequestCount() {
+        return coalescer.getCoalescedCount();
+    }
+
+    // 各优先级的排队等待 / 执行耗时统计
+    public RequestScheduler getScheduler() {
+        return scheduler;
+    }
+
+    // 缓存有效期配置和命中统计
+    public ResponseCache getResponseCache() {
+        return responseCache;
+    }
+
     public interface ApiCallback {
         void onSuccess(JSONObject response);
         void onError(String error);
@@ -41,249 +165,691 @@ public class ApiService {
         void onError(String error);
     }
 
-    // 用户认证
-    public void login(String username, String password, ApiCallback callback) {
-        executor.execute(() -> {
-            try {
-                JSONObject requestBody = new JSONObject();
-                requestBody.put("username", username);
-                requestBody.put("password", password);
+    public interface ApiListCallback<T> {
+        void onSuccess(List<T> items);
+        void onError(String error);
+    }
 
-                JSONObject response = makeRequest("POST", "/auth/login", requestBody);
-                callback.onSuccess(response);
-            } catch (Exception e) {
-                Log.e(TAG, "Login error", e);
-                callback.onError(e.getMessage());
-            }
+    // 增量回调：每解析出一条就回调一次，UI 可以在响应未读完前开始绑定
+    public interface ApiStreamCallback<T> {
+        void onItem(T item);
+        void onComplete(int count);
+        void onError(String error);
+    }
+
+    // 用户认证
+    public RequestHandle login(String username, String password, ApiCallback callback) {
+        return submit(RequestScheduler.Priority.INTERACTIVE, "Login error", callback, target -> {
+            JSONObject requestBody = new JSONObject();
+            requestBody.put("username", username);
+            requestBody.put("password", password);
+
+            JSONObject response = makeRequest("POST", "/auth/login", requestBody);
+            tokens.updateFrom(response);
+            target.onSuccess(response);
         });
     }
 
-    public void register(String username, String email, String password, ApiCallback callback) {
-        executor.execute(() -> {
-            try {
-                JSONObject requestBody = new JSONObject();
-                requestBody.put("username", username);
-                requestBody.put("email", email);
-                requestBody.put("password", password);
+    public RequestHandle register(String username, String email, String password, ApiCallback callback) {
+        return submit(RequestScheduler.Priority.INTERACTIVE, "Register error", callback, target -> {
+            JSONObject requestBody = new JSONObject();
+            requestBody.put("username", username);
+            requestBody.put("email", email);
+            requestBody.put("password", password);
 
-                JSONObject response = makeRequest("POST", "/auth/register", requestBody);
-                callback.onSuccess(response);
-            } catch (Exception e) {
-                Log.e(TAG, "Register error", e);
-                callback.onError(e.getMessage());
-            }
+            target.onSuccess(makeRequest("POST", "/auth/register", requestBody));
         });
     }
 
     // 用户信息
-    public void getUserProfile(String userId, ApiCallback callback) {
-        executor.execute(() -> {
-            try {
-                JSONObject response = makeRequest("GET", "/users/" + userId, null);
-                callback.onSuccess(response);
-            } catch (Exception e) {
-                Log.e(TAG, "Get user profile error", e);
-                callback.onError(e.getMessage());
-            }
-        });
+    public RequestHandle getUserProfile(String userId, ApiCallback callback) {
+        RequestHandle handle = new RequestHandle();
+        ApiCallback target = guard(handle, callback);
+        MicroBatcher batcher = profileBatcher;
+        if (batcher != null) {
+            batcher.request(userId, target);
+            return handle;
+        }
+        String endpoint = "/users/" + userId;
+        coalescer.execute("GET " + endpoint, "Get user profile error", target,
+                executorFor(RequestScheduler.Priority.INTERACTIVE), () -> cachedGet(endpoint));
+        return handle;
     }
 
-    public void updateUserProfile(String userId, JSONObject profileData, ApiCallback callback) {
-        executor.execute(() -> {
-            try {
-                JSONObject response = makeRequest("PUT", "/users/" + userId, profileData);
-                callback.onSuccess(response);
-            } catch (Exception e) {
-                Log.e(TAG, "Update user profile error", e);
-                callback.onError(e.getMessage());
+    private Map<String, JSONObject> fetchProfiles(List<String> userIds) throws Exception {
+        Map<String, JSONObject> results = new HashMap<>();
+        List<String> missing = new ArrayList<>();
+        ResponseCache.Policy policy = responseCache.policyFor("/users/");
+        long now = System.currentTimeMillis();
+        for (String userId : userIds) {
+            ResponseCache.Entry entry = responseCache.get("/users/" + userId);
+            if (entry != null && policy != null && entry.isFresh(policy, now)) {
+                responseCache.recordHit();
+                results.put(userId, decodeBytes(entry.body, entry.contentType));
+            } else {
+                missing.add(userId);
+            }
+        }
+
+        if (missing.size() == 1) {
+            results.put(missing.get(0), cachedGet("/users/" + missing.get(0)));
+        } else if (!missing.isEmpty()) {
+            JSONObject response = makeRequest("GET", "/users/batch?ids=" + TextUtils.join(",", missing), null);
+            JSONArray profiles = response.optJSONArray("data");
+            for (int i = 0; profiles != null && i < profiles.length(); i++) {
+                JSONObject profile = profiles.getJSONObject(i);
+                String userId = profile.optString("id", null);
+                if (userId == null) {
+                    continue;
+                }
+                JSONObject wrapped = new JSONObject();
+                wrapped.put("data", profile);
+                responseCache.put("/users/" + userId, JsonCodec.INSTANCE.encode(wrapped),
+                        JsonCodec.INSTANCE.contentType(), null, null);
+                results.put(userId, wrapped);
             }
+        }
+        return results;
+    }
+
+    public RequestHandle updateUserProfile(String userId, JSONObject profileData, ApiCallback callback) {
+        return submit(RequestScheduler.Priority.INTERACTIVE, "Update user profile error", callback, target -> {
+            JSONObject response = makeRequest("PUT", "/users/" + userId, profileData);
+            responseCache.remove("/users/" + userId);
+            target.onSuccess(response);
         });
     }
 
     // 聊天功能
-    public void getChatRooms(String userId, ApiArrayCallback callback) {
-        executor.execute(() -> {
-            try {
-                JSONObject response = makeRequest("GET", "/chat/rooms?userId=" + userId, null);
-                JSONArray rooms = response.getJSONArray("data");
-                callback.onSuccess(rooms);
-            } catch (Exception e) {
-                Log.e(TAG, "Get chat rooms error", e);
-                callback.onError(e.getMessage());
-            }
+    public RequestHandle getChatRooms(String userId, ApiArrayCallback callback) {
+        return submit(RequestScheduler.Priority.INTERACTIVE, "Get chat rooms error", callback, target -> {
+            JSONObject response = makeRequest("GET", "/chat/rooms?userId=" + userId, null);
+            target.onSuccess(response.getJSONArray("data"));
         });
     }
 
-    public void getChatMessages(String roomId, int page, int limit, ApiArrayCallback callback) {
-        executor.execute(() -> {
-            try {
-                String endpoint = String.format("/chat/rooms/%s/messages?page=%d&limit=%d", 
-                    roomId, page, limit);
-                JSONObject response = makeRequest("GET", endpoint, null);
-                JSONArray messages = response.getJSONArray("data");
-                callback.onSuccess(messages);
-            } catch (Exception e) {
-                Log.e(TAG, "Get chat messages error", e);
-                callback.onError(e.getMessage());
-            }
+    public RequestHandle getChatMessages(String roomId, int page, int limit, ApiArrayCallback callback) {
+        return submit(RequestScheduler.Priority.INTERACTIVE, "Get chat messages error", callback, target -> {
+            JSONObject response = makeRequest("GET", messagesEndpoint(roomId, page, limit), null);
+            target.onSuccess(response.getJSONArray("data"));
         });
     }
 
-    public void sendMessage(String roomId, String content, String type, ApiCallback callback) {
-        executor.execute(() -> {
-            try {
-                JSONObject requestBody = new JSONObject();
-                requestBody.put("content", content);
-                requestBody.put("type", type);
+    public RequestHandle getChatRooms(String userId, ApiListCallback<ChatRoom> callback) {
+        return submit(RequestScheduler.Priority.INTERACTIVE, "Get chat rooms error", callback, target -> {
+            List<ChatRoom> rooms = new ArrayList<>();
+            streamDataArray("/chat/rooms?userId=" + userId, ChatRoom::read, rooms::add);
+            target.onSuccess(rooms);
+        });
+    }
 
-                JSONObject response = makeRequest("POST", "/chat/rooms/" + roomId + "/messages", requestBody);
-                callback.onSuccess(response);
-            } catch (Exception e) {
-                Log.e(TAG, "Send message error", e);
-                callback.onError(e.getMessage());
-            }
+    public RequestHandle streamChatRooms(String userId, ApiStreamCallback<ChatRoom> callback) {
+        return submit(RequestScheduler.Priority.INTERACTIVE, "Stream chat rooms error", callback, target -> {
+            int count = streamDataArray("/chat/rooms?userId=" + userId, ChatRoom::read, target::onItem);
+            target.onComplete(count);
+        });
+    }
+
+    public RequestHandle getChatMessages(String roomId, int page, int limit, ApiListCallback<ChatMessage> callback) {
+        return getChatMessages(roomId, page, limit, RequestScheduler.Priority.INTERACTIVE, callback);
+    }
+
+    // 翻页预取使用 PREFETCH 优先级，不会挡住交易和交互请求
+    public RequestHandle getChatMessages(String roomId, int page, int limit, RequestScheduler.Priority priority,
+                                         ApiListCallback<ChatMessage> callback) {
+        return submit(priority, "Get chat messages error", callback, target -> {
+            List<ChatMessage> messages = new ArrayList<>(limit);
+            streamDataArray(messagesEndpoint(roomId, page, limit), reader -> ChatMessage.read(reader, roomId),
+                    messages::add);
+            target.onSuccess(messages);
+        });
+    }
+
+    public RequestHandle streamChatMessages(String roomId, int page, int limit, ApiStreamCallback<ChatMessage> callback) {
+        return submit(RequestScheduler.Priority.INTERACTIVE, "Stream chat messages error", callback, target -> {
+            int count = streamDataArray(messagesEndpoint(roomId, page, limit),
+                    reader -> ChatMessage.read(reader, roomId), target::onItem);
+            target.onComplete(count);
+        });
+    }
+
+    // 增量同步：只拉取 sinceId 之后的新消息
+    public RequestHandle getChatMessagesSince(String roomId, String sinceId, int limit, ApiListCallback<ChatMessage> callback) {
+        return submit(RequestScheduler.Priority.INTERACTIVE, "Get chat messages since error", callback, target -> {
+            String endpoint = String.format("/chat/rooms/%s/messages?since=%s&limit=%d",
+                roomId, sinceId, limit);
+            List<ChatMessage> messages = new ArrayList<>(limit);
+            streamDataArray(endpoint, reader -> ChatMessage.read(reader, roomId), messages::add);
+            target.onSuccess(messages);
+        });
+    }
+
+    private static String messagesEndpoint(String roomId, int page, int limit) {
+        return String.format("/chat/rooms/%s/messages?page=%d&limit=%d", roomId, page, limit);
+    }
+
+    public RequestHandle sendMessage(String roomId, String content, String type, ApiCallback callback) {
+        return sendMessage(roomId, content, type, UUID.randomUUID().toString(), callback);
+    }
+
+    // clientMessageId 供服务端去重，重试时必须沿用同一个
+    public RequestHandle sendMessage(String roomId, String content, String type, String clientMessageId,
+                                     ApiCallback callback) {
+        return submit(RequestScheduler.Priority.INTERACTIVE, "Send message error", callback, target -> {
+            JSONObject requestBody = new JSONObject();
+            requestBody.put("content", content);
+            requestBody.put("type", type);
+            requestBody.put("clientMessageId", clientMessageId);
+
+            target.onSuccess(makeRequest("POST", "/chat/rooms/" + roomId + "/messages", requestBody,
+                    Collections.singletonMap("Idempotency-Key", clientMessageId)));
         });
     }
 
     // 交易功能
-    public void getTradingPairs(ApiArrayCallback callback) {
-        executor.execute(() -> {
-            try {
-                JSONObject response = makeRequest("GET", "/trading/pairs", null);
-                JSONArray pairs = response.getJSONArray("data");
-                callback.onSuccess(pairs);
-            } catch (Exception e) {
-                Log.e(TAG, "Get trading pairs error", e);
-                callback.onError(e.getMessage());
+    public RequestHandle getTradingPairs(ApiArrayCallback callback) {
+        RequestHandle handle = new RequestHandle();
+        ApiArrayCallback target = guard(handle, callback);
+        coalescer.execute("GET /trading/pairs", "Get trading pairs error", new ApiCallback() {
+            @Override
+            public void onSuccess(JSONObject response) {
+                JSONArray pairs = response.optJSONArray("data");
+                if (pairs != null) {
+                    target.onSuccess(pairs);
+                } else {
+                    target.onError("Missing data in trading pairs response");
+                }
             }
+
+            @Override
+            public void onError(String error) {
+                target.onError(error);
+            }
+        }, executorFor(RequestScheduler.Priority.INTERACTIVE), () -> cachedGet("/trading/pairs"));
+        return handle;
+    }
+
+    public RequestHandle getMarketData(String symbol, ApiCallback callback) {
+        RequestHandle handle = new RequestHandle();
+        String endpoint = "/trading/market/" + symbol;
+        coalescer.execute("GET " + endpoint, "Get market data error", guard(handle, callback),
+                executorFor(RequestScheduler.Priority.INTERACTIVE), () -> makeRequest("GET", endpoint, null));
+        return handle;
+    }
+
+    // 下单使用最高优先级；界面下单走 OrderGateway
+    // clientOrderId 作为幂等键：超时后用同一个 id 重试，服务端不会重复成交
+    public RequestHandle placeTrade(String symbol, String type, double amount, double price,
+                                    String clientOrderId, ApiCallback callback) {
+        return submit(RequestScheduler.Priority.TRADING, "Place trade error", callback, target -> {
+            JSONObject requestBody = new JSONObject();
+            requestBody.put("symbol", symbol);
+            requestBody.put("type", type);
+            requestBody.put("amount", amount);
+            requestBody.put("price", price);
+            requestBody.put("clientOrderId", clientOrderId);
+
+            JSONObject response = makeRequest("POST", "/trading/orders", requestBody,
+                    Collections.singletonMap("Idempotency-Key", clientOrderId));
+            responseCache.removeByPrefix("/trading/portfolio/");
+            target.onSuccess(response);
         });
     }
 
-    public void getMarketData(String symbol, ApiCallback callback) {
-        executor.execute(() -> {
-            try {
-                JSONObject response = makeRequest("GET", "/trading/market/" + symbol, null);
-                callback.onSuccess(response);
-            } catch (Exception e) {
-                Log.e(TAG, "Get market data error", e);
-                callback.onError(e.getMessage());
+    public RequestHandle getUserPortfolio(String userId, ApiCallback callback) {
+        RequestHandle handle = new RequestHandle();
+        String endpoint = "/trading/portfolio/" + userId;
+        coalescer.execute("GET " + endpoint, "Get user portfolio error", guard(handle, callback),
+                executorFor(RequestScheduler.Priority.INTERACTIVE), () -> cachedGet(endpoint));
+        return handle;
+    }
+
+    // 请求体：在调度线程上执行，异常统一记录日志并回调 onError
+    private interface Call<C> {
+        void run(C target) throws Exception;
+    }
+
+    private RequestHandle submit(RequestScheduler.Priority priority, String errorMessage,
+                                 ApiCallback callback, Call<ApiCallback> call) {
+        RequestHandle handle = new RequestHandle();
+        ApiCallback target = guard(handle, callback);
+        scheduler.submit(priority, API_HOST, handle, () -> run(handle, errorMessage, call, target, target::onError));
+        return handle;
+    }
+
+    private RequestHandle submit(RequestScheduler.Priority priority, String errorMessage,
+                                 ApiArrayCallback callback, Call<ApiArrayCallback> call) {
+        RequestHandle handle = new RequestHandle();
+        ApiArrayCallback target = guard(handle, callback);
+        scheduler.submit(priority, API_HOST, handle, () -> run(handle, errorMessage, call, target, target::onError));
+        return handle;
+    }
+
+    private <T> RequestHandle submit(RequestScheduler.Priority priority, String errorMessage,
+                                     ApiListCallback<T> callback, Call<ApiListCallback<T>> call) {
+        RequestHandle handle = new RequestHandle();
+        ApiListCallback<T> target = guard(handle, callback);
+        scheduler.submit(priority, API_HOST, handle, () -> run(handle, errorMessage, call, target, target::onError));
+        return handle;
+    }
+
+    private <T> RequestHandle submit(RequestScheduler.Priority priority, String errorMessage,
+                                     ApiStreamCallback<T> callback, Call<ApiStreamCallback<T>> call) {
+        RequestHandle handle = new RequestHandle();
+        ApiStreamCallback<T> target = guard(handle, callback);
+        scheduler.submit(priority, API_HOST, handle, () -> run(handle, errorMessage, call, target, target::onError));
+        return handle;
+    }
+
+    private interface ErrorSink {
+        void onError(String error);
+    }
+
+    private static <C> void run(RequestHandle handle, String errorMessage, Call<C> call, C target, ErrorSink errors) {
+        try {
+            call.run(target);
+        } catch (Exception e) {
+            if (handle.isCancelled()) {
+                return;
             }
-        });
+            Log.e(TAG, errorMessage, e);
+            errors.onError(e.getMessage());
+        }
     }
 
-    public void placeTrade(String symbol, String type, double amount, double price, ApiCallback callback) {
-        executor.execute(() -> {
-            try {
-                JSONObject requestBody = new JSONObject();
-                requestBody.put("symbol", symbol);
-                requestBody.put("type", type);
-                requestBody.put("amount", amount);
-                requestBody.put("price", price);
-
-                JSONObject response = makeRequest("POST", "/trading/orders", requestBody);
-                callback.onSuccess(response);
-            } catch (Exception e) {
-                Log.e(TAG, "Place trade error", e);
-                callback.onError(e.getMessage());
+    private Executor executorFor(RequestScheduler.Priority priority) {
+        return command -> scheduler.submit(priority, API_HOST, command);
+    }
+
+    // 取消后不再回调；回调在 callbackExecutor 上执行
+    private ApiCallback guard(RequestHandle handle, ApiCallback callback) {
+        Executor delivery = callbackExecutor;
+        return new ApiCallback() {
+            @Override
+            public void onSuccess(JSONObject response) {
+                delivery.execute(() -> {
+                    if (!handle.isCancelled()) {
+                        callback.onSuccess(response);
+                    }
+                });
             }
-        });
+
+            @Override
+            public void onError(String error) {
+                delivery.execute(() -> {
+                    if (!handle.isCancelled()) {
+                        callback.onError(error);
+                    }
+                });
+            }
+        };
     }
 
-    public void getUserPortfolio(String userId, ApiCallback callback) {
-        executor.execute(() -> {
+    private ApiArrayCallback guard(RequestHandle handle, ApiArrayCallback callback) {
+        Executor delivery = callbackExecutor;
+        return new ApiArrayCallback() {
+            @Override
+            public void onSuccess(JSONArray response) {
+                delivery.execute(() -> {
+                    if (!handle.isCancelled()) {
+                        callback.onSuccess(response);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                delivery.execute(() -> {
+                    if (!handle.isCancelled()) {
+                        callback.onError(error);
+                    }
+                });
+            }
+        };
+    }
+
+    private <T> ApiListCallback<T> guard(RequestHandle handle, ApiListCallback<T> callback) {
+        Executor delivery = callbackExecutor;
+        return new ApiListCallback<T>() {
+            @Override
+            public void onSuccess(List<T> items) {
+                delivery.execute(() -> {
+                    if (!handle.isCancelled()) {
+                        callback.onSuccess(items);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                delivery.execute(() -> {
+                    if (!handle.isCancelled()) {
+                        callback.onError(error);
+                    }
+                });
+            }
+        };
+    }
+
+    // 流式回调在取消后抛出 CancellationException，中断解析并尽快释放连接
+    private <T> ApiStreamCallback<T> guard(RequestHandle handle, ApiStreamCallback<T> callback) {
+        Executor delivery = callbackExecutor;
+        return new ApiStreamCallback<T>() {
+            @Override
+            public void onItem(T item) {
+                if (handle.isCancelled()) {
+                    throw new CancellationException();
+                }
+                delivery.execute(() -> {
+                    if (!handle.isCancelled()) {
+                        callback.onItem(item);
+                    }
+                });
+            }
+
+            @Override
+            public void onComplete(int count) {
+                delivery.execute(() -> {
+                    if (!handle.isCancelled()) {
+                        callback.onComplete(count);
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                delivery.execute(() -> {
+                    if (!handle.isCancelled()) {
+                        callback.onError(error);
+                    }
+                });
+            }
+        };
+    }
+
+    // 通用HTTP请求方法
+    private JSONObject makeRequest(String method, String endpoint, JSONObject requestBody) throws Exception {
+        return makeRequest(method, endpoint, requestBody, null);
+    }
+
+    private JSONObject makeRequest(String method, String endpoint, JSONObject requestBody,
+                                   Map<String, String> extraHeaders) throws Exception {
+        MessageCodec codec = requestCodec;
+
+        // 请求体
+        byte[] body = null;
+        if (requestBody != null && ("POST".equals(method) || "PUT".equals(method))) {
+            body = codec.encode(requestBody);
+        }
+
+        int threshold = requestCompressionThreshold;
+        if (body != null && threshold >= 0 && body.length >= threshold) {
+            byte[] compressed = gzip(body);
+            // 压缩后反而变大（例如已经是 MessagePack 的小对象）时按原样发送
+            if (compressed.length < body.length) {
+                body = compressed;
+                Map<String, String> headers = new LinkedHashMap<>();
+                if (extraHeaders != null) {
+                    headers.putAll(extraHeaders);
+                }
+                headers.put("Content-Encoding", "gzip");
+                extraHeaders = headers;
+            }
+        }
+
+        String accept = binaryCodecEnabled
+                ? MessagePackCodec.INSTANCE.contentType() + ", " + JsonCodec.INSTANCE.contentType() + ";q=0.9"
+                : JsonCodec.INSTANCE.contentType();
+
+        // 读取响应，读完并关闭后连接回到连接池复用
+        try (HttpTransport.Response httpResponse = openRequest(method, endpoint, body, codec.contentType(), accept,
+                extraHeaders)) {
+            long decodeStart = System.nanoTime();
+            JSONObject jsonResponse = decodeResponse(httpResponse);
+            ApiMetrics.forPath(null, endpoint).decode.recordNanos(System.nanoTime() - decodeStart);
+            if (httpResponse.isSuccessful()) {
+                return jsonResponse;
+            } else {
+                throw httpError(httpResponse.code, jsonResponse);
+            }
+        }
+    }
+
+    // 带缓存的 GET：新鲜直接返回；过期但在容忍窗口内先返回旧数据并后台刷新；否则发条件请求
+    private JSONObject cachedGet(String endpoint) throws Exception {
+        ResponseCache.Policy policy = responseCache.policyFor(endpoint);
+        if (policy == null) {
+            return makeRequest("GET", endpoint, null);
+        }
+
+        long now = System.currentTimeMillis();
+        ResponseCache.Entry entry = responseCache.get(endpoint);
+        if (entry != null && entry.isFresh(policy, now)) {
+            responseCache.recordHit();
+            return decodeBytes(entry.body, entry.contentType);
+        }
+        if (entry != null && entry.isServableStale(policy, now)) {
+            responseCache.recordStaleHit();
+            revalidateAsync(endpoint, entry);
+            return decodeBytes(entry.body, entry.contentType);
+        }
+
+        if (entry == null) {
+            responseCache.recordMiss();
+        } else {
+            responseCache.recordRevalidation();
+        }
+        ResponseCache.Entry fetched = fetchConditional(endpoint, entry);
+        return decodeBytes(fetched.body, fetched.contentType);
+    }
+
+    private void revalidateAsync(String endpoint, ResponseCache.Entry entry) {
+        if (!revalidating.add(endpoint)) {
+            return;
+        }
+        responseCache.recordRevalidation();
+        scheduler.submit(RequestScheduler.Priority.PREFETCH, API_HOST, () -> {
             try {
-                JSONObject response = makeRequest("GET", "/trading/portfolio/" + userId, null);
-                callback.onSuccess(response);
+                fetchConditional(endpoint, entry);
             } catch (Exception e) {
-                Log.e(TAG, "Get user portfolio error", e);
-                callback.onError(e.getMessage());
+                Log.w(TAG, "Background revalidation failed: " + endpoint, e);
+            } finally {
+                revalidating.remove(endpoint);
             }
         });
     }
 
-    // 通用HTTP请求方法
-    private JSONObject makeRequest(String method, String endpoint, JSONObject requestBody) throws Exception {
-        URL url = new URL(BASE_URL + endpoint);
-        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-        
-        connection.setRequestMethod(method);
-        connection.setRequestProperty("Content-Type", "application/json");
-        connection.setRequestProperty("Accept", "application/json");
-        
+    // 有缓存时带 If-None-Match / If-Modified-Since，304 视为命中
+    private ResponseCache.Entry fetchConditional(String endpoint, ResponseCache.Entry cached) throws Exception {
+        Map<String, String> conditional = new LinkedHashMap<>();
+        if (cached != null && cached.etag != null) {
+            conditional.put("If-None-Match", cached.etag);
+        }
+        if (cached != null && cached.lastModified != null) {
+            conditional.put("If-Modified-Since", cached.lastModified);
+        }
+
+        String accept = binaryCodecEnabled
+                ? MessagePackCodec.INSTANCE.contentType() + ", " + JsonCodec.INSTANCE.contentType() + ";q=0.9"
+                : JsonCodec.INSTANCE.contentType();
+        try (HttpTransport.Response httpResponse = openRequest("GET", endpoint, null,
+                requestCodec.contentType(), accept, conditional)) {
+            if (httpResponse.code == 304 && cached != null) {
+                return responseCache.markNotModified(endpoint, cached);
+            }
+            byte[] data = readBytes(httpResponse.body());
+            String contentType = httpResponse.header("Content-Type");
+            if (!httpResponse.isSuccessful()) {
+                throw httpError(httpResponse.code, decodeBytes(data, contentType));
+            }
+            String cacheControl = httpResponse.header("Cache-Control");
+            if (cacheControl != null && cacheControl.contains("no-store")) {
+                return new ResponseCache.Entry(data, contentType, null, null, System.currentTimeMillis());
+            }
+            return responseCache.put(endpoint, data, contentType,
+                    httpResponse.header("ETag"), httpResponse.header("Last-Modified"));
+        }
+    }
+
+    // 流式读取 GET 响应中的 data 数组，逐条交给 handler
+    private <T> int streamDataArray(String endpoint, JsonStreamDecoder.ItemReader<T> itemReader,
+                                    JsonStreamDecoder.ItemHandler<T> handler) throws Exception {
+        String json = JsonCodec.INSTANCE.contentType();
+        try (HttpTransport.Response httpResponse = openRequest("GET", endpoint, null, json, json)) {
+            if (!httpResponse.isSuccessful()) {
+                throw httpError(httpResponse.code, decodeResponse(httpResponse));
+            }
+            return JsonStreamDecoder.decodeDataArray(httpResponse.body(), itemReader, handler);
+        }
+    }
+
+    private HttpTransport.Response openRequest(String method, String endpoint, byte[] body,
+                                               String contentType, String accept) throws IOException {
+        return openRequest(method, endpoint, body, contentType, accept, null);
+    }
+
+    // 带着内存中的令牌发送；401 时等待（或发起）一次刷新，用新令牌重放一次
+    // 请求体是 byte[]，可以原样重发
+    private HttpTransport.Response openRequest(String method, String endpoint, byte[] body,
+                                               String contentType, String accept,
+                                               Map<String, String> extraHeaders) throws IOException {
+        String token = tokens.getAccessToken();
+        HttpTransport.Response response = send(method, endpoint, body, contentType, accept, extraHeaders, token);
+        if (response.code != 401 || token == null) {
+            return response;
+        }
+        response.close();
+        String refreshed = tokens.refreshAfterUnauthorized(token);
+        if (refreshed == null) {
+            throw new IOException("HTTP 401: Session expired");
+        }
+        return send(method, endpoint, body, contentType, accept, extraHeaders, refreshed);
+    }
+
+    private HttpTransport.Response send(String method, String endpoint, byte[] body, String contentType,
+                                        String accept, Map<String, String> extraHeaders,
+                                        String token) throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Content-Type", contentType);
+        headers.put("Accept", accept);
+        if (extraHeaders != null) {
+            headers.putAll(extraHeaders);
+        }
+
         // 添加认证头
-        String token = getAuthToken();
         if (token != null && !token.isEmpty()) {
-            connection.setRequestProperty("Authorization", "Bearer " + token);
+            headers.put("Authorization", "Bearer " + token);
         }
 
-        // 发送请求体
-        if (requestBody != null && ("POST".equals(method) || "PUT".equals(method))) {
-            connection.setDoOutput(true);
-            try (OutputStream os = connection.getOutputStream()) {
-                byte[] input = requestBody.toString().getBytes("utf-8");
-                os.write(input, 0, input.length);
+        return transport.execute(new HttpTransport.Request(method, BASE_URL + endpoint, headers, body));
+    }
+
+    // 刷新接口不带 Authorization，也不走 401 重放
+    private TokenManager.Tokens refreshTokens(String refreshToken) throws Exception {
+        JSONObject requestBody = new JSONObject();
+        requestBody.put("refreshToken", refreshToken);
+        String json = JsonCodec.INSTANCE.contentType();
+        try (HttpTransport.Response httpResponse = send("POST", "/auth/refresh",
+                JsonCodec.INSTANCE.encode(requestBody), json, json, null, null)) {
+            JSONObject jsonResponse = decodeResponse(httpResponse);
+            if (!httpResponse.isSuccessful()) {
+                throw httpError(httpResponse.code, jsonResponse);
+            }
+            TokenManager.Tokens fresh = TokenManager.Tokens.fromResponse(jsonResponse, refreshToken);
+            if (fresh == null) {
+                throw new IOException("Refresh response has no access token");
             }
+            return fresh;
         }
+    }
 
-        // 读取响应
-        int responseCode = connection.getResponseCode();
-        BufferedReader reader;
-        
-        if (responseCode >= 200 && responseCode < 300) {
-            reader = new BufferedReader(new InputStreamReader(connection.getInputStream()));
-        } else {
-            reader = new BufferedReader(new InputStreamReader(connection.getErrorStream()));
+    // 传输层已经按 Content-Encoding 解压，这里直接从流解码
+    private JSONObject decodeResponse(HttpTransport.Response httpResponse) throws IOException {
+        return codecFor(httpResponse.header("Content-Type")).decode(httpResponse.body());
+    }
+
+    private JSONObject decodeBytes(byte[] data, String contentType) throws IOException {
+        return codecFor(contentType).decode(data, 0, data.length);
+    }
+
+    // 按响应的 Content-Type 选择解码器
+    private MessageCodec codecFor(String contentType) {
+        if (contentType != null && contentType.startsWith(MessagePackCodec.INSTANCE.contentType())) {
+            if (binaryCodecEnabled) {
+                requestCodec = MessagePackCodec.INSTANCE;
+            }
+            return MessagePackCodec.INSTANCE;
         }
+        return JsonCodec.INSTANCE;
+    }
 
-        StringBuilder response = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            response.append(line);
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
         }
-        reader.close();
+        return out.toByteArray();
+    }
 
-        JSONObject jsonResponse = new JSONObject(response.toString());
-        
-        if (responseCode >= 200 && responseCode < 300) {
-            return jsonResponse;
-        } else {
-            throw new Exception("HTTP " + responseCode + ": " + jsonResponse.optString("message", "Unknown error"));
+    private static byte[] readBytes(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            out.write(buffer, 0, read);
         }
+        return out.toByteArray();
     }
 
-    // 获取认证令牌
-    private String getAuthToken() {
-        // 从SharedPreferences或其他安全存储中获取token
-        return context.getSharedPreferences("auth", Context.MODE_PRIVATE)
-                .getString("access_token", null);
+    private static Exception httpError(int responseCode, JSONObject jsonResponse) {
+        return new Exception("HTTP " + responseCode + ": " + jsonResponse.optString("message", "Unknown error"));
     }
 
-    // 保存认证令牌
+    // 保存认证令牌（不带刷新令牌和有效期时只能在 401 后重新登录）
     public void saveAuthToken(String token) {
-        context.getSharedPreferences("auth", Context.MODE_PRIVATE)
-                .edit()
-                .putString("access_token", token)
-                .apply();
+        tokens.setTokens(token, null, 0);
+    }
+
+    public void saveAuthTokens(String accessToken, String refreshToken, long expiresInSeconds) {
+        tokens.setTokens(accessToken, refreshToken, expiresInSeconds);
+    }
+
+    public TokenManager getTokenManager() {
+        return tokens;
     }
 
-    // 清除认证令牌
+    // 清除认证令牌，令牌监听器同时清空按用户缓存的响应
     public void clearAuthToken() {
-        context.getSharedPreferences("auth", Context.MODE_PRIVATE)
-                .edit()
-                .remove("access_token")
-                .apply();
+        tokens.clear();
     }
 
     // 检查是否已登录
     public boolean isLoggedIn() {
-        String token = getAuthToken();
-        return token != null && !token.isEmpty();
+        return tokens.hasToken();
+    }
+
+    // 启动时提前完成 DNS、TCP 和 TLS 握手，首屏请求直接复用连接池中的连接
+    // 只关心连接是否建立，不论响应码；done 在结束后（包括失败）调用
+    public void warmUpConnection(Runnable done) {
+        scheduler.submit(RequestScheduler.Priority.PREFETCH, API_HOST, () -> {
+            try {
+                // 连接建立即可，响应直接关闭，连接回到连接池
+                transport.execute(new HttpTransport.Request("HEAD", BASE_URL, null, null)).close();
+            } catch (IOException e) {
+                Log.w(TAG, "Connection warm-up failed", e);
+            } finally {
+                if (done != null) {
+                    done.run();
+                }
+            }
+        });
     }
 
     // 关闭服务
     public void shutdown() {
-        if (executor != null && !executor.isShutdown()) {
-            executor.shutdown();
+        scheduler.shutdown();
+        if (transport != null) {
+            transport.shutdown();
         }
     }
 }
@@ -0,0 +1,311 @@
+package com.potatochat.mobile.services;
+
+import android.content.Context;
+import android.util.Log;
+import com.potatochat.mobile.models.ChatMessage;
+import com.potatochat.mobile.models.OutboxMessage;
+import com.potatochat.mobile.storage.ChatMessageStore;
+import com.potatochat.mobile.utils.Backoff;
+import com.potatochat.mobile.utils.MainThreadDispatcher;
+import com.potatochat.mobile.utils.SharedScheduler;
+import com.potatochat.mobile.utils.WebSocketManager;
+import org.json.JSONObject;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 聊天消息发件箱：先写入本地数据库再发送，离线或失败时按退避重试，进程重启后继续发送
+// 同一聊天室一次只发送最前面的一条，保证顺序；不同聊天室并行发送
+// 每条消息带 clientMessageId，重试沿用同一个，由服务端去重
+public class ChatOutbox {
+    private static final String TAG = "ChatOutbox";
+    private static ChatOutbox instance;
+
+    // 在主线程回调
+    public interface Listener {
+        void onQueued(OutboxMessage message);
+        void onSent(OutboxMessage message, ChatMessage sent);
+        // 服务端明确拒绝（4xx），消息已从发件箱移除
+        void onFailed(OutboxMessage message, String error);
+    }
+
+    // 发件箱的持久化，默认写入 ChatMessageStore
+    interface Storage {
+        void add(OutboxMessage message);
+        // 每个聊天室排在最前面的一条
+        List<OutboxMessage> heads();
+        List<OutboxMessage> pending(String roomId);
+        void updateAttempt(String clientMessageId, int attempts, long nextAttemptAt);
+        void remove(String clientMessageId);
+        // 发送成功后服务端返回的消息
+        void insertSent(ChatMessage message);
+    }
+
+    interface Sender {
+        void send(OutboxMessage message, ApiService.ApiCallback callback);
+    }
+
+    private final Storage store;
+    private final Sender sender;
+    private final Backoff backoff;
+    // 数据库读写和发送调度都在这个线程上，下面的集合只在这里访问
+    private final ExecutorService executor;
+    private final ScheduledExecutorService scheduler;
+    private final Executor callbackExecutor;
+    private final Set<String> sendingRooms = new HashSet<>();
+    private final Map<String, ScheduledFuture<?>> retryTimers = new HashMap<>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicLong sentCount = new AtomicLong();
+    private final AtomicLong retryCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+
+    private ChatOutbox(Context context) {
+        this(storage(ChatMessageStore.getInstance(context)), sender(ApiService.getInstance(context)),
+                Executors.newSingleThreadExecutor(), SharedScheduler.get(), MainThreadDispatcher.get(),
+                new Backoff(1000, 60000));
+        // 重新连上时不再等待退避，立即重发
+        WebSocketManager.getInstance().addListener(new WebSocketManager.WebSocketListener() {
+            @Override
+            public void onConnected() {
+                retryNow();
+            }
+
+            @Override
+            public void onDisconnected() {
+            }
+
+            @Override
+            public void onMessage(JSONObject message) {
+            }
+
+            @Override
+            public void onError(String error) {
+            }
+        });
+    }
+
+    // 创建后立即补发上次进程退出时没发出去的消息
+    ChatOutbox(Storage store, Sender sender, ExecutorService executor, ScheduledExecutorService scheduler,
+               Executor callbackExecutor, Backoff backoff) {
+        this.store = store;
+        this.sender = sender;
+        this.executor = executor;
+        this.scheduler = scheduler;
+        this.callbackExecutor = callbackExecutor;
+        this.backoff = backoff;
+        drain(false);
+    }
+
+    private static Storage storage(ChatMessageStore store) {
+        return new Storage() {
+            @Override
+            public void add(OutboxMessage message) {
+                store.addToOutbox(message);
+            }
+
+            @Override
+            public List<OutboxMessage> heads() {
+                return store.getOutboxHeads();
+            }
+
+            @Override
+            public List<OutboxMessage> pending(String roomId) {
+                return store.getOutbox(roomId);
+            }
+
+            @Override
+            public void updateAttempt(String clientMessageId, int attempts, long nextAttemptAt) {
+                store.updateOutboxAttempt(clientMessageId, attempts, nextAttemptAt);
+            }
+
+            @Override
+            public void remove(String clientMessageId) {
+                store.removeFromOutbox(clientMessageId);
+            }
+
+            @Override
+            public void insertSent(ChatMessage message) {
+                store.insert(message);
+            }
+        };
+    }
+
+    private static Sender sender(ApiService apiService) {
+        return (message, callback) -> apiService.sendMessage(message.getRoomId(), message.getContent(),
+                message.getType(), message.getClientMessageId(), callback);
+    }
+
+    public static synchronized ChatOutbox getInstance(Context context) {
+        if (instance == null) {
+            instance = new ChatOutbox(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // 返回 clientMessageId，消息写入数据库后才会尝试发送
+    public String send(String roomId, String content, String type) {
+        OutboxMessage message = new OutboxMessage(UUID.randomUUID().toString(), roomId, content, type,
+                System.currentTimeMillis(), 0, 0);
+        executor.execute(() -> {
+            store.add(message);
+            notify(listener -> listener.onQueued(message));
+            drainNow(false);
+        });
+        return message.getClientMessageId();
+    }
+
+    // 网络恢复时调用，跳过退避等待
+    public void retryNow() {
+        drain(true);
+    }
+
+    private void drain(boolean ignoreBackoff) {
+        executor.execute(() -> drainNow(ignoreBackoff));
+    }
+
+    private void drainNow(boolean ignoreBackoff) {
+        List<OutboxMessage> heads;
+        try {
+            heads = store.heads();
+        } catch (Exception e) {
+            Log.e(TAG, "Read outbox error", e);
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (OutboxMessage head : heads) {
+            String roomId = head.getRoomId();
+            if (sendingRooms.contains(roomId)) {
+                continue;
+            }
+            ScheduledFuture<?> timer = retryTimers.remove(roomId);
+            if (timer != null) {
+                timer.cancel(false);
+            }
+            long wait = head.getNextAttemptAt() - now;
+            if (wait > 0 && !ignoreBackoff) {
+                retryTimers.put(roomId, scheduler.schedule(() -> drain(false), wait,
+                        TimeUnit.MILLISECONDS));
+                continue;
+            }
+            sendingRooms.add(roomId);
+            sendHead(head);
+        }
+    }
+
+    private void sendHead(OutboxMessage message) {
+        sender.send(message, new ApiService.ApiCallback() {
+            @Override
+            public void onSuccess(JSONObject response) {
+                executor.execute(() -> onSendSucceeded(message, response));
+            }
+
+            @Override
+            public void onError(String error) {
+                executor.execute(() -> onSendFailed(message, error));
+            }
+        });
+    }
+
+    private void onSendSucceeded(OutboxMessage message, JSONObject response) {
+        sendingRooms.remove(message.getRoomId());
+        JSONObject data = response.optJSONObject("data");
+        ChatMessage sent = ChatMessage.fromJson(data != null ? data : response);
+        try {
+            store.remove(message.getClientMessageId());
+            if (sent.getId() != null) {
+                store.insertSent(sent);
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Update outbox error", e);
+        }
+        sentCount.incrementAndGet();
+        notify(listener -> listener.onSent(message, sent));
+        drainNow(false);
+    }
+
+    private void onSendFailed(OutboxMessage message, String error) {
+        sendingRooms.remove(message.getRoomId());
+        try {
+            if (isPermanent(error)) {
+                // 重试也不会成功，移除后让后面的消息继续发送
+                store.remove(message.getClientMessageId());
+                failedCount.incrementAndGet();
+                Log.w(TAG, "Message rejected: " + error);
+                notify(listener -> listener.onFailed(message, error));
+            } else {
+                int attempts = message.getAttempts() + 1;
+                store.updateAttempt(message.getClientMessageId(), attempts,
+                        System.currentTimeMillis() + backoff.delayFor(attempts));
+                retryCount.incrementAndGet();
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Update outbox error", e);
+        }
+        drainNow(false);
+    }
+
+    // 4xx 是服务端明确拒绝；408 和 429 仍然可以重试，401 在重新登录后重试
+    private static boolean isPermanent(String error) {
+        if (error == null || !error.startsWith("HTTP 4")) {
+            return false;
+        }
+        return !error.startsWith("HTTP 401") && !error.startsWith("HTTP 408") && !error.startsWith("HTTP 429");
+    }
+
+    private interface Notification {
+        void deliver(Listener listener);
+    }
+
+    private void notify(Notification notification) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        callbackExecutor.execute(() -> {
+            for (Listener listener : listeners) {
+                notification.deliver(listener);
+            }
+        });
+    }
+
+    // 某个聊天室尚未发出的消息，用于在时间线末尾显示“发送中”
+    public void getPending(String roomId, ApiService.ApiListCallback<OutboxMessage> callback) {
+        executor.execute(() -> {
+            try {
+                callback.onSuccess(store.pending(roomId));
+            } catch (Exception e) {
+                callback.onError(e.getMessage());
+            }
+        });
+    }
+
+    public long getSentCount() {
+        return sentCount.get();
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+}
@@ -0,0 +1,216 @@
+package com.potatochat.mobile.services;
+
+import android.content.Context;
+import android.util.Log;
+import com.potatochat.mobile.models.ChatMessage;
+import com.potatochat.mobile.storage.ChatMessageStore;
+import com.potatochat.mobile.utils.WebSocketManager;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// 聊天数据仓库：先从本地存储渲染，再只同步同步游标之后的增量
+public class ChatRepository {
+    private static final String TAG = "ChatRepository";
+    private static final int LOCAL_PAGE_SIZE = 50;
+    private static final int SYNC_PAGE_SIZE = 100;
+    // WebSocket 续传中聊天室消息流的名称前缀
+    private static final String CHAT_STREAM_PREFIX = "chat:";
+    private static ChatRepository instance;
+
+    // 续传失败后的补拉只写入本地存储
+    private static final RoomCallback STORE_ONLY = new RoomCallback() {
+        @Override
+        public void onLocalMessages(List<ChatMessage> messages) {
+        }
+
+        @Override
+        public void onNewMessages(List<ChatMessage> messages) {
+        }
+
+        @Override
+        public void onSyncComplete() {
+        }
+
+        @Override
+        public void onError(String error) {
+            Log.w(TAG, "Catch-up sync failed: " + error);
+        }
+    };
+
+    private final ChatMessageStore store;
+    private final ApiService apiService;
+    private final ChatOutbox outbox;
+    private final ExecutorService ioExecutor = Executors.newSingleThreadExecutor();
+    // 正在显示的聊天室，续传补拉的新消息也回调给它们
+    private final Map<String, RoomCallback> openRooms = new ConcurrentHashMap<>();
+
+    public interface RoomCallback {
+        // 本地已有的消息，按时间升序
+        void onLocalMessages(List<ChatMessage> messages);
+        // 同步回来的新消息，每页回调一次
+        void onNewMessages(List<ChatMessage> messages);
+        void onSyncComplete();
+        void onError(String error);
+    }
+
+    private ChatRepository(Context context) {
+        this.store = ChatMessageStore.getInstance(context);
+        this.apiService = ApiService.getInstance(context);
+        this.outbox = ChatOutbox.getInstance(context);
+        // WebSocket 推送的新消息也写入本地存储
+        WebSocketManager webSocketManager = WebSocketManager.getInstance();
+        webSocketManager.setMessageStore(store);
+        webSocketManager.getStreamResume().addResetListener(CHAT_STREAM_PREFIX, this::onChatStreamReset);
+    }
+
+    public static String chatStream(String roomId) {
+        return CHAT_STREAM_PREFIX + roomId;
+    }
+
+    // 断线期间的消息无法续传时，从同步游标开始补拉；重置前已写入的推送消息不能当游标，否则中间的缺口被跳过
+    private void onChatStreamReset(String stream) {
+        String roomId = stream.substring(CHAT_STREAM_PREFIX.length());
+        ioExecutor.execute(() -> {
+            RoomCallback callback = openRooms.get(roomId);
+            String cursor = store.getSyncCursor(roomId);
+            if (cursor != null) {
+                syncSince(roomId, cursor, callback != null ? callback : STORE_ONLY);
+            } else if (callback != null) {
+                syncFirstPage(roomId, callback);
+            }
+        });
+    }
+
+    public static synchronized ChatRepository getInstance(Context context) {
+        if (instance == null) {
+            instance = new ChatRepository(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public ChatMessageStore getStore() {
+        return store;
+    }
+
+    // 经发件箱发送，离线时保存在本地，恢复后按顺序补发
+    public String sendMessage(String roomId, String content, String type) {
+        return outbox.send(roomId, content, type);
+    }
+
+    // 关闭前 callback 还会收到续传补拉的新消息，每次补拉以 onSyncComplete 或 onError 结束
+    public void openRoom(String roomId, RoomCallback callback) {
+        openRooms.put(roomId, callback);
+        ioExecutor.execute(() -> {
+            try {
+                callback.onLocalMessages(store.getRecentMessages(roomId, LOCAL_PAGE_SIZE));
+                String cursor = store.getSyncCursor(roomId);
+                if (cursor == null) {
+                    syncFirstPage(roomId, callback);
+                } else {
+                    syncSince(roomId, cursor, callback);
+                }
+            } catch (Exception e) {
+                Log.e(TAG, "Open room error", e);
+                callback.onError(e.getMessage());
+            }
+        });
+    }
+
+    public void closeRoom(String roomId, RoomCallback callback) {
+        openRooms.remove(roomId, callback);
+    }
+
+    // 按服务端页码翻页，第 1 页最新；结果写入本地存储，在 IO 线程回调
+    // 请求失败且给了 before 时，退回本地存储中比 before 更早的消息，离线时也能向上翻
+    public RequestHandle loadPage(String roomId, int page, int limit, ChatMessage before,
+                                  RequestScheduler.Priority priority, ApiService.ApiListCallback<ChatMessage> callback) {
+        return apiService.getChatMessages(roomId, page, limit, priority, new ApiService.ApiListCallback<ChatMessage>() {
+            @Override
+            public void onSuccess(List<ChatMessage> messages) {
+                ioExecutor.execute(() -> {
+                    store.insertAll(messages);
+                    callback.onSuccess(messages);
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                if (before == null) {
+                    callback.onError(error);
+                    return;
+                }
+                ioExecutor.execute(() -> {
+                    List<ChatMessage> local = store.getMessagesBefore(roomId, before, limit);
+                    if (local.isEmpty()) {
+                        callback.onError(error);
+                    } else {
+                        callback.onSuccess(local);
+                    }
+                });
+            }
+        });
+    }
+
+    // 从未同步过时拉取最新一页，之前 WebSocket 推送写入的消息不算同步过
+    private void syncFirstPage(String roomId, RoomCallback callback) {
+        apiService.getChatMessages(roomId, 1, SYNC_PAGE_SIZE, new ApiService.ApiListCallback<ChatMessage>() {
+            @Override
+            public void onSuccess(List<ChatMessage> messages) {
+                ioExecutor.execute(() -> {
+                    store.insertSynced(roomId, messages, newest(messages));
+                    callback.onNewMessages(messages);
+                    callback.onSyncComplete();
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    // 一页写满说明可能还有更多，继续以新的最新消息为游标同步
+    private void syncSince(String roomId, String sinceId, RoomCallback callback) {
+        apiService.getChatMessagesSince(roomId, sinceId, SYNC_PAGE_SIZE, new ApiService.ApiListCallback<ChatMessage>() {
+            @Override
+            public void onSuccess(List<ChatMessage> messages) {
+                ioExecutor.execute(() -> {
+                    if (!messages.isEmpty()) {
+                        store.insertSynced(roomId, messages, messages.get(messages.size() - 1));
+                        callback.onNewMessages(messages);
+                    }
+                    if (messages.size() >= SYNC_PAGE_SIZE) {
+                        syncSince(roomId, messages.get(messages.size() - 1).getId(), callback);
+                    } else {
+                        callback.onSyncComplete();
+                    }
+                });
+            }
+
+            @Override
+            public void onError(String error) {
+                callback.onError(error);
+            }
+        });
+    }
+
+    // 第一页的顺序由服务端决定，按 (timestamp, id) 取最新一条作为游标
+    private static ChatMessage newest(List<ChatMessage> messages) {
+        ChatMessage newest = null;
+        for (ChatMessage message : messages) {
+            if (message.getId() == null) {
+                continue;
+            }
+            if (newest == null || message.getTimestamp() > newest.getTimestamp()
+                    || (message.getTimestamp() == newest.getTimestamp()
+                    && message.getId().compareTo(newest.getId()) > 0)) {
+                newest = message;
+            }
+        }
+        return newest;
+    }
+}
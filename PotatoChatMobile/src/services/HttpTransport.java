@@ -0,0 +1,72 @@
+package com.potatochat.mobile.services;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+// HTTP传输层抽象，ApiService 通过它发送请求，便于替换实现
+public interface HttpTransport {
+
+    Response execute(Request request) throws IOException;
+
+    // 当前连接池中的连接数（空闲 + 使用中）
+    int connectionCount();
+
+    // 立即关闭所有空闲连接，例如应用进入后台时
+    void evictIdleConnections();
+
+    void shutdown();
+
+    final class Request {
+        public final String method;
+        public final String url;
+        public final Map<String, String> headers;
+        public final byte[] body;
+
+        public Request(String method, String url, Map<String, String> headers, byte[] body) {
+            this.method = method;
+            this.url = url;
+            this.headers = headers != null
+                    ? Collections.unmodifiableMap(new LinkedHashMap<>(headers))
+                    : Collections.<String, String>emptyMap();
+            this.body = body;
+        }
+    }
+
+    final class Response implements Closeable {
+        public final int code;
+        private final Map<String, String> headers;
+        private final InputStream body;
+        private final Closeable resource;
+
+        // headers 的 key 统一为小写
+        public Response(int code, Map<String, String> headers, InputStream body, Closeable resource) {
+            this.code = code;
+            this.headers = headers;
+            this.body = body;
+            this.resource = resource;
+        }
+
+        public boolean isSuccessful() {
+            return code >= 200 && code < 300;
+        }
+
+        public String header(String name) {
+            return headers.get(name.toLowerCase(Locale.US));
+        }
+
+        public InputStream body() {
+            return body;
+        }
+
+        // 必须关闭，连接才会回到连接池
+        @Override
+        public void close() throws IOException {
+            resource.close();
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.potatochat.mobile.services;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+// 流式解析 {"data": [...]} 形式的响应，逐条产出对象，不在内存中保留整个响应
+public final class JsonStreamDecoder {
+
+    public interface ItemReader<T> {
+        T read(JsonReader reader) throws IOException;
+    }
+
+    public interface ItemHandler<T> {
+        void onItem(T item);
+    }
+
+    private JsonStreamDecoder() {
+    }
+
+    // 返回解析出的条目数；响应中没有 data 数组时返回 0
+    public static <T> int decodeDataArray(InputStream in, ItemReader<T> itemReader,
+                                          ItemHandler<T> handler) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        int count = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if ("data".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    handler.onItem(itemReader.read(reader));
+                    count++;
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return count;
+    }
+}
@@ -0,0 +1,96 @@
+package com.potatochat.mobile.services;
+
+import org.json.JSONObject;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// 在很短的时间窗口内收集按 id 查询的请求，合并成一次批量请求
+class MicroBatcher {
+
+    interface BulkFetcher {
+        // 返回 id -> 结果；缺失的 id 视为查询失败
+        Map<String, JSONObject> fetch(List<String> ids) throws Exception;
+    }
+
+    private final long windowMs;
+    private final int maxBatchSize;
+    private final ScheduledExecutorService scheduler;
+    private final Executor executor;
+    private final BulkFetcher fetcher;
+
+    private final Object lock = new Object();
+    private Map<String, List<ApiService.ApiCallback>> pending = new LinkedHashMap<>();
+    private boolean flushScheduled;
+
+    MicroBatcher(long windowMs, int maxBatchSize, ScheduledExecutorService scheduler,
+                 Executor executor, BulkFetcher fetcher) {
+        this.windowMs = windowMs;
+        this.maxBatchSize = maxBatchSize;
+        this.scheduler = scheduler;
+        this.executor = executor;
+        this.fetcher = fetcher;
+    }
+
+    void request(String id, ApiService.ApiCallback callback) {
+        boolean flushNow = false;
+        synchronized (lock) {
+            List<ApiService.ApiCallback> callbacks = pending.get(id);
+            if (callbacks == null) {
+                callbacks = new ArrayList<>();
+                pending.put(id, callbacks);
+            }
+            callbacks.add(callback);
+
+            if (pending.size() >= maxBatchSize) {
+                flushNow = true;
+            } else if (!flushScheduled) {
+                flushScheduled = true;
+                scheduler.schedule(() -> executor.execute(this::flush), windowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (flushNow) {
+            executor.execute(this::flush);
+        }
+    }
+
+    private void flush() {
+        Map<String, List<ApiService.ApiCallback>> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                flushScheduled = false;
+                return;
+            }
+            batch = pending;
+            pending = new LinkedHashMap<>();
+            flushScheduled = false;
+        }
+
+        Map<String, JSONObject> results;
+        try {
+            results = fetcher.fetch(new ArrayList<>(batch.keySet()));
+        } catch (Exception e) {
+            for (List<ApiService.ApiCallback> callbacks : batch.values()) {
+                for (ApiService.ApiCallback callback : callbacks) {
+                    callback.onError(e.getMessage());
+                }
+            }
+            return;
+        }
+
+        for (Map.Entry<String, List<ApiService.ApiCallback>> entry : batch.entrySet()) {
+            JSONObject result = results.get(entry.getKey());
+            for (ApiService.ApiCallback callback : entry.getValue()) {
+                if (result != null) {
+                    callback.onSuccess(result);
+                } else {
+                    callback.onError("Not found: " + entry.getKey());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package com.potatochat.mobile.services;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import okhttp3.ConnectionPool;
+import okhttp3.EventListener;
+import okhttp3.Headers;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.RequestBody;
+import okhttp3.ResponseBody;
+import okhttp3.brotli.BrotliInterceptor;
+
+// 基于 OkHttp 的传输实现：持久连接池、HTTP/2 多路复用、超时与空闲回收
+public class OkHttpTransport implements HttpTransport {
+    private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
+
+    private final OkHttpClient client;
+
+    public static class Config {
+        long connectTimeoutMs = 10_000;
+        long readTimeoutMs = 15_000;
+        long writeTimeoutMs = 15_000;
+        int maxIdleConnections = 5;
+        long keepAliveMs = 5 * 60_000;
+        boolean http2Enabled = true;
+        boolean brotliEnabled = true;
+        EventListener.Factory eventListenerFactory;
+
+        public Config connectTimeout(long ms) {
+            this.connectTimeoutMs = ms;
+            return this;
+        }
+
+        public Config readTimeout(long ms) {
+            this.readTimeoutMs = ms;
+            return this;
+        }
+
+        public Config writeTimeout(long ms) {
+            this.writeTimeoutMs = ms;
+            return this;
+        }
+
+        public Config maxIdleConnections(int count) {
+            this.maxIdleConnections = count;
+            return this;
+        }
+
+        // 空闲超过该时长的连接会被连接池回收
+        public Config keepAlive(long ms) {
+            this.keepAliveMs = ms;
+            return this;
+        }
+
+        public Config http2Enabled(boolean enabled) {
+            this.http2Enabled = enabled;
+            return this;
+        }
+
+        // 关闭后只声明 gzip（OkHttp 默认行为）
+        public Config brotliEnabled(boolean enabled) {
+            this.brotliEnabled = enabled;
+            return this;
+        }
+
+        // 用于统计 DNS、建连、首字节等各阶段耗时
+        public Config eventListenerFactory(EventListener.Factory factory) {
+            this.eventListenerFactory = factory;
+            return this;
+        }
+    }
+
+    public OkHttpTransport() {
+        this(new Config());
+    }
+
+    public OkHttpTransport(Config config) {
+        this(newClientBuilder(config).build());
+    }
+
+    public OkHttpTransport(OkHttpClient client) {
+        this.client = client;
+    }
+
+    static OkHttpClient.Builder newClientBuilder(Config config) {
+        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+                .connectionPool(new ConnectionPool(config.maxIdleConnections,
+                        config.keepAliveMs, TimeUnit.MILLISECONDS))
+                .connectTimeout(config.connectTimeoutMs, TimeUnit.MILLISECONDS)
+                .readTimeout(config.readTimeoutMs, TimeUnit.MILLISECONDS)
+                .writeTimeout(config.writeTimeoutMs, TimeUnit.MILLISECONDS)
+                .retryOnConnectionFailure(true);
+
+        // TLS 上通过 ALPN 协商 HTTP/2，服务端不支持时回退到 HTTP/1.1 keep-alive
+        if (config.http2Enabled) {
+            builder.protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1));
+        } else {
+            builder.protocols(Arrays.asList(Protocol.HTTP_1_1));
+        }
+
+        // 声明 Accept-Encoding: br,gzip，响应体在读取时流式解压，调用方拿到的始终是解压后的流
+        if (config.brotliEnabled) {
+            builder.addInterceptor(BrotliInterceptor.INSTANCE);
+        }
+        if (config.eventListenerFactory != null) {
+            builder.eventListenerFactory(config.eventListenerFactory);
+        }
+        return builder;
+    }
+
+    public OkHttpClient client() {
+        return client;
+    }
+
+    @Override
+    public Response execute(Request request) throws IOException {
+        okhttp3.Request.Builder builder = new okhttp3.Request.Builder().url(request.url);
+        for (Map.Entry<String, String> header : request.headers.entrySet()) {
+            builder.header(header.getKey(), header.getValue());
+        }
+
+        RequestBody body = null;
+        if (request.body != null) {
+            body = RequestBody.create(request.body, contentType(request));
+        } else if ("POST".equals(request.method) || "PUT".equals(request.method)) {
+            body = RequestBody.create(new byte[0], contentType(request));
+        }
+        builder.method(request.method, body);
+
+        okhttp3.Response response = client.newCall(builder.build()).execute();
+        ResponseBody responseBody = response.body();
+        InputStream stream = responseBody != null
+                ? responseBody.byteStream()
+                : new java.io.ByteArrayInputStream(new byte[0]);
+        return new Response(response.code(), lowerCaseHeaders(response.headers()), stream, response);
+    }
+
+    @Override
+    public int connectionCount() {
+        return client.connectionPool().connectionCount();
+    }
+
+    @Override
+    public void evictIdleConnections() {
+        client.connectionPool().evictAll();
+    }
+
+    @Override
+    public void shutdown() {
+        client.dispatcher().executorService().shutdown();
+        client.connectionPool().evictAll();
+    }
+
+    private static MediaType contentType(Request request) {
+        String value = request.headers.get("Content-Type");
+        MediaType parsed = value != null ? MediaType.parse(value) : null;
+        return parsed != null ? parsed : JSON;
+    }
+
+    private static Map<String, String> lowerCaseHeaders(Headers headers) {
+        Map<String, String> result = new HashMap<>();
+        for (int i = 0; i < headers.size(); i++) {
+            result.put(headers.name(i).toLowerCase(Locale.US), headers.value(i));
+        }
+        return result;
+    }
+}
@@ -0,0 +1,76 @@
+package com.potatochat.mobile.services;
+
+import android.util.Log;
+import org.json.JSONObject;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 相同的 GET 请求在进行中时不再重复发出，结果分发给所有等待的回调
+// 多个回调拿到的是同一个 JSONObject，调用方不应修改它
+class RequestCoalescer {
+    private static final String TAG = "RequestCoalescer";
+
+    interface Fetcher {
+        JSONObject fetch() throws Exception;
+    }
+
+    private final Object lock = new Object();
+    private final Map<String, List<ApiService.ApiCallback>> inFlight = new HashMap<>();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    void execute(String key, String errorMessage, ApiService.ApiCallback callback,
+                 Executor executor, Fetcher fetcher) {
+        synchronized (lock) {
+            List<ApiService.ApiCallback> waiters = inFlight.get(key);
+            if (waiters != null) {
+                waiters.add(callback);
+                coalesced.incrementAndGet();
+                return;
+            }
+            waiters = new ArrayList<>();
+            waiters.add(callback);
+            inFlight.put(key, waiters);
+        }
+
+        try {
+            executor.execute(() -> {
+                JSONObject result = null;
+                Exception error = null;
+                try {
+                    result = fetcher.fetch();
+                } catch (Exception e) {
+                    Log.e(TAG, errorMessage, e);
+                    error = e;
+                }
+                complete(key, result, error);
+            });
+        } catch (RuntimeException e) {
+            // 线程池已关闭或拒绝任务：不清掉 key 的话之后同样的请求会永远挂在这里
+            Log.e(TAG, errorMessage, e);
+            complete(key, null, e);
+        }
+    }
+
+    private void complete(String key, JSONObject result, Exception error) {
+        List<ApiService.ApiCallback> waiters;
+        synchronized (lock) {
+            waiters = inFlight.remove(key);
+        }
+        for (ApiService.ApiCallback waiter : waiters) {
+            if (error == null) {
+                waiter.onSuccess(result);
+            } else {
+                waiter.onError(error.getMessage());
+            }
+        }
+    }
+
+    // 被合并掉（没有单独发请求）的调用次数
+    long getCoalescedCount() {
+        return coalesced.get();
+    }
+}
@@ -0,0 +1,29 @@
+package com.potatochat.mobile.services;
+
+// API 调用返回的取消句柄；取消后排队中的请求不再执行，进行中的请求不再回调
+public class RequestHandle {
+    private volatile boolean cancelled;
+    private volatile Runnable onCancel;
+
+    public void cancel() {
+        if (cancelled) {
+            return;
+        }
+        cancelled = true;
+        Runnable action = onCancel;
+        if (action != null) {
+            action.run();
+        }
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    void setOnCancel(Runnable onCancel) {
+        this.onCancel = onCancel;
+        if (cancelled) {
+            onCancel.run();
+        }
+    }
+}
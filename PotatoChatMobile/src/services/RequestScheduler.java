@@ -0,0 +1,244 @@
+package com.potatochat.mobile.services;
+
+import android.util.Log;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 按优先级调度 API 请求：交易下单 > 交互读取 > 预取
+// 同时限制总并发、每个 host 的并发以及预取的并发，排队中的请求可以取消
+public class RequestScheduler {
+    private static final String TAG = "RequestScheduler";
+
+    public enum Priority {
+        TRADING,
+        INTERACTIVE,
+        PREFETCH
+    }
+
+    private static final class Task {
+        final Priority priority;
+        final String host;
+        final RequestHandle handle;
+        final Runnable work;
+        final long enqueuedAtNanos = System.nanoTime();
+
+        Task(Priority priority, String host, RequestHandle handle, Runnable work) {
+            this.priority = priority;
+            this.host = host;
+            this.handle = handle;
+            this.work = work;
+        }
+    }
+
+    // 每个优先级的排队等待和执行耗时统计
+    public static final class ClassStats {
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong cancelled = new AtomicLong();
+        final AtomicLong totalQueueWaitNanos = new AtomicLong();
+        final AtomicLong maxQueueWaitNanos = new AtomicLong();
+        final AtomicLong totalExecNanos = new AtomicLong();
+        final AtomicLong maxExecNanos = new AtomicLong();
+
+        public long getCompletedCount() {
+            return completed.get();
+        }
+
+        public long getCancelledCount() {
+            return cancelled.get();
+        }
+
+        public long getAverageQueueWaitMs() {
+            long count = completed.get();
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalQueueWaitNanos.get() / count);
+        }
+
+        public long getMaxQueueWaitMs() {
+            return TimeUnit.NANOSECONDS.toMillis(maxQueueWaitNanos.get());
+        }
+
+        public long getAverageExecMs() {
+            long count = completed.get();
+            return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalExecNanos.get() / count);
+        }
+
+        public long getMaxExecMs() {
+            return TimeUnit.NANOSECONDS.toMillis(maxExecNanos.get());
+        }
+    }
+
+    private final ExecutorService workers;
+    private final int maxConcurrency;
+    private final int maxPerHost;
+    private final int maxPrefetch;
+
+    private final Object lock = new Object();
+    private final ArrayDeque<Task>[] queues;
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private final int[] runningPerPriority = new int[Priority.values().length];
+    private int running;
+    private boolean shutdown;
+    private final ClassStats[] stats = new ClassStats[Priority.values().length];
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public RequestScheduler(int maxConcurrency, int maxPerHost, int maxPrefetch) {
+        this.maxConcurrency = maxConcurrency;
+        this.maxPerHost = maxPerHost;
+        this.maxPrefetch = maxPrefetch;
+        this.queues = new ArrayDeque[Priority.values().length];
+        for (int i = 0; i < queues.length; i++) {
+            queues[i] = new ArrayDeque<>();
+            stats[i] = new ClassStats();
+        }
+        // 线程数由 running 计数限制在 maxConcurrency 以内
+        this.workers = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(runnable, "api-request-" + count.incrementAndGet());
+            }
+        });
+    }
+
+    public RequestHandle submit(Priority priority, String host, Runnable work) {
+        RequestHandle handle = new RequestHandle();
+        submit(priority, host, handle, work);
+        return handle;
+    }
+
+    public void submit(Priority priority, String host, RequestHandle handle, Runnable work) {
+        Task task = new Task(priority, host, handle, work);
+        synchronized (lock) {
+            if (shutdown) {
+                Log.w(TAG, "Scheduler shut down, request dropped");
+                return;
+            }
+            queues[priority.ordinal()].addLast(task);
+        }
+        handle.setOnCancel(() -> {
+            boolean removed;
+            synchronized (lock) {
+                removed = queues[priority.ordinal()].remove(task);
+            }
+            if (removed) {
+                stats[priority.ordinal()].cancelled.incrementAndGet();
+            }
+        });
+        dispatch();
+    }
+
+    public ClassStats getStats(Priority priority) {
+        return stats[priority.ordinal()];
+    }
+
+    public int getQueuedCount(Priority priority) {
+        synchronized (lock) {
+            return queues[priority.ordinal()].size();
+        }
+    }
+
+    // 按优先级从高到低取出可以运行的任务
+    private void dispatch() {
+        synchronized (lock) {
+            for (ArrayDeque<Task> queue : queues) {
+                Iterator<Task> iterator = queue.iterator();
+                while (iterator.hasNext() && running < maxConcurrency) {
+                    Task task = iterator.next();
+                    if (!canRun(task)) {
+                        continue;
+                    }
+                    iterator.remove();
+                    acquire(task);
+                    workers.execute(() -> runTask(task));
+                }
+                if (running >= maxConcurrency) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // 交易请求不受 host 限制，总并发中超出 maxPerHost 的部分留给它
+    private boolean canRun(Task task) {
+        if (task.priority == Priority.TRADING) {
+            return true;
+        }
+        Integer hostRunning = runningPerHost.get(task.host);
+        if (hostRunning != null && hostRunning >= maxPerHost) {
+            return false;
+        }
+        return task.priority != Priority.PREFETCH
+                || runningPerPriority[Priority.PREFETCH.ordinal()] < maxPrefetch;
+    }
+
+    private void acquire(Task task) {
+        running++;
+        runningPerPriority[task.priority.ordinal()]++;
+        Integer hostRunning = runningPerHost.get(task.host);
+        runningPerHost.put(task.host, hostRunning == null ? 1 : hostRunning + 1);
+    }
+
+    private void release(Task task) {
+        running--;
+        runningPerPriority[task.priority.ordinal()]--;
+        Integer hostRunning = runningPerHost.get(task.host);
+        if (hostRunning == null || hostRunning <= 1) {
+            runningPerHost.remove(task.host);
+        } else {
+            runningPerHost.put(task.host, hostRunning - 1);
+        }
+    }
+
+    private void runTask(Task task) {
+        ClassStats classStats = stats[task.priority.ordinal()];
+        long startNanos = System.nanoTime();
+        try {
+            if (task.handle.isCancelled()) {
+                classStats.cancelled.incrementAndGet();
+                return;
+            }
+            long wait = startNanos - task.enqueuedAtNanos;
+            classStats.totalQueueWaitNanos.addAndGet(wait);
+            updateMax(classStats.maxQueueWaitNanos, wait);
+            task.work.run();
+            long exec = System.nanoTime() - startNanos;
+            classStats.totalExecNanos.addAndGet(exec);
+            updateMax(classStats.maxExecNanos, exec);
+            classStats.completed.incrementAndGet();
+        } catch (Exception e) {
+            Log.e(TAG, "Request task failed", e);
+        } finally {
+            synchronized (lock) {
+                release(task);
+            }
+            dispatch();
+        }
+    }
+
+    private static void updateMax(AtomicLong max, long value) {
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            for (ArrayDeque<Task> queue : queues) {
+                queue.clear();
+            }
+        }
+        workers.shutdown();
+    }
+}
@@ -0,0 +1,319 @@
+package com.potatochat.mobile.services;
+
+import android.util.Log;
+import android.util.LruCache;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 内存 + 磁盘两级响应缓存，按接口前缀配置有效期，支持 ETag / Last-Modified 条件请求
+public class ResponseCache {
+    private static final String TAG = "ResponseCache";
+    private static final int DISK_FORMAT_VERSION = 1;
+
+    public static class Policy {
+        final long ttlMs;
+        final long staleWhileRevalidateMs;
+
+        public Policy(long ttlMs, long staleWhileRevalidateMs) {
+            this.ttlMs = ttlMs;
+            this.staleWhileRevalidateMs = staleWhileRevalidateMs;
+        }
+    }
+
+    public static class Entry {
+        final byte[] body;
+        final String contentType;
+        final String etag;
+        final String lastModified;
+        final long storedAt;
+
+        Entry(byte[] body, String contentType, String etag, String lastModified, long storedAt) {
+            this.body = body;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.storedAt = storedAt;
+        }
+
+        Entry refreshed(long now) {
+            return new Entry(body, contentType, etag, lastModified, now);
+        }
+
+        boolean isFresh(Policy policy, long now) {
+            return now - storedAt < policy.ttlMs;
+        }
+
+        // 已过期但仍可先返回旧数据、后台刷新
+        boolean isServableStale(Policy policy, long now) {
+            return now - storedAt < policy.ttlMs + policy.staleWhileRevalidateMs;
+        }
+    }
+
+    private final Map<String, Policy> policies = new ConcurrentHashMap<>();
+    private final LruCache<String, Entry> memory;
+    private final File diskDir;
+    private final long maxDiskBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong staleHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+
+    public ResponseCache(File diskDir, int maxMemoryBytes, long maxDiskBytes) {
+        this.diskDir = diskDir;
+        this.maxDiskBytes = maxDiskBytes;
+        this.memory = new LruCache<String, Entry>(maxMemoryBytes) {
+            @Override
+            protected int sizeOf(String key, Entry value) {
+                return value.body.length;
+            }
+        };
+        if (!diskDir.exists() && !diskDir.mkdirs()) {
+            Log.w(TAG, "Failed to create cache dir " + diskDir);
+        }
+    }
+
+    // 以 endpointPrefix 开头的 GET 请求走缓存
+    public void setPolicy(String endpointPrefix, long ttlMs, long staleWhileRevalidateMs) {
+        policies.put(endpointPrefix, new Policy(ttlMs, staleWhileRevalidateMs));
+    }
+
+    public Policy policyFor(String endpoint) {
+        Policy match = null;
+        int matchLength = -1;
+        for (Map.Entry<String, Policy> entry : policies.entrySet()) {
+            String prefix = entry.getKey();
+            if (endpoint.startsWith(prefix) && prefix.length() > matchLength) {
+                match = entry.getValue();
+                matchLength = prefix.length();
+            }
+        }
+        return match;
+    }
+
+    public Entry get(String key) {
+        Entry entry = memory.get(key);
+        if (entry == null) {
+            entry = readFromDisk(key);
+            if (entry != null) {
+                memory.put(key, entry);
+            }
+        }
+        return entry;
+    }
+
+    public Entry put(String key, byte[] body, String contentType, String etag, String lastModified) {
+        Entry entry = new Entry(body, contentType, etag, lastModified, System.currentTimeMillis());
+        store(key, entry);
+        return entry;
+    }
+
+    // 304：内容没变，只刷新存储时间
+    public Entry markNotModified(String key, Entry entry) {
+        notModified.incrementAndGet();
+        Entry refreshed = entry.refreshed(System.currentTimeMillis());
+        store(key, refreshed);
+        return refreshed;
+    }
+
+    public void remove(String key) {
+        memory.remove(key);
+        File file = fileFor(key);
+        if (file.exists() && !file.delete()) {
+            Log.w(TAG, "Failed to delete cache file " + file);
+        }
+    }
+
+    public void removeByPrefix(String prefix) {
+        for (String key : memory.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                memory.remove(key);
+            }
+        }
+        // 磁盘文件名是 key 的哈希，需要读出文件头里的 key 再比较
+        File[] files = diskDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            String key = null;
+            try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+                if (in.readInt() == DISK_FORMAT_VERSION) {
+                    key = in.readUTF();
+                }
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to read cache key", e);
+            }
+            if (key == null || key.startsWith(prefix)) {
+                file.delete();
+            }
+        }
+    }
+
+    public void clear() {
+        memory.evictAll();
+        File[] files = diskDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    void recordHit() {
+        hits.incrementAndGet();
+    }
+
+    void recordStaleHit() {
+        staleHits.incrementAndGet();
+    }
+
+    void recordMiss() {
+        misses.incrementAndGet();
+    }
+
+    void recordRevalidation() {
+        revalidations.incrementAndGet();
+    }
+
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    public long getStaleHitCount() {
+        return staleHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getRevalidationCount() {
+        return revalidations.get();
+    }
+
+    public long getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    private void store(String key, Entry entry) {
+        memory.put(key, entry);
+        writeToDisk(key, entry);
+    }
+
+    private Entry readFromDisk(String key) {
+        File file = fileFor(key);
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() != DISK_FORMAT_VERSION || !key.equals(in.readUTF())) {
+                return null;
+            }
+            long storedAt = in.readLong();
+            String contentType = readNullable(in);
+            String etag = readNullable(in);
+            String lastModified = readNullable(in);
+            byte[] body = new byte[in.readInt()];
+            in.readFully(body);
+            // 更新修改时间，作为磁盘 LRU 淘汰依据
+            file.setLastModified(System.currentTimeMillis());
+            return new Entry(body, contentType, etag, lastModified, storedAt);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to read cache entry", e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeToDisk(String key, Entry entry) {
+        File file = fileFor(key);
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(file))) {
+            out.writeInt(DISK_FORMAT_VERSION);
+            out.writeUTF(key);
+            out.writeLong(entry.storedAt);
+            writeNullable(out, entry.contentType);
+            writeNullable(out, entry.etag);
+            writeNullable(out, entry.lastModified);
+            out.writeInt(entry.body.length);
+            out.write(entry.body);
+        } catch (IOException e) {
+            Log.w(TAG, "Failed to write cache entry", e);
+            file.delete();
+            return;
+        }
+        trimDisk();
+    }
+
+    // 超过磁盘上限时按最近使用时间淘汰
+    private synchronized void trimDisk() {
+        File[] files = diskDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= maxDiskBytes) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+        for (File file : files) {
+            if (total <= maxDiskBytes) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private File fileFor(String key) {
+        return new File(diskDir, hash(key));
+    }
+
+    private static String hash(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            byte[] bytes = digest.digest(key.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(bytes.length * 2);
+            for (byte b : bytes) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16));
+                hex.append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (Exception e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+}
@@ -0,0 +1,288 @@
+package com.potatochat.mobile.services;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Log;
+import com.potatochat.mobile.metrics.Counter;
+import com.potatochat.mobile.metrics.MetricsRegistry;
+import com.potatochat.mobile.utils.SharedScheduler;
+import com.potatochat.mobile.utils.WebSocketManager;
+import org.json.JSONObject;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// 认证令牌：启动时从 SharedPreferences 读一次，之后只读内存
+// 到期前在后台主动刷新；请求收到 401 时，并发的请求排队等待同一次刷新，刷新后由 ApiService 重放
+// WebSocket 重连时也从这里取令牌
+public class TokenManager implements WebSocketManager.TokenProvider {
+    private static final String TAG = "TokenManager";
+    private static final String PREFS = "auth";
+    private static final String KEY_ACCESS = "access_token";
+    private static final String KEY_REFRESH = "refresh_token";
+    private static final String KEY_EXPIRES_AT = "expires_at";
+    private static final String KEY_USER_ID = "user_id";
+    // 提前一分钟刷新；失败后 30 秒重试
+    private static final long REFRESH_MARGIN_MS = 60_000;
+    private static final long RETRY_DELAY_MS = 30_000;
+    private static TokenManager instance;
+
+    // 令牌变化时回调，退出登录或刷新令牌失效时 accessToken 为 null
+    public interface Listener {
+        void onTokenChanged(String accessToken);
+    }
+
+    // 用 refreshToken 换取新令牌，由 ApiService 实现
+    interface Refresher {
+        Tokens refresh(String refreshToken) throws Exception;
+    }
+
+    static final class Tokens {
+        final String accessToken;
+        final String refreshToken;
+        // 0 表示未知
+        final long expiresAt;
+
+        Tokens(String accessToken, String refreshToken, long expiresAt) {
+            this.accessToken = accessToken;
+            this.refreshToken = refreshToken;
+            this.expiresAt = expiresAt;
+        }
+
+        // 识别 {"accessToken" | "token", "refreshToken", "expiresIn"（秒）}，外层可以包一层 data
+        static Tokens fromResponse(JSONObject response, String previousRefreshToken) {
+            JSONObject data = response.optJSONObject("data");
+            if (data == null) {
+                data = response;
+            }
+            String access = data.optString("accessToken", data.optString("token", null));
+            if (access == null || access.isEmpty()) {
+                return null;
+            }
+            String refresh = data.optString("refreshToken", previousRefreshToken);
+            long expiresIn = data.optLong("expiresIn", 0);
+            return new Tokens(access, refresh,
+                    expiresIn > 0 ? System.currentTimeMillis() + expiresIn * 1000 : 0);
+        }
+    }
+
+    private final SharedPreferences prefs;
+    private final Object refreshLock = new Object();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Counter refreshes = MetricsRegistry.get().counter("auth.refreshes");
+    private final Counter refreshFailures = MetricsRegistry.get().counter("auth.refresh_failures");
+    private volatile Tokens tokens;
+    private volatile String userId;
+    private volatile Refresher refresher;
+    private volatile Executor refreshExecutor;
+    private ScheduledFuture<?> proactiveRefresh;
+
+    private TokenManager(Context context) {
+        this.prefs = context.getSharedPreferences(PREFS, Context.MODE_PRIVATE);
+        String access = prefs.getString(KEY_ACCESS, null);
+        if (access != null && !access.isEmpty()) {
+            tokens = new Tokens(access, prefs.getString(KEY_REFRESH, null), prefs.getLong(KEY_EXPIRES_AT, 0));
+            userId = prefs.getString(KEY_USER_ID, null);
+        }
+    }
+
+    public static synchronized TokenManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new TokenManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    synchronized void setRefresher(Refresher refresher, Executor refreshExecutor) {
+        this.refresher = refresher;
+        this.refreshExecutor = refreshExecutor;
+        scheduleProactiveRefresh(tokens);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public String getAccessToken() {
+        Tokens current = tokens;
+        return current != null ? current.accessToken : null;
+    }
+
+    public boolean hasToken() {
+        return tokens != null;
+    }
+
+    // 登录用户的 id，启动预取首屏数据时使用；未登录或登录响应中没有时为 null
+    public String getUserId() {
+        return userId;
+    }
+
+    // expiresInSeconds 为 0 表示未知，不做主动刷新，只在 401 时刷新
+    public void setTokens(String accessToken, String refreshToken, long expiresInSeconds) {
+        if (accessToken == null || accessToken.isEmpty()) {
+            clear();
+            return;
+        }
+        update(new Tokens(accessToken, refreshToken,
+                expiresInSeconds > 0 ? System.currentTimeMillis() + expiresInSeconds * 1000 : 0));
+    }
+
+    // 登录或刷新接口的响应中带有令牌时保存
+    void updateFrom(JSONObject response) {
+        // 登录响应中的 {"user": {"id"}} 或 "userId"，外层可以包一层 data
+        // 先于令牌保存，监听器收到新令牌时 getUserId 已经是新用户
+        JSONObject data = response.optJSONObject("data");
+        if (data == null) {
+            data = response;
+        }
+        JSONObject user = data.optJSONObject("user");
+        String id = user != null ? user.optString("id", null) : data.optString("userId", null);
+        if (id != null && !id.isEmpty()) {
+            userId = id;
+            prefs.edit().putString(KEY_USER_ID, id).apply();
+        }
+        Tokens current = tokens;
+        Tokens fresh = Tokens.fromResponse(response, current != null ? current.refreshToken : null);
+        if (fresh != null) {
+            update(fresh);
+        }
+    }
+
+    public void clear() {
+        synchronized (this) {
+            tokens = null;
+            userId = null;
+            cancelProactiveRefresh();
+        }
+        prefs.edit().remove(KEY_ACCESS).remove(KEY_REFRESH).remove(KEY_EXPIRES_AT).remove(KEY_USER_ID).apply();
+        notifyChanged(null);
+    }
+
+    private void update(Tokens fresh) {
+        synchronized (this) {
+            tokens = fresh;
+            scheduleProactiveRefresh(fresh);
+        }
+        prefs.edit()
+                .putString(KEY_ACCESS, fresh.accessToken)
+                .putString(KEY_REFRESH, fresh.refreshToken)
+                .putLong(KEY_EXPIRES_AT, fresh.expiresAt)
+                .apply();
+        notifyChanged(fresh.accessToken);
+    }
+
+    // 请求带着 rejectedToken 收到 401 后调用，在请求线程上阻塞
+    // 同一时刻只有一个刷新请求；排队的调用者发现令牌已经换过就直接返回新令牌
+    // 返回 null 表示无法刷新，需要重新登录
+    String refreshAfterUnauthorized(String rejectedToken) {
+        if (rejectedToken == null) {
+            return null;
+        }
+        synchronized (refreshLock) {
+            Tokens current = tokens;
+            if (current == null) {
+                return null;
+            }
+            if (!current.accessToken.equals(rejectedToken)) {
+                return current.accessToken;
+            }
+            return refreshLocked(current);
+        }
+    }
+
+    // WebSocket 握手因令牌被拒绝，后台刷新；成功后监听器会触发重连
+    @Override
+    public void onTokenRejected(String rejectedToken) {
+        Executor executor = refreshExecutor;
+        if (executor != null) {
+            executor.execute(() -> refreshAfterUnauthorized(rejectedToken));
+        }
+    }
+
+    private String refreshLocked(Tokens current) {
+        Refresher r = refresher;
+        if (r == null || current.refreshToken == null) {
+            return null;
+        }
+        try {
+            Tokens fresh = r.refresh(current.refreshToken);
+            refreshes.inc();
+            update(fresh);
+            return fresh.accessToken;
+        } catch (Exception e) {
+            refreshFailures.inc();
+            String message = e.getMessage();
+            // 刷新令牌本身被拒绝，会话已经结束；408、429 等其他 4xx 是暂时的，保留令牌等待重试
+            if (isRefreshRejected(message)) {
+                Log.w(TAG, "Refresh token rejected: " + message);
+                clear();
+            } else {
+                Log.w(TAG, "Token refresh failed", e);
+            }
+            return null;
+        }
+    }
+
+    private static boolean isRefreshRejected(String message) {
+        return message != null && (message.startsWith("HTTP 400:") || message.startsWith("HTTP 401:")
+                || message.startsWith("HTTP 403:"));
+    }
+
+    private void scheduleProactiveRefresh(Tokens scheduled) {
+        cancelProactiveRefresh();
+        if (scheduled == null || scheduled.expiresAt <= 0 || scheduled.refreshToken == null || refresher == null) {
+            return;
+        }
+        long delay = Math.max(0, scheduled.expiresAt - REFRESH_MARGIN_MS - System.currentTimeMillis());
+        scheduleRefresh(scheduled, delay);
+    }
+
+    private synchronized void scheduleRefresh(Tokens scheduled, long delayMs) {
+        proactiveRefresh = SharedScheduler.get().schedule(() -> {
+            Executor executor = refreshExecutor;
+            if (executor != null) {
+                executor.execute(() -> proactiveRefresh(scheduled));
+            }
+        }, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void proactiveRefresh(Tokens scheduled) {
+        synchronized (refreshLock) {
+            // 期间已经因为 401 刷新过或已退出登录
+            if (tokens != scheduled) {
+                return;
+            }
+            if (refreshLocked(scheduled) == null && tokens == scheduled
+                    && System.currentTimeMillis() < scheduled.expiresAt) {
+                scheduleRefresh(scheduled, RETRY_DELAY_MS);
+            }
+        }
+    }
+
+    private synchronized void cancelProactiveRefresh() {
+        if (proactiveRefresh != null) {
+            proactiveRefresh.cancel(false);
+            proactiveRefresh = null;
+        }
+    }
+
+    private void notifyChanged(String accessToken) {
+        for (Listener listener : listeners) {
+            listener.onTokenChanged(accessToken);
+        }
+    }
+
+    public long getRefreshCount() {
+        return refreshes.get();
+    }
+
+    public long getRefreshFailureCount() {
+        return refreshFailures.get();
+    }
+}
@@ -0,0 +1,287 @@
+package com.potatochat.mobile.storage;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.util.Log;
+import com.potatochat.mobile.models.ChatMessage;
+import com.potatochat.mobile.models.OutboxMessage;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+// 本地消息存储，按 (roomId, messageId) 去重；增量同步从每个聊天室的同步游标开始
+public class ChatMessageStore extends SQLiteOpenHelper {
+    private static final String TAG = "ChatMessageStore";
+    private static final String DB_NAME = "potato_chat.db";
+    private static final int DB_VERSION = 3;
+    private static final String TABLE_MESSAGES = "messages";
+    private static final String TABLE_OUTBOX = "outbox";
+    private static final String TABLE_ROOM_SYNC = "room_sync";
+    private static ChatMessageStore instance;
+
+    // 写操作串行化到单独线程，避免阻塞 WebSocket 和 UI 线程
+    private final ExecutorService writeExecutor = Executors.newSingleThreadExecutor();
+
+    private ChatMessageStore(Context context) {
+        super(context, DB_NAME, null, DB_VERSION);
+    }
+
+    public static synchronized ChatMessageStore getInstance(Context context) {
+        if (instance == null) {
+            instance = new ChatMessageStore(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    @Override
+    public void onCreate(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_MESSAGES + " ("
+                + "room_id TEXT NOT NULL, "
+                + "id TEXT NOT NULL, "
+                + "sender_id TEXT, "
+                + "sender_name TEXT, "
+                + "content TEXT, "
+                + "type TEXT, "
+                + "timestamp INTEGER NOT NULL, "
+                + "PRIMARY KEY (room_id, id))");
+        db.execSQL("CREATE INDEX idx_messages_room_time ON " + TABLE_MESSAGES + " (room_id, timestamp)");
+        createOutbox(db);
+        createRoomSync(db);
+    }
+
+    // 同步游标：REST 同步确认过的最新一条消息。WebSocket 推送只写 messages，不推进游标，
+    // 否则断线期间漏掉的消息会被跳过
+    private static void createRoomSync(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_ROOM_SYNC + " ("
+                + "room_id TEXT PRIMARY KEY, "
+                + "message_id TEXT NOT NULL, "
+                + "timestamp INTEGER NOT NULL)");
+    }
+
+    // 发件箱：seq 自增，同一聊天室按 seq 顺序发送
+    private static void createOutbox(SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE " + TABLE_OUTBOX + " ("
+                + "seq INTEGER PRIMARY KEY AUTOINCREMENT, "
+                + "client_message_id TEXT NOT NULL UNIQUE, "
+                + "room_id TEXT NOT NULL, "
+                + "content TEXT, "
+                + "type TEXT, "
+                + "created_at INTEGER NOT NULL, "
+                + "attempts INTEGER NOT NULL DEFAULT 0, "
+                + "next_attempt_at INTEGER NOT NULL DEFAULT 0)");
+        db.execSQL("CREATE INDEX idx_outbox_room_seq ON " + TABLE_OUTBOX + " (room_id, seq)");
+    }
+
+    @Override
+    public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // 发件箱里是尚未发出的消息，升级时不能丢
+        if (oldVersion < 2) {
+            createOutbox(db);
+        }
+        // 旧版本没有游标，打开聊天室时会重新拉取最新一页
+        if (oldVersion < 3) {
+            createRoomSync(db);
+        }
+    }
+
+    public void insert(ChatMessage message) {
+        if (message.getId() == null || message.getRoomId() == null) {
+            return;
+        }
+        getWritableDatabase().insertWithOnConflict(TABLE_MESSAGES, null, toValues(message),
+                SQLiteDatabase.CONFLICT_REPLACE);
+    }
+
+    public void insertAll(List<ChatMessage> messages) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            for (ChatMessage message : messages) {
+                if (message.getId() == null || message.getRoomId() == null) {
+                    continue;
+                }
+                db.insertWithOnConflict(TABLE_MESSAGES, null, toValues(message),
+                        SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // 写入一页 REST 同步结果，并在同一事务里把游标推进到 newest；游标只前进不后退
+    public void insertSynced(String roomId, List<ChatMessage> messages, ChatMessage newest) {
+        SQLiteDatabase db = getWritableDatabase();
+        db.beginTransaction();
+        try {
+            insertAll(messages);
+            if (newest != null && newest.getId() != null) {
+                String timestamp = String.valueOf(newest.getTimestamp());
+                ContentValues values = new ContentValues();
+                values.put("room_id", roomId);
+                values.put("message_id", newest.getId());
+                values.put("timestamp", newest.getTimestamp());
+                int updated = db.update(TABLE_ROOM_SYNC, values,
+                        "room_id = ? AND (timestamp < ? OR (timestamp = ? AND message_id <= ?))",
+                        new String[]{roomId, timestamp, timestamp, newest.getId()});
+                if (updated == 0) {
+                    db.insertWithOnConflict(TABLE_ROOM_SYNC, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    // 最后一次 REST 同步到的消息 id，从未同步过返回 null
+    public String getSyncCursor(String roomId) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_ROOM_SYNC, new String[]{"message_id"},
+                "room_id = ?", new String[]{roomId}, null, null, null)) {
+            return cursor.moveToFirst() ? cursor.getString(0) : null;
+        }
+    }
+
+    public void insertAsync(ChatMessage message) {
+        writeExecutor.execute(() -> {
+            try {
+                insert(message);
+            } catch (Exception e) {
+                Log.e(TAG, "Insert message error", e);
+            }
+        });
+    }
+
+    // 取某个聊天室最近的 limit 条消息，按时间升序返回
+    public List<ChatMessage> getRecentMessages(String roomId, int limit) {
+        List<ChatMessage> messages = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_MESSAGES, null,
+                "room_id = ?", new String[]{roomId}, null, null,
+                "timestamp DESC, id DESC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                messages.add(fromCursor(cursor));
+            }
+        }
+        Collections.reverse(messages);
+        return messages;
+    }
+
+    // 比 before 更早的 limit 条消息，按时间升序返回；离线时向上翻页用
+    public List<ChatMessage> getMessagesBefore(String roomId, ChatMessage before, int limit) {
+        List<ChatMessage> messages = new ArrayList<>();
+        String timestamp = String.valueOf(before.getTimestamp());
+        try (Cursor cursor = getReadableDatabase().query(TABLE_MESSAGES, null,
+                "room_id = ? AND (timestamp < ? OR (timestamp = ? AND id < ?))",
+                new String[]{roomId, timestamp, timestamp, before.getId()}, null, null,
+                "timestamp DESC, id DESC", String.valueOf(limit))) {
+            while (cursor.moveToNext()) {
+                messages.add(fromCursor(cursor));
+            }
+        }
+        Collections.reverse(messages);
+        return messages;
+    }
+
+    // 本地已有的最新一条消息，没有则返回 null；其中可能有 WebSocket 推送的消息，不能当作同步游标
+    public ChatMessage getLatestMessage(String roomId) {
+        try (Cursor cursor = getReadableDatabase().query(TABLE_MESSAGES, null,
+                "room_id = ?", new String[]{roomId}, null, null,
+                "timestamp DESC, id DESC", "1")) {
+            return cursor.moveToFirst() ? fromCursor(cursor) : null;
+        }
+    }
+
+    public void addToOutbox(OutboxMessage message) {
+        ContentValues values = new ContentValues();
+        values.put("client_message_id", message.getClientMessageId());
+        values.put("room_id", message.getRoomId());
+        values.put("content", message.getContent());
+        values.put("type", message.getType());
+        values.put("created_at", message.getCreatedAt());
+        values.put("attempts", message.getAttempts());
+        values.put("next_attempt_at", message.getNextAttemptAt());
+        getWritableDatabase().insertWithOnConflict(TABLE_OUTBOX, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+    }
+
+    // 每个聊天室排在最前面的一条，保证同一聊天室按顺序发送
+    public List<OutboxMessage> getOutboxHeads() {
+        List<OutboxMessage> messages = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT * FROM " + TABLE_OUTBOX
+                + " WHERE seq IN (SELECT MIN(seq) FROM " + TABLE_OUTBOX + " GROUP BY room_id)"
+                + " ORDER BY seq", null)) {
+            while (cursor.moveToNext()) {
+                messages.add(outboxFromCursor(cursor));
+            }
+        }
+        return messages;
+    }
+
+    // 某个聊天室尚未发出的消息，按发送顺序
+    public List<OutboxMessage> getOutbox(String roomId) {
+        List<OutboxMessage> messages = new ArrayList<>();
+        try (Cursor cursor = getReadableDatabase().query(TABLE_OUTBOX, null,
+                "room_id = ?", new String[]{roomId}, null, null, "seq")) {
+            while (cursor.moveToNext()) {
+                messages.add(outboxFromCursor(cursor));
+            }
+        }
+        return messages;
+    }
+
+    public int getOutboxSize() {
+        try (Cursor cursor = getReadableDatabase().rawQuery("SELECT COUNT(*) FROM " + TABLE_OUTBOX, null)) {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        }
+    }
+
+    public void updateOutboxAttempt(String clientMessageId, int attempts, long nextAttemptAt) {
+        ContentValues values = new ContentValues();
+        values.put("attempts", attempts);
+        values.put("next_attempt_at", nextAttemptAt);
+        getWritableDatabase().update(TABLE_OUTBOX, values, "client_message_id = ?",
+                new String[]{clientMessageId});
+    }
+
+    public void removeFromOutbox(String clientMessageId) {
+        getWritableDatabase().delete(TABLE_OUTBOX, "client_message_id = ?", new String[]{clientMessageId});
+    }
+
+    private static OutboxMessage outboxFromCursor(Cursor cursor) {
+        return new OutboxMessage(
+                cursor.getString(cursor.getColumnIndexOrThrow("client_message_id")),
+                cursor.getString(cursor.getColumnIndexOrThrow("room_id")),
+                cursor.getString(cursor.getColumnIndexOrThrow("content")),
+                cursor.getString(cursor.getColumnIndexOrThrow("type")),
+                cursor.getLong(cursor.getColumnIndexOrThrow("created_at")),
+                cursor.getInt(cursor.getColumnIndexOrThrow("attempts")),
+                cursor.getLong(cursor.getColumnIndexOrThrow("next_attempt_at")));
+    }
+
+    private static ContentValues toValues(ChatMessage message) {
+        ContentValues values = new ContentValues();
+        values.put("room_id", message.getRoomId());
+        values.put("id", message.getId());
+        values.put("sender_id", message.getSenderId());
+        values.put("sender_name", message.getSenderName());
+        values.put("content", message.getContent());
+        values.put("type", message.getType());
+        values.put("timestamp", message.getTimestamp());
+        return values;
+    }
+
+    private static ChatMessage fromCursor(Cursor cursor) {
+        return new ChatMessage(
+                cursor.getString(cursor.getColumnIndexOrThrow("id")),
+                cursor.getString(cursor.getColumnIndexOrThrow("room_id")),
+                cursor.getString(cursor.getColumnIndexOrThrow("sender_id")),
+                cursor.getString(cursor.getColumnIndexOrThrow("sender_name")),
+                cursor.getString(cursor.getColumnIndexOrThrow("content")),
+                cursor.getString(cursor.getColumnIndexOrThrow("type")),
+                cursor.getLong(cursor.getColumnIndexOrThrow("timestamp")));
+    }
+}
@@ -0,0 +1,134 @@
+package com.potatochat.mobile.trading;
+
+import java.math.BigInteger;
+
+// 价格和数量统一用 long 表示，保留 8 位小数（1 = 0.00000001）
+// 直接解析十进制字符串，不经过 double，避免舍入误差
+public final class FixedPoint {
+    public static final int DECIMALS = 8;
+    public static final long SCALE = 100_000_000L;
+    // 整数部分的上限，超过后 integer * SCALE 会溢出
+    private static final long MAX_INTEGER = Long.MAX_VALUE / SCALE;
+
+    private FixedPoint() {
+    }
+
+    public static long parse(String value) {
+        int length = value.length();
+        int i = 0;
+        boolean negative = false;
+        if (i < length && (value.charAt(i) == '-' || value.charAt(i) == '+')) {
+            negative = value.charAt(i) == '-';
+            i++;
+        }
+        long integer = 0;
+        long fraction = 0;
+        int fractionDigits = 0;
+        boolean seenDigit = false;
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                integer = integer * 10 + (c - '0');
+                if (integer > MAX_INTEGER) {
+                    throw new NumberFormatException("Decimal out of range: " + value);
+                }
+                seenDigit = true;
+            } else if (c == '.') {
+                i++;
+                break;
+            } else if (c == 'e' || c == 'E') {
+                // 科学计数法少见，退回 double 解析
+                return fromDouble(Double.parseDouble(value));
+            } else {
+                throw new NumberFormatException("Invalid decimal: " + value);
+            }
+        }
+        for (; i < length; i++) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (fractionDigits < DECIMALS) {
+                    fraction = fraction * 10 + (c - '0');
+                    fractionDigits++;
+                }
+                seenDigit = true;
+            } else if (c == 'e' || c == 'E') {
+                return fromDouble(Double.parseDouble(value));
+            } else {
+                throw new NumberFormatException("Invalid decimal: " + value);
+            }
+        }
+        if (!seenDigit) {
+            throw new NumberFormatException("Invalid decimal: " + value);
+        }
+        for (; fractionDigits < DECIMALS; fractionDigits++) {
+            fraction *= 10;
+        }
+        if (fraction > Long.MAX_VALUE - integer * SCALE) {
+            throw new NumberFormatException("Decimal out of range: " + value);
+        }
+        long result = integer * SCALE + fraction;
+        return negative ? -result : result;
+    }
+
+    // JSON 里的数值可能是字符串，也可能是数字
+    public static long parse(Object value) {
+        if (value instanceof String) {
+            return parse((String) value);
+        }
+        if (value instanceof Integer || value instanceof Long) {
+            long integer = ((Number) value).longValue();
+            if (integer > MAX_INTEGER || integer < -MAX_INTEGER) {
+                throw new NumberFormatException("Decimal out of range: " + value);
+            }
+            return integer * SCALE;
+        }
+        if (value instanceof Number) {
+            return parse(value.toString());
+        }
+        throw new NumberFormatException("Not a number: " + value);
+    }
+
+    public static long fromDouble(double value) {
+        return Math.round(value * SCALE);
+    }
+
+    public static double toDouble(long value) {
+        return (double) value / SCALE;
+    }
+
+    // a * b，两个定点数相乘，结果仍为定点数；中间结果溢出时改用 BigInteger
+    public static long multiply(long a, long b) {
+        long product = a * b;
+        if (a == 0 || (product / a == b && !(a == -1 && b == Long.MIN_VALUE))) {
+            return product / SCALE;
+        }
+        return BigInteger.valueOf(a).multiply(BigInteger.valueOf(b))
+                .divide(BigInteger.valueOf(SCALE)).longValue();
+    }
+
+    public static String toString(long value, int decimals) {
+        StringBuilder builder = new StringBuilder(24);
+        append(builder, value, decimals);
+        return builder.toString();
+    }
+
+    // 追加到已有的 StringBuilder，界面刷新时可以复用缓冲区
+    public static void append(StringBuilder builder, long value, int decimals) {
+        if (value < 0) {
+            builder.append('-');
+            value = -value;
+        }
+        builder.append(value / SCALE);
+        if (decimals <= 0) {
+            return;
+        }
+        builder.append('.');
+        long fraction = value % SCALE;
+        long divisor = SCALE / 10;
+        for (int i = 0; i < decimals && i < DECIMALS; i++) {
+            builder.append((char) ('0' + fraction / divisor));
+            fraction %= divisor;
+            divisor /= 10;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package com.potatochat.mobile.trading;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.util.ArrayDeque;
+
+// 单个交易对的订单簿：快照 + 增量深度更新
+// 价格档位存放在有序的 long 数组里（买盘降序、卖盘升序），价格和数量都是 FixedPoint 定点数
+// 增量的序列号不连续时标记为需要重新同步，同步期间收到的增量先缓存，快照到达后再补上
+public class OrderBook {
+    private static final int INITIAL_CAPACITY = 64;
+    private static final int MAX_BUFFERED_UPDATES = 1000;
+
+    public enum Result {
+        APPLIED,
+        STALE,     // 序列号不大于当前序列号，已忽略
+        BUFFERED,  // 正在重新同步，已缓存
+        GAP        // 发现序列号缺口，需要重新拉取快照
+    }
+
+    // 买卖盘的一侧
+    private static final class Side {
+        final boolean descending;
+        long[] prices = new long[INITIAL_CAPACITY];
+        long[] sizes = new long[INITIAL_CAPACITY];
+        int count;
+
+        Side(boolean descending) {
+            this.descending = descending;
+        }
+
+        // 返回下标；不存在时返回 -(插入位置 + 1)
+        int indexOf(long price) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midPrice = prices[mid];
+                if (midPrice == price) {
+                    return mid;
+                }
+                boolean before = descending ? midPrice > price : midPrice < price;
+                if (before) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return -(low + 1);
+        }
+
+        // 数量为 0 表示删除该档位
+        void set(long price, long size) {
+            int index = indexOf(price);
+            if (index >= 0) {
+                if (size == 0) {
+                    System.arraycopy(prices, index + 1, prices, index, count - index - 1);
+                    System.arraycopy(sizes, index + 1, sizes, index, count - index - 1);
+                    count--;
+                } else {
+                    sizes[index] = size;
+                }
+                return;
+            }
+            if (size == 0) {
+                return;
+            }
+            int insertAt = -index - 1;
+            if (count == prices.length) {
+                long[] newPrices = new long[count * 2];
+                long[] newSizes = new long[count * 2];
+                System.arraycopy(prices, 0, newPrices, 0, count);
+                System.arraycopy(sizes, 0, newSizes, 0, count);
+                prices = newPrices;
+                sizes = newSizes;
+            }
+            System.arraycopy(prices, insertAt, prices, insertAt + 1, count - insertAt);
+            System.arraycopy(sizes, insertAt, sizes, insertAt + 1, count - insertAt);
+            prices[insertAt] = price;
+            sizes[insertAt] = size;
+            count++;
+        }
+
+        void clear() {
+            count = 0;
+        }
+
+        int copyTop(int n, long[] pricesOut, long[] sizesOut) {
+            int copied = Math.min(Math.min(n, count), Math.min(pricesOut.length, sizesOut.length));
+            System.arraycopy(prices, 0, pricesOut, 0, copied);
+            System.arraycopy(sizes, 0, sizesOut, 0, copied);
+            return copied;
+        }
+    }
+
+    private final String symbol;
+    private final Side bids = new Side(true);
+    private final Side asks = new Side(false);
+    private final ArrayDeque<JSONObject> buffered = new ArrayDeque<>();
+    private long sequence = -1;
+    private boolean resyncing = true;
+    private long version;
+
+    // 统计
+    private long appliedUpdates;
+    private long gaps;
+    private long snapshots;
+    private long droppedUpdates;
+
+    public OrderBook(String symbol) {
+        this.symbol = symbol;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    // 快照格式：{"seq": 123, "bids": [[price, size], ...], "asks": [[price, size], ...]}
+    public synchronized void applySnapshot(JSONObject snapshot) throws JSONException {
+        bids.clear();
+        asks.clear();
+        applyLevels(bids, snapshot.optJSONArray("bids"));
+        applyLevels(asks, snapshot.optJSONArray("asks"));
+        sequence = snapshot.getLong("seq");
+        resyncing = false;
+        snapshots++;
+        version++;
+
+        // 补上同步期间缓存的增量；其中再次出现缺口时保持 resyncing，由调用方重新拉取
+        while (!buffered.isEmpty() && !resyncing) {
+            applyUpdateLocked(buffered.pollFirst());
+        }
+    }
+
+    // 增量格式：{"seq": 124, "bids": [[price, size], ...], "asks": [...]}，数量为 0 表示删除该档
+    public synchronized Result applyUpdate(JSONObject update) throws JSONException {
+        if (resyncing) {
+            if (buffered.size() >= MAX_BUFFERED_UPDATES) {
+                buffered.pollFirst();
+                droppedUpdates++;
+            }
+            buffered.addLast(update);
+            return Result.BUFFERED;
+        }
+        return applyUpdateLocked(update);
+    }
+
+    private Result applyUpdateLocked(JSONObject update) throws JSONException {
+        long seq = update.getLong("seq");
+        if (seq <= sequence) {
+            return Result.STALE;
+        }
+        if (seq != sequence + 1) {
+            gaps++;
+            resyncing = true;
+            buffered.addFirst(update);
+            return Result.GAP;
+        }
+        applyLevels(bids, update.optJSONArray("bids"));
+        applyLevels(asks, update.optJSONArray("asks"));
+        sequence = seq;
+        appliedUpdates++;
+        version++;
+        return Result.APPLIED;
+    }
+
+    private static void applyLevels(Side side, JSONArray levels) throws JSONException {
+        if (levels == null) {
+            return;
+        }
+        for (int i = 0; i < levels.length(); i++) {
+            JSONArray level = levels.getJSONArray(i);
+            side.set(FixedPoint.parse(level.get(0)), FixedPoint.parse(level.get(1)));
+        }
+    }
+
+    // 需要重新同步时调用，丢弃当前状态直到新快照到达
+    public synchronized void invalidate() {
+        resyncing = true;
+    }
+
+    public synchronized boolean isResyncing() {
+        return resyncing;
+    }
+
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    // 每次变化递增，界面可以据此跳过没有变化的刷新
+    public synchronized long getVersion() {
+        return version;
+    }
+
+    // 把买盘前 n 档复制到调用方提供的数组里，返回实际档数；不分配内存
+    public synchronized int copyBids(int n, long[] pricesOut, long[] sizesOut) {
+        return bids.copyTop(n, pricesOut, sizesOut);
+    }
+
+    public synchronized int copyAsks(int n, long[] pricesOut, long[] sizesOut) {
+        return asks.copyTop(n, pricesOut, sizesOut);
+    }
+
+    // 没有报价时返回 0
+    public synchronized long getBestBid() {
+        return bids.count > 0 ? bids.prices[0] : 0;
+    }
+
+    public synchronized long getBestAsk() {
+        return asks.count > 0 ? asks.prices[0] : 0;
+    }
+
+    public synchronized int getBidDepth() {
+        return bids.count;
+    }
+
+    public synchronized int getAskDepth() {
+        return asks.count;
+    }
+
+    public synchronized long getAppliedUpdateCount() {
+        return appliedUpdates;
+    }
+
+    public synchronized long getGapCount() {
+        return gaps;
+    }
+
+    public synchronized long getSnapshotCount() {
+        return snapshots;
+    }
+
+    public synchronized long getDroppedUpdateCount() {
+        return droppedUpdates;
+    }
+}
@@ -0,0 +1,194 @@
+package com.potatochat.mobile.trading;
+
+import android.content.Context;
+import android.util.Log;
+import com.potatochat.mobile.services.ApiService;
+import com.potatochat.mobile.utils.Backoff;
+import com.potatochat.mobile.utils.MainThreadDispatcher;
+import com.potatochat.mobile.utils.SharedScheduler;
+import com.potatochat.mobile.utils.SubscriptionIndex;
+import com.potatochat.mobile.utils.WebSocketManager;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 维护被关注交易对的订单簿
+// 深度帧是带 seq 的 trading_update：{"symbol", "seq", "depth": "snapshot" | "update", "bids", "asks"}
+// 序列号出现缺口时通过 getMarketData 拉取快照重新同步
+public class OrderBookManager {
+    private static final String TAG = "OrderBookManager";
+    private static final String MARKET_STREAM_PREFIX = "market:";
+    private static OrderBookManager instance;
+
+    // 在主线程回调，同一帧内同一订单簿的多次变化只回调一次
+    public interface Listener {
+        void onOrderBookChanged(OrderBook book);
+    }
+
+    private static final class Entry {
+        final OrderBook book;
+        final AtomicBoolean snapshotPending = new AtomicBoolean(false);
+        final AtomicBoolean notifyPending = new AtomicBoolean(false);
+        SubscriptionIndex.Subscription subscription;
+        int watchers;
+        volatile int resyncAttempts;
+
+        Entry(String symbol) {
+            this.book = new OrderBook(symbol);
+        }
+    }
+
+    private final ApiService apiService;
+    private final WebSocketManager webSocketManager;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Backoff resyncBackoff = new Backoff(500, 30000);
+    private final MainThreadDispatcher mainThread = MainThreadDispatcher.get();
+
+    private OrderBookManager(Context context) {
+        this.apiService = ApiService.getInstance(context);
+        this.webSocketManager = WebSocketManager.getInstance();
+        // 断线期间的深度更新无法续传时，丢弃本地订单簿重新拉快照
+        webSocketManager.getStreamResume().addResetListener(MARKET_STREAM_PREFIX, stream -> {
+            Entry entry = entries.get(stream.substring(MARKET_STREAM_PREFIX.length()));
+            if (entry != null) {
+                entry.book.invalidate();
+                requestSnapshot(entry);
+                notifyChanged(entry);
+            }
+        });
+    }
+
+    public static synchronized OrderBookManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new OrderBookManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // 关注计数，最后一个关注者取消后停止维护
+    public synchronized OrderBook watch(String symbol) {
+        Entry entry = entries.get(symbol);
+        if (entry == null) {
+            Entry created = new Entry(symbol);
+            created.subscription = webSocketManager.subscribe("trading_update", symbol,
+                    message -> onFrame(created, message));
+            entries.put(symbol, created);
+            webSocketManager.subscribePriceUpdates(new String[]{symbol});
+            requestSnapshot(created);
+            entry = created;
+        }
+        entry.watchers++;
+        return entry.book;
+    }
+
+    public synchronized void unwatch(String symbol) {
+        Entry entry = entries.get(symbol);
+        if (entry == null || --entry.watchers > 0) {
+            return;
+        }
+        entries.remove(symbol);
+        entry.subscription.unsubscribe();
+    }
+
+    public OrderBook getOrderBook(String symbol) {
+        Entry entry = entries.get(symbol);
+        return entry != null ? entry.book : null;
+    }
+
+    private void onFrame(Entry entry, JSONObject message) {
+        JSONObject data = message.optJSONObject("data");
+        if (data == null) {
+            data = message;
+        }
+        // 成交价由 MarketDataPipeline 处理，不会分发到这里；其他不带 seq 的帧不是深度
+        if (!data.has("seq")) {
+            return;
+        }
+        OrderBook book = entry.book;
+        try {
+            if ("snapshot".equals(data.optString("depth"))) {
+                book.applySnapshot(data);
+                if (book.isResyncing()) {
+                    requestSnapshot(entry);
+                }
+            } else if (book.applyUpdate(data) == OrderBook.Result.GAP) {
+                requestSnapshot(entry);
+            }
+        } catch (JSONException e) {
+            Log.w(TAG, "Invalid depth frame for " + book.getSymbol(), e);
+            book.invalidate();
+            requestSnapshot(entry);
+        }
+        notifyChanged(entry);
+    }
+
+    private void requestSnapshot(Entry entry) {
+        if (!entry.snapshotPending.compareAndSet(false, true)) {
+            return;
+        }
+        OrderBook book = entry.book;
+        apiService.getMarketData(book.getSymbol(), new ApiService.ApiCallback() {
+            @Override
+            public void onSuccess(JSONObject response) {
+                entry.snapshotPending.set(false);
+                JSONObject data = response.optJSONObject("data");
+                try {
+                    book.applySnapshot(data != null ? data : response);
+                } catch (JSONException e) {
+                    Log.w(TAG, "Invalid snapshot for " + book.getSymbol(), e);
+                    book.invalidate();
+                }
+                if (book.isResyncing()) {
+                    scheduleResync(entry);
+                } else {
+                    entry.resyncAttempts = 0;
+                }
+                notifyChanged(entry);
+            }
+
+            @Override
+            public void onError(String error) {
+                entry.snapshotPending.set(false);
+                Log.w(TAG, "Snapshot failed for " + book.getSymbol() + ": " + error);
+                scheduleResync(entry);
+            }
+        });
+    }
+
+    private void scheduleResync(Entry entry) {
+        if (entries.get(entry.book.getSymbol()) != entry) {
+            return;
+        }
+        long delay = resyncBackoff.delayFor(entry.resyncAttempts++);
+        SharedScheduler.get().schedule(() -> {
+            if (entries.get(entry.book.getSymbol()) == entry) {
+                requestSnapshot(entry);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void notifyChanged(Entry entry) {
+        if (listeners.isEmpty() || !entry.notifyPending.compareAndSet(false, true)) {
+            return;
+        }
+        mainThread.execute(() -> {
+            entry.notifyPending.set(false);
+            for (Listener listener : listeners) {
+                listener.onOrderBookChanged(entry.book);
+            }
+        });
+    }
+}
@@ -0,0 +1,264 @@
+package com.potatochat.mobile.trading;
+
+import android.content.Context;
+import android.util.Log;
+import com.potatochat.mobile.services.ApiService;
+import com.potatochat.mobile.utils.MainThreadDispatcher;
+import com.potatochat.mobile.utils.SharedScheduler;
+import com.potatochat.mobile.utils.SubscriptionIndex;
+import com.potatochat.mobile.utils.WebSocketManager;
+import org.json.JSONObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 统一的下单入口
+// 每笔订单生成 clientOrderId 作为幂等键；连接可用时走 WebSocket，确认超时或未连接时用同一个 id 走 REST
+// 订单提交后立即出现在 getOpenOrders 里，收到 trading_update 确认帧后更新状态
+public class OrderGateway {
+    private static final String TAG = "OrderGateway";
+    private static final long SOCKET_ACK_TIMEOUT_MS = 3000;
+    private static OrderGateway instance;
+
+    // 在主线程回调
+    public interface OrderListener {
+        void onOrderUpdated(PendingOrder order);
+    }
+
+    // 提交到确认的耗时统计
+    public static final class PathStats {
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            count.incrementAndGet();
+            totalNanos.addAndGet(nanos);
+            long current;
+            while (nanos > (current = maxNanos.get())) {
+                if (maxNanos.compareAndSet(current, nanos)) {
+                    break;
+                }
+            }
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public long getAverageLatencyMs() {
+            long n = count.get();
+            return n == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalNanos.get() / n);
+        }
+
+        public long getMaxLatencyMs() {
+            return TimeUnit.NANOSECONDS.toMillis(maxNanos.get());
+        }
+    }
+
+    private final ApiService apiService;
+    private final WebSocketManager webSocketManager;
+    private final Map<String, PendingOrder> orders = new ConcurrentHashMap<>();
+    private final Map<String, ScheduledFuture<?>> ackTimeouts = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<OrderListener> listeners = new CopyOnWriteArrayList<>();
+    private final PathStats socketStats = new PathStats();
+    private final PathStats restStats = new PathStats();
+    private final AtomicLong fallbacks = new AtomicLong();
+
+    private OrderGateway(Context context) {
+        this.apiService = ApiService.getInstance(context);
+        this.webSocketManager = WebSocketManager.getInstance();
+        // 确认帧：{"type": "trading_update", "data": {"clientOrderId", "orderId", "status", "reason"}}
+        webSocketManager.subscribe("trading_update", SubscriptionIndex.ANY, this::onTradingUpdate);
+    }
+
+    public static synchronized OrderGateway getInstance(Context context) {
+        if (instance == null) {
+            instance = new OrderGateway(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public void addListener(OrderListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(OrderListener listener) {
+        listeners.remove(listener);
+    }
+
+    // side 为 buy / sell，返回的订单处于 PENDING 状态
+    public PendingOrder submit(String symbol, String side, double amount, double price) {
+        PendingOrder order = new PendingOrder(UUID.randomUUID().toString(), symbol, side,
+                FixedPoint.fromDouble(amount), FixedPoint.fromDouble(price));
+        orders.put(order.getClientOrderId(), order);
+        notifyUpdated(order);
+
+        if (webSocketManager.isConnected() && sendOverSocket(order, amount, price)) {
+            return order;
+        }
+        sendOverRest(order, amount, price);
+        return order;
+    }
+
+    private boolean sendOverSocket(PendingOrder order, double amount, double price) {
+        order.markSent(PendingOrder.Path.SOCKET);
+        if (!webSocketManager.sendTradingOrder(order.getSymbol(), order.getSide(), amount, price,
+                order.getClientOrderId())) {
+            return false;
+        }
+        // 超时未确认时用同一个 clientOrderId 改走 REST，服务端按幂等键去重
+        ackTimeouts.put(order.getClientOrderId(), SharedScheduler.get().schedule(() -> {
+            ackTimeouts.remove(order.getClientOrderId());
+            if (order.getStatus() == PendingOrder.Status.PENDING) {
+                fallbacks.incrementAndGet();
+                Log.w(TAG, "Socket ack timeout, falling back to REST: " + order.getClientOrderId());
+                sendOverRest(order, amount, price);
+            }
+        }, SOCKET_ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS));
+        return true;
+    }
+
+    private void sendOverRest(PendingOrder order, double amount, double price) {
+        order.markSent(PendingOrder.Path.REST);
+        apiService.placeTrade(order.getSymbol(), order.getSide(), amount, price, order.getClientOrderId(),
+                new ApiService.ApiCallback() {
+                    @Override
+                    public void onSuccess(JSONObject response) {
+                        JSONObject data = response.optJSONObject("data");
+                        if (data == null) {
+                            data = response;
+                        }
+                        acknowledge(order, PendingOrder.Path.REST, parseStatus(data.optString("status")),
+                                data.optString("orderId", null), data.optString("reason", null));
+                    }
+
+                    @Override
+                    public void onError(String error) {
+                        // 请求可能已经到达服务端，之后的确认帧仍会更新状态
+                        if (order.getStatus() == PendingOrder.Status.PENDING) {
+                            order.update(PendingOrder.Status.FAILED, null, error);
+                            notifyUpdated(order);
+                        }
+                    }
+                });
+    }
+
+    private void onTradingUpdate(JSONObject message) {
+        JSONObject data = message.optJSONObject("data");
+        if (data == null) {
+            data = message;
+        }
+        String clientOrderId = data.optString("clientOrderId", null);
+        if (clientOrderId == null) {
+            return;
+        }
+        PendingOrder order = orders.get(clientOrderId);
+        if (order == null) {
+            return;
+        }
+        acknowledge(order, PendingOrder.Path.SOCKET, parseStatus(data.optString("status")),
+                data.optString("orderId", null), data.optString("reason", null));
+    }
+
+    private void acknowledge(PendingOrder order, PendingOrder.Path path, PendingOrder.Status status,
+                             String orderId, String reason) {
+        boolean firstAck;
+        synchronized (order) {
+            firstAck = order.getStatus() == PendingOrder.Status.PENDING
+                    || order.getStatus() == PendingOrder.Status.FAILED;
+            // 成交、拒绝之后不再回退到 ACCEPTED
+            if (!firstAck && status == PendingOrder.Status.ACCEPTED) {
+                return;
+            }
+            order.update(status, orderId, reason);
+        }
+        if (firstAck) {
+            ScheduledFuture<?> timeout = ackTimeouts.remove(order.getClientOrderId());
+            if (timeout != null) {
+                timeout.cancel(false);
+            }
+            // 确认来自实际发送的通道时才计入该通道的延迟
+            if (order.getPath() == path) {
+                (path == PendingOrder.Path.SOCKET ? socketStats : restStats)
+                        .record(System.nanoTime() - order.getSentAtNanos());
+            }
+        }
+        if (!order.isOpen()) {
+            orders.remove(order.getClientOrderId());
+        }
+        notifyUpdated(order);
+    }
+
+    private static PendingOrder.Status parseStatus(String status) {
+        switch (status) {
+            case "filled":
+                return PendingOrder.Status.FILLED;
+            case "rejected":
+            case "cancelled":
+                return PendingOrder.Status.REJECTED;
+            default:
+                return PendingOrder.Status.ACCEPTED;
+        }
+    }
+
+    private void notifyUpdated(PendingOrder order) {
+        if (listeners.isEmpty()) {
+            return;
+        }
+        MainThreadDispatcher.get().execute(() -> {
+            for (OrderListener listener : listeners) {
+                listener.onOrderUpdated(order);
+            }
+        });
+    }
+
+    // 尚未完结的订单（包括等待确认和发送失败的），按提交顺序，用于在持仓中乐观展示
+    public List<PendingOrder> getOpenOrders() {
+        return sortBySubmission(new ArrayList<>(orders.values()));
+    }
+
+    public List<PendingOrder> getOpenOrders(String symbol) {
+        List<PendingOrder> result = new ArrayList<>();
+        for (PendingOrder order : orders.values()) {
+            if (order.getSymbol().equals(symbol)) {
+                result.add(order);
+            }
+        }
+        return sortBySubmission(result);
+    }
+
+    private static List<PendingOrder> sortBySubmission(List<PendingOrder> orders) {
+        Collections.sort(orders, (a, b) -> Long.compare(a.getSubmittedAtNanos(), b.getSubmittedAtNanos()));
+        return orders;
+    }
+
+    // 用户确认后移除发送失败的订单
+    public void dismiss(String clientOrderId) {
+        PendingOrder order = orders.get(clientOrderId);
+        if (order != null && order.getStatus() == PendingOrder.Status.FAILED) {
+            orders.remove(clientOrderId);
+            notifyUpdated(order);
+        }
+    }
+
+    public PathStats getSocketStats() {
+        return socketStats;
+    }
+
+    public PathStats getRestStats() {
+        return restStats;
+    }
+
+    // 因 WebSocket 确认超时改走 REST 的次数
+    public long getFallbackCount() {
+        return fallbacks.get();
+    }
+}
@@ -0,0 +1,103 @@
+package com.potatochat.mobile.trading;
+
+// 本地提交的订单：提交后立即可见，收到确认后更新状态
+// 价格和数量使用 FixedPoint 定点数
+public class PendingOrder {
+
+    public enum Status {
+        PENDING,   // 已提交，等待确认
+        ACCEPTED,  // 服务端已接受，尚未成交
+        FILLED,
+        REJECTED,
+        FAILED     // 所有通道都失败；之后仍可能收到确认
+    }
+
+    public enum Path {
+        SOCKET,
+        REST
+    }
+
+    private final String clientOrderId;
+    private final String symbol;
+    private final String side;
+    private final long amount;
+    private final long price;
+    private final long submittedAtNanos;
+    private volatile Status status = Status.PENDING;
+    private volatile Path path;
+    private volatile String orderId;
+    private volatile String error;
+    private volatile long sentAtNanos;
+
+    PendingOrder(String clientOrderId, String symbol, String side, long amount, long price) {
+        this.clientOrderId = clientOrderId;
+        this.symbol = symbol;
+        this.side = side;
+        this.amount = amount;
+        this.price = price;
+        this.submittedAtNanos = System.nanoTime();
+    }
+
+    public String getClientOrderId() {
+        return clientOrderId;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    // buy / sell
+    public String getSide() {
+        return side;
+    }
+
+    public long getAmount() {
+        return amount;
+    }
+
+    public long getPrice() {
+        return price;
+    }
+
+    public Status getStatus() {
+        return status;
+    }
+
+    public boolean isOpen() {
+        return status == Status.PENDING || status == Status.ACCEPTED;
+    }
+
+    // 最后一次发送使用的通道
+    public Path getPath() {
+        return path;
+    }
+
+    public String getOrderId() {
+        return orderId;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    long getSubmittedAtNanos() {
+        return submittedAtNanos;
+    }
+
+    long getSentAtNanos() {
+        return sentAtNanos;
+    }
+
+    void markSent(Path path) {
+        this.path = path;
+        this.sentAtNanos = System.nanoTime();
+    }
+
+    void update(Status status, String orderId, String error) {
+        this.status = status;
+        if (orderId != null) {
+            this.orderId = orderId;
+        }
+        this.error = error;
+    }
+}
@@ -0,0 +1,374 @@
+package com.potatochat.mobile.trading;
+
+import android.content.Context;
+import android.util.Log;
+import com.potatochat.mobile.metrics.Counter;
+import com.potatochat.mobile.metrics.MetricsRegistry;
+import com.potatochat.mobile.models.Quote;
+import com.potatochat.mobile.services.ApiService;
+import com.potatochat.mobile.utils.MainThreadDispatcher;
+import com.potatochat.mobile.utils.MarketDataPipeline;
+import com.potatochat.mobile.utils.SharedScheduler;
+import com.potatochat.mobile.utils.WebSocketManager;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// 本地持仓估值：启动时用 getUserPortfolio 加载一次快照，之后按 MarketDataPipeline 合并后的报价增量重估
+// 持仓交易对在管道上关注，每批报价只重算有变化的持仓，再把差值加到总市值上
+// 金额全部是 FixedPoint 定点数；隔几分钟或成交后用快照对账一次，修正数量、成本和累计误差
+// 快照格式：{"data": {"cash", "positions": [{"symbol", "quantity", "averagePrice", "price"}]}}
+public class PortfolioManager {
+    private static final String TAG = "PortfolioManager";
+    private static final long RECONCILE_INTERVAL_MS = 5 * 60_000;
+    // 成交后服务端更新持仓需要一点时间
+    private static final long FILL_RECONCILE_DELAY_MS = 1000;
+    private static PortfolioManager instance;
+
+    // 在主线程回调，同一帧内的多次变化只回调一次
+    public interface Listener {
+        void onPortfolioChanged(PortfolioManager portfolio);
+    }
+
+    // 单个持仓；数量和成本只在对账时变化，价格和市值随行情变化
+    public static final class Position {
+        private final String symbol;
+        private volatile long quantity;
+        private volatile long cost;
+        private volatile long price;
+        private volatile long marketValue;
+        // 最近一次行情对应的 tickCount，对账时判断快照价格是否比行情旧
+        private long lastTick;
+
+        Position(String symbol) {
+            this.symbol = symbol;
+        }
+
+        public String getSymbol() {
+            return symbol;
+        }
+
+        public long getQuantity() {
+            return quantity;
+        }
+
+        public long getCost() {
+            return cost;
+        }
+
+        public long getPrice() {
+            return price;
+        }
+
+        public long getMarketValue() {
+            return marketValue;
+        }
+
+        public long getUnrealizedPnl() {
+            return marketValue - cost;
+        }
+    }
+
+    private final ApiService apiService;
+    private final WebSocketManager webSocketManager;
+    private final MarketDataPipeline marketData;
+    // 持仓和合计只在持有 this 锁时修改
+    private final Map<String, Position> positions = new HashMap<>();
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final AtomicBoolean notifyPending = new AtomicBoolean(false);
+    private final MainThreadDispatcher mainThread = MainThreadDispatcher.get();
+    private final Counter revaluations = MetricsRegistry.get().counter("portfolio.revaluations");
+    private final Counter reconciles = MetricsRegistry.get().counter("portfolio.reconciles");
+    private volatile long cash;
+    private volatile long totalMarketValue;
+    private volatile long totalCost;
+    private volatile long version;
+    private long tickCount;
+    private String userId;
+    private boolean loading;
+    // 加载期间又请求了对账（例如成交），当前这次完成后再对一次
+    private boolean reconcileAgain;
+    private ScheduledFuture<?> reconcileTimer;
+
+    private PortfolioManager(Context context) {
+        this.apiService = ApiService.getInstance(context);
+        this.webSocketManager = WebSocketManager.getInstance();
+        this.marketData = webSocketManager.getMarketDataPipeline();
+        marketData.addListener(this::onQuotes);
+        // 成交改变了数量和成本，行情推导不出来，需要对账
+        OrderGateway.getInstance(context).addListener(order -> {
+            if (order.getStatus() == PendingOrder.Status.FILLED) {
+                SharedScheduler.get().schedule(this::reconcileNow, FILL_RECONCILE_DELAY_MS, TimeUnit.MILLISECONDS);
+            }
+        });
+    }
+
+    public static synchronized PortfolioManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new PortfolioManager(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    public void addListener(Listener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    // 加载快照并开始跟踪行情；换用户时先清空
+    public synchronized void start(String userId) {
+        if (userId.equals(this.userId)) {
+            return;
+        }
+        stop();
+        this.userId = userId;
+        reconcileNow();
+    }
+
+    public synchronized void stop() {
+        userId = null;
+        if (reconcileTimer != null) {
+            reconcileTimer.cancel(false);
+            reconcileTimer = null;
+        }
+        reconcileAgain = false;
+        for (Position position : positions.values()) {
+            marketData.unwatch(position.symbol);
+        }
+        positions.clear();
+        cash = 0;
+        totalMarketValue = 0;
+        totalCost = 0;
+        version++;
+        // 退出登录后界面不能继续显示上一个用户的持仓
+        notifyChanged();
+    }
+
+    // 立即对账一次，例如下拉刷新时
+    public void reconcileNow() {
+        String requestUserId;
+        long requestTick;
+        synchronized (this) {
+            if (userId == null) {
+                return;
+            }
+            // 正在加载的快照可能早于这次请求的原因，不能直接丢掉
+            if (loading) {
+                reconcileAgain = true;
+                return;
+            }
+            loading = true;
+            requestUserId = userId;
+            requestTick = tickCount;
+            if (reconcileTimer != null) {
+                reconcileTimer.cancel(false);
+                reconcileTimer = null;
+            }
+        }
+        // 成交后缓存里的持仓已经过时
+        apiService.getResponseCache().removeByPrefix("/trading/portfolio/");
+        apiService.getUserPortfolio(requestUserId, new ApiService.ApiCallback() {
+            @Override
+            public void onSuccess(JSONObject response) {
+                JSONObject data = response.optJSONObject("data");
+                applySnapshot(requestUserId, requestTick, data != null ? data : response);
+            }
+
+            @Override
+            public void onError(String error) {
+                Log.w(TAG, "Portfolio reconcile failed: " + error);
+                boolean again;
+                synchronized (PortfolioManager.this) {
+                    loading = false;
+                    again = reconcileAgain;
+                    reconcileAgain = false;
+                    if (!again) {
+                        scheduleReconcile();
+                    }
+                }
+                if (again) {
+                    reconcileNow();
+                }
+            }
+        });
+    }
+
+    private void applySnapshot(String requestUserId, long requestTick, JSONObject snapshot) {
+        List<String> added = new ArrayList<>();
+        boolean userChanged;
+        boolean again;
+        synchronized (this) {
+            loading = false;
+            again = reconcileAgain;
+            reconcileAgain = false;
+            userChanged = !requestUserId.equals(userId);
+            if (!userChanged) {
+                applySnapshotLocked(requestTick, snapshot, added);
+            }
+        }
+        // 请求期间换了用户，旧快照作废，为新用户重新加载
+        if (userChanged) {
+            reconcileNow();
+            return;
+        }
+        if (!added.isEmpty()) {
+            webSocketManager.subscribePriceUpdates(added.toArray(new String[0]));
+        }
+        notifyChanged();
+        if (again) {
+            reconcileNow();
+        }
+    }
+
+    // added 收集新出现的交易对，释放锁后再向服务端订阅
+    private void applySnapshotLocked(long requestTick, JSONObject snapshot, List<String> added) {
+        reconciles.inc();
+        Map<String, Position> previous = new HashMap<>(positions);
+        positions.clear();
+        long value = 0;
+        long cost = 0;
+        JSONArray list = snapshot.optJSONArray("positions");
+        for (int i = 0; list != null && i < list.length(); i++) {
+            JSONObject item = list.optJSONObject(i);
+            String symbol = item != null ? item.optString("symbol", null) : null;
+            if (symbol == null) {
+                continue;
+            }
+            long quantity;
+            long average;
+            long snapshotPrice;
+            try {
+                quantity = FixedPoint.parse(item.get("quantity"));
+                Object averageValue = item.opt("averagePrice");
+                if (averageValue == null) {
+                    averageValue = item.opt("avgPrice");
+                }
+                average = averageValue != null ? FixedPoint.parse(averageValue) : 0;
+                Object priceValue = item.opt("price");
+                snapshotPrice = priceValue != null ? FixedPoint.parse(priceValue) : -1;
+            } catch (Exception e) {
+                Log.w(TAG, "Invalid position for " + symbol, e);
+                continue;
+            }
+            Position position = previous.remove(symbol);
+            if (position == null) {
+                position = new Position(symbol);
+                marketData.watch(symbol);
+                added.add(symbol);
+            }
+            position.quantity = quantity;
+            position.cost = FixedPoint.multiply(quantity, average);
+            // 请求发出后收到的行情比快照里的价格新
+            if (position.lastTick <= requestTick && snapshotPrice >= 0) {
+                position.price = snapshotPrice;
+            }
+            position.marketValue = FixedPoint.multiply(quantity, position.price);
+            positions.put(symbol, position);
+            value += position.marketValue;
+            cost += position.cost;
+        }
+        // 已经清仓的交易对
+        for (Position closed : previous.values()) {
+            marketData.unwatch(closed.symbol);
+        }
+        Object cashValue = snapshot.opt("cash");
+        try {
+            cash = cashValue != null ? FixedPoint.parse(cashValue) : 0;
+        } catch (NumberFormatException e) {
+            Log.w(TAG, "Invalid cash: " + cashValue);
+        }
+        totalMarketValue = value;
+        totalCost = cost;
+        version++;
+        scheduleReconcile();
+    }
+
+    // 管道在调度线程上回调；snapshot 里也有其他页面关注的交易对，只处理持仓中的
+    private void onQuotes(Map<String, Quote> snapshot) {
+        int changed = 0;
+        synchronized (this) {
+            for (Quote quote : snapshot.values()) {
+                Position position = positions.get(quote.getSymbol());
+                if (position == null) {
+                    continue;
+                }
+                position.lastTick = ++tickCount;
+                long price = FixedPoint.fromDouble(quote.getPrice());
+                if (price == position.price) {
+                    continue;
+                }
+                long value = FixedPoint.multiply(position.quantity, price);
+                totalMarketValue += value - position.marketValue;
+                position.price = price;
+                position.marketValue = value;
+                changed++;
+            }
+            if (changed == 0) {
+                return;
+            }
+            version++;
+        }
+        revaluations.add(changed);
+        notifyChanged();
+    }
+
+    private void scheduleReconcile() {
+        if (userId != null) {
+            reconcileTimer = SharedScheduler.get().schedule(this::reconcileNow, RECONCILE_INTERVAL_MS,
+                    TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void notifyChanged() {
+        if (listeners.isEmpty() || !notifyPending.compareAndSet(false, true)) {
+            return;
+        }
+        mainThread.execute(() -> {
+            notifyPending.set(false);
+            for (Listener listener : listeners) {
+                listener.onPortfolioChanged(this);
+            }
+        });
+    }
+
+    public synchronized Position getPosition(String symbol) {
+        return positions.get(symbol);
+    }
+
+    public synchronized List<Position> getPositions() {
+        return Collections.unmodifiableList(new ArrayList<>(positions.values()));
+    }
+
+    public long getCash() {
+        return cash;
+    }
+
+    public long getMarketValue() {
+        return totalMarketValue;
+    }
+
+    // 持仓市值 + 现金
+    public long getTotalValue() {
+        return totalMarketValue + cash;
+    }
+
+    public long getUnrealizedPnl() {
+        return totalMarketValue - totalCost;
+    }
+
+    // 每次变化递增，界面可以据此跳过没有变化的刷新
+    public long getVersion() {
+        return version;
+    }
+}
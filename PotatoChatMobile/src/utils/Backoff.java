@@ -0,0 +1,31 @@
+package com.potatochat.mobile.utils;
+
+import java.util.Random;
+
+// 指数退避 + 全抖动：delay = random(0, min(cap, base * 2^attempt))
+// 抖动让大量客户端在网络恢复后错开重连时间
+public class Backoff {
+    private final long baseDelayMs;
+    private final long maxDelayMs;
+    private final Random random;
+
+    public Backoff(long baseDelayMs, long maxDelayMs) {
+        this(baseDelayMs, maxDelayMs, new Random());
+    }
+
+    public Backoff(long baseDelayMs, long maxDelayMs, Random random) {
+        this.baseDelayMs = baseDelayMs;
+        this.maxDelayMs = maxDelayMs;
+        this.random = random;
+    }
+
+    // attempt 从 0 开始
+    public long delayFor(int attempt) {
+        int shift = Math.min(Math.max(attempt, 0), 30);
+        long ceiling = Math.min(maxDelayMs, baseDelayMs << shift);
+        if (ceiling <= 0) {
+            ceiling = maxDelayMs;
+        }
+        return (long) (random.nextDouble() * ceiling);
+    }
+}
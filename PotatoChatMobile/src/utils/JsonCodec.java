@@ -0,0 +1,105 @@
+package com.potatochat.mobile.utils;
+
+import android.util.JsonReader;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+public class JsonCodec implements MessageCodec {
+    public static final JsonCodec INSTANCE = new JsonCodec();
+
+    @Override
+    public String name() {
+        return "json";
+    }
+
+    @Override
+    public String contentType() {
+        return "application/json";
+    }
+
+    @Override
+    public boolean isBinary() {
+        return false;
+    }
+
+    @Override
+    public byte[] encode(JSONObject message) {
+        return message.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public JSONObject decode(byte[] data, int offset, int length) throws IOException {
+        try {
+            return new JSONObject(new String(data, offset, length, StandardCharsets.UTF_8));
+        } catch (JSONException e) {
+            throw new IOException("Invalid JSON payload", e);
+        }
+    }
+
+    // 用 JsonReader 边读边建 JSONObject，整个响应不会以 String 形式出现在内存中
+    @Override
+    public JSONObject decode(InputStream in) throws IOException {
+        JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        try {
+            return readObject(reader);
+        } catch (JSONException | IllegalStateException e) {
+            throw new IOException("Invalid JSON payload", e);
+        }
+    }
+
+    private static JSONObject readObject(JsonReader reader) throws IOException, JSONException {
+        JSONObject object = new JSONObject();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            object.put(name, readValue(reader));
+        }
+        reader.endObject();
+        return object;
+    }
+
+    private static Object readValue(JsonReader reader) throws IOException, JSONException {
+        switch (reader.peek()) {
+            case BEGIN_OBJECT:
+                return readObject(reader);
+            case BEGIN_ARRAY:
+                JSONArray array = new JSONArray();
+                reader.beginArray();
+                while (reader.hasNext()) {
+                    array.put(readValue(reader));
+                }
+                reader.endArray();
+                return array;
+            case BOOLEAN:
+                return reader.nextBoolean();
+            case NUMBER:
+                return parseNumber(reader.nextString());
+            case NULL:
+                reader.nextNull();
+                return JSONObject.NULL;
+            default:
+                return reader.nextString();
+        }
+    }
+
+    // 与 new JSONObject(String) 的数字类型保持一致：整数优先 Integer / Long，其余 Double
+    private static Object parseNumber(String text) {
+        if (text.indexOf('.') < 0 && text.indexOf('e') < 0 && text.indexOf('E') < 0) {
+            try {
+                long value = Long.parseLong(text);
+                if (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE) {
+                    return (int) value;
+                }
+                return value;
+            } catch (NumberFormatException ignored) {
+                // 超出 long 范围，按 Double 处理
+            }
+        }
+        return Double.valueOf(text);
+    }
+}
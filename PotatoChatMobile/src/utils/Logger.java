@@ -0,0 +1,178 @@
+package com.potatochat.mobile.utils;
+
+import android.util.Log;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 按级别过滤的日志门面：低于全局级别时直接返回，不拼字符串、不调用参数的 toString
+// 输出为 "事件 key=value key=value" 形式；高频事件可按 key 采样，每 N 次只输出一次
+// 默认级别为 INFO，调试包在启动时调低到 DEBUG
+public final class Logger {
+
+    public interface Sink {
+        void write(int level, String tag, String message, Throwable error);
+    }
+
+    // 输出到 logcat
+    public static final Sink LOGCAT = (level, tag, message, error) -> {
+        if (error != null) {
+            message = message + '\n' + Log.getStackTraceString(error);
+        }
+        Log.println(level, tag, message);
+    };
+
+    private static volatile int minLevel = Log.INFO;
+    private static volatile Sink sink = LOGCAT;
+
+    private final String tag;
+    private final Map<String, Sampler> samplers = new ConcurrentHashMap<>();
+
+    // 每 everyN 次放行一次，第一次总是放行
+    private static final class Sampler {
+        final int everyN;
+        final AtomicLong count = new AtomicLong();
+
+        Sampler(int everyN) {
+            this.everyN = everyN;
+        }
+
+        boolean tryAcquire() {
+            return count.getAndIncrement() % everyN == 0;
+        }
+    }
+
+    public Logger(String tag) {
+        this.tag = tag;
+    }
+
+    // android.util.Log 的级别常量，例如 Log.DEBUG
+    public static void setMinLevel(int level) {
+        minLevel = level;
+    }
+
+    public static int getMinLevel() {
+        return minLevel;
+    }
+
+    public static void setSink(Sink newSink) {
+        sink = newSink != null ? newSink : LOGCAT;
+    }
+
+    // key 下的事件每 everyN 次只输出一次；传 1 取消采样
+    public Logger setSampleRate(String key, int everyN) {
+        if (everyN <= 1) {
+            samplers.remove(key);
+        } else {
+            samplers.put(key, new Sampler(everyN));
+        }
+        return this;
+    }
+
+    public boolean isDebugEnabled() {
+        return minLevel <= Log.DEBUG;
+    }
+
+    public boolean isEnabled(int level) {
+        return minLevel <= level;
+    }
+
+    // 调用前应先检查级别，未开启时不会消耗采样计数
+    public boolean sample(String key) {
+        Sampler sampler = key != null ? samplers.get(key) : null;
+        return sampler == null || sampler.tryAcquire();
+    }
+
+    public void d(String event) {
+        if (minLevel <= Log.DEBUG) {
+            sink.write(Log.DEBUG, tag, event, null);
+        }
+    }
+
+    public void d(String event, String key, Object value) {
+        if (minLevel <= Log.DEBUG) {
+            sink.write(Log.DEBUG, tag, format(event, key, value, null, null), null);
+        }
+    }
+
+    // long 重载避免未开启时对基本类型装箱
+    public void d(String event, String key, long value) {
+        if (minLevel <= Log.DEBUG) {
+            sink.write(Log.DEBUG, tag, format(event, key, value, null, null), null);
+        }
+    }
+
+    public void d(String event, String key1, Object value1, String key2, Object value2) {
+        if (minLevel <= Log.DEBUG) {
+            sink.write(Log.DEBUG, tag, format(event, key1, value1, key2, value2), null);
+        }
+    }
+
+    // 按 sampleKey 采样的 debug 日志，用于每帧都会走到的路径
+    public void sampled(String sampleKey, String event, String key, Object value) {
+        if (minLevel <= Log.DEBUG && sample(sampleKey)) {
+            sink.write(Log.DEBUG, tag, format(event, key, value, null, null), null);
+        }
+    }
+
+    public void sampled(String sampleKey, String event, String key, Object value, String key2, long value2) {
+        if (minLevel <= Log.DEBUG && sample(sampleKey)) {
+            sink.write(Log.DEBUG, tag, format(event, key, value, key2, value2), null);
+        }
+    }
+
+    public void i(String event) {
+        if (minLevel <= Log.INFO) {
+            sink.write(Log.INFO, tag, event, null);
+        }
+    }
+
+    public void i(String event, String key, Object value) {
+        if (minLevel <= Log.INFO) {
+            sink.write(Log.INFO, tag, format(event, key, value, null, null), null);
+        }
+    }
+
+    public void i(String event, String key1, Object value1, String key2, Object value2) {
+        if (minLevel <= Log.INFO) {
+            sink.write(Log.INFO, tag, format(event, key1, value1, key2, value2), null);
+        }
+    }
+
+    public void w(String event) {
+        if (minLevel <= Log.WARN) {
+            sink.write(Log.WARN, tag, event, null);
+        }
+    }
+
+    public void w(String event, String key, Object value) {
+        if (minLevel <= Log.WARN) {
+            sink.write(Log.WARN, tag, format(event, key, value, null, null), null);
+        }
+    }
+
+    public void e(String event, Throwable error) {
+        if (minLevel <= Log.ERROR) {
+            sink.write(Log.ERROR, tag, event, error);
+        }
+    }
+
+    public void e(String event, String key, Object value, Throwable error) {
+        if (minLevel <= Log.ERROR) {
+            sink.write(Log.ERROR, tag, format(event, key, value, null, null), error);
+        }
+    }
+
+    private static String format(String event, String key1, Object value1, String key2, Object value2) {
+        StringBuilder text = new StringBuilder(event.length() + 48).append(event);
+        appendField(text, key1, value1);
+        appendField(text, key2, value2);
+        return text.toString();
+    }
+
+    private static void appendField(StringBuilder text, String key, Object value) {
+        if (key != null) {
+            text.append(' ').append(key).append('=').append(value);
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.potatochat.mobile.utils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+import com.potatochat.mobile.metrics.Histogram;
+import com.potatochat.mobile.metrics.MetricsRegistry;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 把后台线程的回调切到主线程执行
+// 同一帧（vsync）内到达的回调只向主线程 post 一次，在下一帧开始时统一执行
+public final class MainThreadDispatcher implements Executor {
+    private static final String TAG = "MainThreadDispatcher";
+    // 单帧内最多执行 8ms，剩余的顺延到下一帧，避免掉帧
+    private static final long FRAME_BUDGET_NANOS = 8_000_000L;
+
+    // 直接在回调所在线程执行
+    public static final Executor IMMEDIATE = Runnable::run;
+
+    private static MainThreadDispatcher instance;
+
+    // 在下一帧开始时执行 drain
+    private final Executor nextFrame;
+    private final Runnable drainTask = this::drain;
+    private final ConcurrentLinkedQueue<Runnable> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+
+    private final AtomicLong posts = new AtomicLong();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong maxBatchSize = new AtomicLong();
+
+    // 每帧执行的回调数和耗时（微秒）
+    private final Histogram batchMetric = MetricsRegistry.get().histogram("main.dispatch.batch");
+    private final Histogram drainMetric = MetricsRegistry.get().histogram("main.dispatch.drain");
+
+    private MainThreadDispatcher() {
+        this(new VsyncExecutor());
+    }
+
+    // 测试传入手动推进的 Executor 代替 Choreographer
+    MainThreadDispatcher(Executor nextFrame) {
+        this.nextFrame = nextFrame;
+        MetricsRegistry.get().gauge("main.dispatch.pending", this::getPendingCount);
+    }
+
+    // 同一时刻只有一个 drain 在排队，FrameCallback 和 post 用的 Runnable 只创建一次
+    private static final class VsyncExecutor implements Executor {
+        private final Handler mainHandler = new Handler(Looper.getMainLooper());
+        private volatile Runnable task;
+        private final Choreographer.FrameCallback frameCallback = frameTimeNanos -> task.run();
+        private final Runnable postFrameCallback = () -> Choreographer.getInstance().postFrameCallback(frameCallback);
+
+        @Override
+        public void execute(Runnable command) {
+            task = command;
+            // Choreographer 是线程相关的，只能在主线程获取
+            if (Looper.myLooper() == Looper.getMainLooper()) {
+                postFrameCallback.run();
+            } else {
+                mainHandler.post(postFrameCallback);
+            }
+        }
+    }
+
+    public static synchronized MainThreadDispatcher get() {
+        if (instance == null) {
+            instance = new MainThreadDispatcher();
+        }
+        return instance;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        pending.add(command);
+        schedule();
+    }
+
+    private void schedule() {
+        if (!scheduled.compareAndSet(false, true)) {
+            return;
+        }
+        posts.incrementAndGet();
+        nextFrame.execute(drainTask);
+    }
+
+    private void drain() {
+        scheduled.set(false);
+        long start = System.nanoTime();
+        long deadline = start + FRAME_BUDGET_NANOS;
+        int count = 0;
+        Runnable command;
+        while ((command = pending.poll()) != null) {
+            try {
+                command.run();
+            } catch (Exception e) {
+                Log.e(TAG, "Callback error", e);
+            }
+            count++;
+            if (System.nanoTime() > deadline) {
+                break;
+            }
+        }
+        delivered.addAndGet(count);
+        updateMax(count);
+        batchMetric.record(count);
+        drainMetric.recordNanos(System.nanoTime() - start);
+        if (!pending.isEmpty()) {
+            schedule();
+        }
+    }
+
+    private void updateMax(long value) {
+        long current;
+        while (value > (current = maxBatchSize.get())) {
+            if (maxBatchSize.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    // 向主线程 post 的次数
+    public long getPostCount() {
+        return posts.get();
+    }
+
+    public long getDeliveredCount() {
+        return delivered.get();
+    }
+
+    // 单帧内执行的最多回调数
+    public long getMaxBatchSize() {
+        return maxBatchSize.get();
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+}
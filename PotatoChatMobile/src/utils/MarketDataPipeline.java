@@ -0,0 +1,172 @@
+package com.potatochat.mobile.utils;
+
+import android.util.Log;
+import com.potatochat.mobile.models.Quote;
+import org.json.JSONObject;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+// 行情合并管道：每个交易对只保留最新报价，按固定间隔把一批快照交给监听器
+public class MarketDataPipeline {
+    private static final String TAG = "MarketDataPipeline";
+    private static final long DEFAULT_FLUSH_INTERVAL_MS = 100;
+
+    public interface MarketDataListener {
+        // snapshot 只包含本批次有更新的交易对
+        void onQuotes(Map<String, Quote> snapshot);
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final CopyOnWriteArrayList<MarketDataListener> listeners = new CopyOnWriteArrayList<>();
+    private final ConcurrentHashMap<String, Integer> watchedSymbols = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<String, Quote> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile long flushIntervalMs = DEFAULT_FLUSH_INTERVAL_MS;
+
+    // 统计：收到 / 未关注丢弃 / 被合并覆盖 / 实际下发 / 批次数
+    private final AtomicLong receivedTicks = new AtomicLong();
+    private final AtomicLong droppedTicks = new AtomicLong();
+    private final AtomicLong conflatedTicks = new AtomicLong();
+    private final AtomicLong deliveredTicks = new AtomicLong();
+    private final AtomicLong deliveredBatches = new AtomicLong();
+
+    public MarketDataPipeline() {
+        this(SharedScheduler.get());
+    }
+
+    public MarketDataPipeline(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    public void addListener(MarketDataListener listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(MarketDataListener listener) {
+        listeners.remove(listener);
+    }
+
+    public void setFlushInterval(long intervalMs) {
+        this.flushIntervalMs = intervalMs;
+    }
+
+    public long getFlushInterval() {
+        return flushIntervalMs;
+    }
+
+    // 关注计数，多个页面可以同时关注同一交易对
+    public void watch(String symbol) {
+        watchedSymbols.merge(symbol, 1, Integer::sum);
+    }
+
+    public void unwatch(String symbol) {
+        watchedSymbols.computeIfPresent(symbol, (key, count) -> count > 1 ? count - 1 : null);
+        if (!watchedSymbols.containsKey(symbol)) {
+            pending.remove(symbol);
+        }
+    }
+
+    public boolean isWatched(String symbol) {
+        return watchedSymbols.containsKey(symbol);
+    }
+
+    public void onTick(JSONObject message) {
+        receivedTicks.incrementAndGet();
+
+        JSONObject data = message.optJSONObject("data");
+        if (data == null) {
+            data = message;
+        }
+        String symbol = data.optString("symbol", message.optString("symbol", null));
+
+        // 没有人关注的交易对尽早丢弃，不构造报价对象
+        if (symbol == null || !watchedSymbols.containsKey(symbol) || !isQuote(data)) {
+            droppedTicks.incrementAndGet();
+            return;
+        }
+
+        if (pending.put(symbol, Quote.fromJson(symbol, data)) != null) {
+            conflatedTicks.incrementAndGet();
+        }
+        scheduleFlush();
+    }
+
+    // 只有成交价帧是行情；深度帧（带 seq）和订单确认帧（带 clientOrderId）原样分发给订阅者
+    public static boolean isQuote(JSONObject data) {
+        return data.has("price") && !data.has("seq") && !data.has("clientOrderId");
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                scheduler.schedule(this::flush, flushIntervalMs, TimeUnit.MILLISECONDS);
+            } catch (Exception e) {
+                flushScheduled.set(false);
+                Log.e(TAG, "Failed to schedule flush", e);
+            }
+        }
+    }
+
+    private void flush() {
+        flushScheduled.set(false);
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        Map<String, Quote> snapshot = new HashMap<>();
+        for (String symbol : pending.keySet()) {
+            Quote quote = pending.remove(symbol);
+            if (quote != null) {
+                snapshot.put(symbol, quote);
+            }
+        }
+        if (snapshot.isEmpty()) {
+            return;
+        }
+
+        deliveredTicks.addAndGet(snapshot.size());
+        deliveredBatches.incrementAndGet();
+        Map<String, Quote> readOnly = Collections.unmodifiableMap(snapshot);
+        for (MarketDataListener listener : listeners) {
+            try {
+                listener.onQuotes(readOnly);
+            } catch (Exception e) {
+                Log.e(TAG, "Market data listener error", e);
+            }
+        }
+    }
+
+    public long getReceivedTicks() {
+        return receivedTicks.get();
+    }
+
+    public long getDroppedTicks() {
+        return droppedTicks.get();
+    }
+
+    public long getConflatedTicks() {
+        return conflatedTicks.get();
+    }
+
+    public long getDeliveredTicks() {
+        return deliveredTicks.get();
+    }
+
+    public long getDeliveredBatches() {
+        return deliveredBatches.get();
+    }
+
+    // 调度线程是共享的，这里只停止下发
+    public void shutdown() {
+        listeners.clear();
+        watchedSymbols.clear();
+        pending.clear();
+    }
+}
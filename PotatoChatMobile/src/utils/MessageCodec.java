@@ -0,0 +1,22 @@
+package com.potatochat.mobile.utils;
+
+import org.json.JSONObject;
+import java.io.IOException;
+import java.io.InputStream;
+
+// 消息编解码接口，ApiService 和 WebSocketManager 共用；JSON 是默认和回退格式
+public interface MessageCodec {
+
+    String name();
+
+    String contentType();
+
+    boolean isBinary();
+
+    byte[] encode(JSONObject message) throws IOException;
+
+    JSONObject decode(byte[] data, int offset, int length) throws IOException;
+
+    // 直接从（已解压的）响应流解码，不先读成 byte[] 或 String
+    JSONObject decode(InputStream in) throws IOException;
+}
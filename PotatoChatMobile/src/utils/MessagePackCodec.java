@@ -0,0 +1,150 @@
+package com.potatochat.mobile.utils;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Iterator;
+
+// MessagePack 编解码：数值（price、amount 等）以二进制数字传输，不经过字符串转换
+public class MessagePackCodec implements MessageCodec {
+    public static final MessagePackCodec INSTANCE = new MessagePackCodec();
+    // double 能精确表示的最大整数 2^53
+    private static final double MAX_EXACT_INTEGER = 9007199254740992.0;
+
+    @Override
+    public String name() {
+        return "msgpack";
+    }
+
+    @Override
+    public String contentType() {
+        return "application/msgpack";
+    }
+
+    @Override
+    public boolean isBinary() {
+        return true;
+    }
+
+    @Override
+    public byte[] encode(JSONObject message) throws IOException {
+        try (MessageBufferPacker packer = MessagePack.newDefaultBufferPacker()) {
+            packObject(packer, message);
+            return packer.toByteArray();
+        }
+    }
+
+    @Override
+    public JSONObject decode(byte[] data, int offset, int length) throws IOException {
+        return decode(MessagePack.newDefaultUnpacker(data, offset, length));
+    }
+
+    @Override
+    public JSONObject decode(InputStream in) throws IOException {
+        return decode(MessagePack.newDefaultUnpacker(in));
+    }
+
+    private static JSONObject decode(MessageUnpacker messageUnpacker) throws IOException {
+        try (MessageUnpacker unpacker = messageUnpacker) {
+            Object value = unpackValue(unpacker);
+            if (!(value instanceof JSONObject)) {
+                throw new IOException("MessagePack payload is not a map");
+            }
+            return (JSONObject) value;
+        } catch (JSONException e) {
+            throw new IOException("Invalid MessagePack payload", e);
+        }
+    }
+
+    private static void packObject(MessagePacker packer, JSONObject object) throws IOException {
+        packer.packMapHeader(object.length());
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            packer.packString(key);
+            packValue(packer, object.opt(key));
+        }
+    }
+
+    private static void packValue(MessagePacker packer, Object value) throws IOException {
+        if (value == null || value == JSONObject.NULL) {
+            packer.packNil();
+        } else if (value instanceof JSONObject) {
+            packObject(packer, (JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            packer.packArrayHeader(array.length());
+            for (int i = 0; i < array.length(); i++) {
+                packValue(packer, array.opt(i));
+            }
+        } else if (value instanceof Boolean) {
+            packer.packBoolean((Boolean) value);
+        } else if (value instanceof Integer || value instanceof Long
+                || value instanceof Short || value instanceof Byte) {
+            packer.packLong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            packNumber(packer, ((Number) value).doubleValue());
+        } else {
+            packer.packString(value.toString());
+        }
+    }
+
+    // 总是用 float64 的话每个数字 9 字节，深度帧反而比 JSON 大
+    // 和 JSON 一样，整数值按整数发送；float32 能精确表示的用 5 字节，其余才用 float64
+    private static void packNumber(MessagePacker packer, double number) throws IOException {
+        if (number == Math.rint(number) && Math.abs(number) < MAX_EXACT_INTEGER) {
+            packer.packLong((long) number);
+        } else if ((float) number == number) {
+            packer.packFloat((float) number);
+        } else {
+            packer.packDouble(number);
+        }
+    }
+
+    private static Object unpackValue(MessageUnpacker unpacker) throws IOException, JSONException {
+        MessageFormat format = unpacker.getNextFormat();
+        switch (format.getValueType()) {
+            case NIL:
+                unpacker.unpackNil();
+                return JSONObject.NULL;
+            case BOOLEAN:
+                return unpacker.unpackBoolean();
+            case INTEGER:
+                long number = unpacker.unpackLong();
+                if (number >= Integer.MIN_VALUE && number <= Integer.MAX_VALUE) {
+                    return (int) number;
+                }
+                return number;
+            case FLOAT:
+                return unpacker.unpackDouble();
+            case STRING:
+                return unpacker.unpackString();
+            case ARRAY:
+                int size = unpacker.unpackArrayHeader();
+                JSONArray array = new JSONArray();
+                for (int i = 0; i < size; i++) {
+                    array.put(unpackValue(unpacker));
+                }
+                return array;
+            case MAP:
+                int entries = unpacker.unpackMapHeader();
+                JSONObject object = new JSONObject();
+                for (int i = 0; i < entries; i++) {
+                    String key = unpacker.unpackString();
+                    object.put(key, unpackValue(unpacker));
+                }
+                return object;
+            default:
+                // BINARY / EXTENSION 在当前协议中不使用
+                unpacker.skipValue();
+                return JSONObject.NULL;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.potatochat.mobile.utils;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.net.NetworkRequest;
+import android.util.Log;
+
+// 监听网络可用性，网络恢复时立即触发重连，而不是等待退避计时
+public class NetworkMonitor {
+    private static final String TAG = "NetworkMonitor";
+
+    public interface Listener {
+        void onNetworkAvailable();
+        void onNetworkLost();
+    }
+
+    private final ConnectivityManager connectivityManager;
+    private final Listener listener;
+    private ConnectivityManager.NetworkCallback callback;
+
+    public NetworkMonitor(Context context, Listener listener) {
+        this.connectivityManager =
+                (ConnectivityManager) context.getApplicationContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        this.listener = listener;
+    }
+
+    public synchronized void start() {
+        if (callback != null || connectivityManager == null) {
+            return;
+        }
+        callback = new ConnectivityManager.NetworkCallback() {
+            @Override
+            public void onAvailable(Network network) {
+                listener.onNetworkAvailable();
+            }
+
+            @Override
+            public void onLost(Network network) {
+                listener.onNetworkLost();
+            }
+        };
+        try {
+            NetworkRequest request = new NetworkRequest.Builder()
+                    .addCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET)
+                    .build();
+            connectivityManager.registerNetworkCallback(request, callback);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to register network callback", e);
+            callback = null;
+        }
+    }
+
+    public synchronized void stop() {
+        if (callback == null) {
+            return;
+        }
+        try {
+            connectivityManager.unregisterNetworkCallback(callback);
+        } catch (Exception e) {
+            Log.e(TAG, "Failed to unregister network callback", e);
+        }
+        callback = null;
+    }
+}
@@ -0,0 +1,316 @@
+package com.potatochat.mobile.utils;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+// WebSocket 发送队列：断线期间暂存消息，重连后按顺序发出
+// 输入状态、已读回执等高频小消息按 房间 合并，可选合并为一个 batch 帧
+public class OutboundQueue {
+
+    public enum OverflowPolicy {
+        BLOCK,       // 阻塞调用方直到有空位或超时
+        DROP_OLDEST, // 丢弃最早的一条
+        FAIL         // 拒绝新消息
+    }
+
+    public interface Sender {
+        boolean send(JSONObject message);
+    }
+
+    // 同一房间只保留最新一条的消息类型
+    private static final Set<String> COALESCED_TYPES =
+            new HashSet<>(Arrays.asList("typing", "read_receipt", "ping"));
+
+    private static final class Entry {
+        JSONObject message;
+        final String coalesceKey;
+        final long enqueuedAtNanos;
+
+        Entry(JSONObject message, String coalesceKey) {
+            this.message = message;
+            this.coalesceKey = coalesceKey;
+            this.enqueuedAtNanos = System.nanoTime();
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<Entry> queue = new ArrayDeque<>();
+    private final Map<String, Entry> pendingByKey = new HashMap<>();
+
+    private final int capacity;
+    private final OverflowPolicy policy;
+    private final long blockTimeoutMs;
+    private volatile boolean batchingEnabled = false;
+    private volatile int maxBatchSize = 20;
+
+    // 统计
+    private int maxDepth;
+    private long coalesced;
+    private long dropped;
+    private long rejected;
+    private long sentFrames;
+    private long sentMessages;
+    private long totalFlushLatencyNanos;
+    private long maxFlushLatencyNanos;
+
+    public OutboundQueue(int capacity, OverflowPolicy policy, long blockTimeoutMs) {
+        this.capacity = capacity;
+        this.policy = policy;
+        this.blockTimeoutMs = blockTimeoutMs;
+    }
+
+    // 仅在服务端支持 batch 帧时开启
+    public void setBatchingEnabled(boolean enabled) {
+        this.batchingEnabled = enabled;
+    }
+
+    public boolean isBatchingEnabled() {
+        return batchingEnabled;
+    }
+
+    public void setMaxBatchSize(int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize;
+    }
+
+    public static boolean isCoalesced(JSONObject message) {
+        return COALESCED_TYPES.contains(message.optString("type"));
+    }
+
+    // 返回 false 表示按溢出策略被拒绝
+    public boolean offer(JSONObject message) throws InterruptedException {
+        String type = message.optString("type");
+        String coalesceKey = COALESCED_TYPES.contains(type)
+                ? type + ":" + message.optString("roomId", "")
+                : null;
+
+        lock.lock();
+        try {
+            if (coalesceKey != null) {
+                Entry existing = pendingByKey.get(coalesceKey);
+                if (existing != null) {
+                    existing.message = message;
+                    coalesced++;
+                    return true;
+                }
+            }
+
+            if (queue.size() >= capacity) {
+                switch (policy) {
+                    case BLOCK:
+                        long remaining = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMs);
+                        while (queue.size() >= capacity) {
+                            if (remaining <= 0) {
+                                rejected++;
+                                return false;
+                            }
+                            remaining = notFull.awaitNanos(remaining);
+                        }
+                        break;
+                    case DROP_OLDEST:
+                        Entry oldest = queue.pollFirst();
+                        if (oldest != null && oldest.coalesceKey != null) {
+                            pendingByKey.remove(oldest.coalesceKey);
+                        }
+                        dropped++;
+                        break;
+                    case FAIL:
+                    default:
+                        rejected++;
+                        return false;
+                }
+            }
+
+            Entry entry = new Entry(message, coalesceKey);
+            queue.addLast(entry);
+            if (coalesceKey != null) {
+                pendingByKey.put(coalesceKey, entry);
+            }
+            maxDepth = Math.max(maxDepth, queue.size());
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 按顺序发送队列中的消息，发送失败时停止并保留剩余消息
+    public int flush(Sender sender) {
+        int sent = 0;
+        lock.lock();
+        try {
+            while (!queue.isEmpty()) {
+                int batchCount = batchingEnabled ? countBatchable() : 0;
+                if (batchCount > 1) {
+                    JSONArray messages = new JSONArray();
+                    Entry[] entries = new Entry[batchCount];
+                    for (int i = 0; i < batchCount; i++) {
+                        entries[i] = queue.pollFirst();
+                        messages.put(entries[i].message);
+                    }
+                    JSONObject batch = new JSONObject();
+                    try {
+                        batch.put("type", "batch");
+                        batch.put("messages", messages);
+                    } catch (Exception e) {
+                        requeue(entries);
+                        break;
+                    }
+                    if (!sender.send(batch)) {
+                        requeue(entries);
+                        break;
+                    }
+                    for (Entry entry : entries) {
+                        onSent(entry);
+                    }
+                    sentFrames++;
+                    sent += batchCount;
+                } else {
+                    Entry entry = queue.peekFirst();
+                    if (!sender.send(entry.message)) {
+                        break;
+                    }
+                    queue.pollFirst();
+                    onSent(entry);
+                    sentFrames++;
+                    sent++;
+                }
+            }
+            if (sent > 0) {
+                notFull.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+        return sent;
+    }
+
+    // 队首连续的可合并小消息数量
+    private int countBatchable() {
+        int count = 0;
+        for (Entry entry : queue) {
+            if (entry.coalesceKey == null || count >= maxBatchSize) {
+                break;
+            }
+            count++;
+        }
+        return count;
+    }
+
+    private void requeue(Entry[] entries) {
+        for (int i = entries.length - 1; i >= 0; i--) {
+            queue.addFirst(entries[i]);
+        }
+    }
+
+    private void onSent(Entry entry) {
+        if (entry.coalesceKey != null) {
+            pendingByKey.remove(entry.coalesceKey);
+        }
+        long latency = System.nanoTime() - entry.enqueuedAtNanos;
+        totalFlushLatencyNanos += latency;
+        maxFlushLatencyNanos = Math.max(maxFlushLatencyNanos, latency);
+        sentMessages++;
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            queue.clear();
+            pendingByKey.clear();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getDepth() {
+        lock.lock();
+        try {
+            return queue.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getMaxDepth() {
+        lock.lock();
+        try {
+            return maxDepth;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCoalescedCount() {
+        lock.lock();
+        try {
+            return coalesced;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDroppedCount() {
+        lock.lock();
+        try {
+            return dropped;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getRejectedCount() {
+        lock.lock();
+        try {
+            return rejected;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSentFrames() {
+        lock.lock();
+        try {
+            return sentFrames;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getSentMessages() {
+        lock.lock();
+        try {
+            return sentMessages;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // 从入队到发出的平均 / 最大延迟
+    public long getAverageFlushLatencyMs() {
+        lock.lock();
+        try {
+            return sentMessages == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(totalFlushLatencyNanos / sentMessages);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getMaxFlushLatencyMs() {
+        lock.lock();
+        try {
+            return TimeUnit.NANOSECONDS.toMillis(maxFlushLatencyNanos);
+        } finally {
+            lock.unlock();
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package com.potatochat.mobile.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+// WebSocket 流量统计
+// 按消息类型记录原始字节数；整条连接的线上字节数（压缩、TLS 之后）由 CountingSocketFactory 记录
+// permessage-deflate 的压缩发生在 OkHttp 内部，拿不到单条消息压缩后的大小，
+// 这里按采样率对部分消息单独做 deflate 估算各类型的压缩率（不含上下文保持，结果偏保守）
+public class PayloadStats {
+
+    public static final class TypeStats {
+        final AtomicLong inMessages = new AtomicLong();
+        final AtomicLong inRawBytes = new AtomicLong();
+        final AtomicLong outMessages = new AtomicLong();
+        final AtomicLong outRawBytes = new AtomicLong();
+        final AtomicLong sampledRawBytes = new AtomicLong();
+        final AtomicLong sampledCompressedBytes = new AtomicLong();
+
+        public long getInboundMessages() {
+            return inMessages.get();
+        }
+
+        public long getInboundRawBytes() {
+            return inRawBytes.get();
+        }
+
+        public long getOutboundMessages() {
+            return outMessages.get();
+        }
+
+        public long getOutboundRawBytes() {
+            return outRawBytes.get();
+        }
+
+        // 压缩后 / 原始，没有样本时返回 1
+        public double getEstimatedCompressionRatio() {
+            long raw = sampledRawBytes.get();
+            return raw == 0 ? 1.0 : (double) sampledCompressedBytes.get() / raw;
+        }
+
+        public long getEstimatedCompressedBytes() {
+            return Math.round((inRawBytes.get() + outRawBytes.get()) * getEstimatedCompressionRatio());
+        }
+    }
+
+    private final ConcurrentHashMap<String, TypeStats> byType = new ConcurrentHashMap<>();
+    private final AtomicLong wireBytesIn = new AtomicLong();
+    private final AtomicLong wireBytesOut = new AtomicLong();
+    private final AtomicInteger sampleCounter = new AtomicInteger();
+    private volatile int sampleEvery = 16;
+    private volatile String negotiatedExtensions;
+
+    // 只在持有 this 锁时使用
+    private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    private final byte[] deflateBuffer = new byte[8192];
+
+    // 每 n 条消息采样一条估算压缩率；0 表示关闭采样
+    public void setSampleEvery(int n) {
+        this.sampleEvery = n;
+    }
+
+    public void recordInbound(String type, String text) {
+        TypeStats stats = statsFor(type);
+        stats.inMessages.incrementAndGet();
+        stats.inRawBytes.addAndGet(utf8Length(text));
+        maybeSample(stats, text, null);
+    }
+
+    public void recordInbound(String type, byte[] data) {
+        TypeStats stats = statsFor(type);
+        stats.inMessages.incrementAndGet();
+        stats.inRawBytes.addAndGet(data.length);
+        maybeSample(stats, null, data);
+    }
+
+    public void recordOutbound(String type, String text) {
+        TypeStats stats = statsFor(type);
+        stats.outMessages.incrementAndGet();
+        stats.outRawBytes.addAndGet(utf8Length(text));
+        maybeSample(stats, text, null);
+    }
+
+    public void recordOutbound(String type, byte[] data) {
+        TypeStats stats = statsFor(type);
+        stats.outMessages.incrementAndGet();
+        stats.outRawBytes.addAndGet(data.length);
+        maybeSample(stats, null, data);
+    }
+
+    void recordWireIn(long bytes) {
+        wireBytesIn.addAndGet(bytes);
+    }
+
+    void recordWireOut(long bytes) {
+        wireBytesOut.addAndGet(bytes);
+    }
+
+    void setNegotiatedExtensions(String extensions) {
+        this.negotiatedExtensions = extensions;
+    }
+
+    // 握手响应中的 Sec-WebSocket-Extensions，未启用压缩时为 null
+    public String getNegotiatedExtensions() {
+        return negotiatedExtensions;
+    }
+
+    public Map<String, TypeStats> getTypeStats() {
+        return Collections.unmodifiableMap(byType);
+    }
+
+    public long getWireBytesIn() {
+        return wireBytesIn.get();
+    }
+
+    public long getWireBytesOut() {
+        return wireBytesOut.get();
+    }
+
+    public long getRawBytesIn() {
+        long total = 0;
+        for (TypeStats stats : byType.values()) {
+            total += stats.inRawBytes.get();
+        }
+        return total;
+    }
+
+    public long getRawBytesOut() {
+        long total = 0;
+        for (TypeStats stats : byType.values()) {
+            total += stats.outRawBytes.get();
+        }
+        return total;
+    }
+
+    public void reset() {
+        byType.clear();
+        wireBytesIn.set(0);
+        wireBytesOut.set(0);
+    }
+
+    private TypeStats statsFor(String type) {
+        String key = type != null && !type.isEmpty() ? type : "unknown";
+        TypeStats stats = byType.get(key);
+        if (stats == null) {
+            stats = byType.computeIfAbsent(key, k -> new TypeStats());
+        }
+        return stats;
+    }
+
+    private void maybeSample(TypeStats stats, String text, byte[] data) {
+        int every = sampleEvery;
+        if (every <= 0 || sampleCounter.incrementAndGet() % every != 0) {
+            return;
+        }
+        byte[] input = data != null ? data : text.getBytes(StandardCharsets.UTF_8);
+        long compressed = 0;
+        synchronized (this) {
+            deflater.reset();
+            deflater.setInput(input);
+            deflater.finish();
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(deflateBuffer);
+            }
+        }
+        stats.sampledRawBytes.addAndGet(input.length);
+        stats.sampledCompressedBytes.addAndGet(compressed);
+    }
+
+    // 不分配内存地计算 UTF-8 字节数
+    static long utf8Length(String text) {
+        long length = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                length++;
+            } else if (c < 0x800) {
+                length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                length += 4;
+                i++;
+            } else {
+                length += 3;
+            }
+        }
+        return length;
+    }
+}
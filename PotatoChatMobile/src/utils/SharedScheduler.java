@@ -0,0 +1,33 @@
+package com.potatochat.mobile.utils;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// 全局共享的定时线程池，心跳、超时、重连、批量刷新都复用它，不再为每个任务新建线程
+public final class SharedScheduler {
+    private static final int POOL_SIZE = 2;
+    private static ScheduledThreadPoolExecutor instance;
+
+    private SharedScheduler() {
+    }
+
+    public static synchronized ScheduledExecutorService get() {
+        if (instance == null || instance.isShutdown()) {
+            instance = new ScheduledThreadPoolExecutor(POOL_SIZE, new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "potato-scheduler-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            // 取消的任务立即移出队列，频繁取消重连 / 超时任务时不会堆积
+            instance.setRemoveOnCancelPolicy(true);
+        }
+        return instance;
+    }
+}
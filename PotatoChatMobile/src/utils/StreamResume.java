@@ -0,0 +1,231 @@
+package com.potatochat.mobile.utils;
+
+import com.potatochat.mobile.metrics.Counter;
+import com.potatochat.mobile.metrics.MetricsRegistry;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+// 断线续传：服务端在入站帧上带 {"stream", "streamSeq"}，例如 "chat:<roomId>"、"market:<symbol>"
+// 这里记录每个流已处理到的序号；重连后发送
+//   {"type": "resume", "sessionId", "maxReplay", "streams": {stream: lastSeq}}
+// 服务端补发缺失的帧，再回 {"type": "resume_ack", "expired": [stream...]}
+// expired 中的流（缺口超过 maxReplay 或服务端已不保留）以及超时未确认的流交给 ResetListener 走 REST 快照
+// 约定服务端先补发再推送实时帧，补发的帧按序号去重
+public class StreamResume {
+    static final int MAX_REPLAY = 1000;
+    private static final long ACK_TIMEOUT_MS = 5000;
+
+    // 流无法续传，需要重新拉取快照；在收帧线程或调度线程上回调
+    public interface ResetListener {
+        void onStreamReset(String stream);
+    }
+
+    private static final class StreamState {
+        // 0 表示还没有基准，下一帧直接作为基准
+        long lastSeq;
+    }
+
+    private static final class Registration {
+        final String prefix;
+        final ResetListener listener;
+
+        Registration(String prefix, ResetListener listener) {
+            this.prefix = prefix;
+            this.listener = listener;
+        }
+    }
+
+    private final ScheduledExecutorService scheduler;
+    private final Map<String, StreamState> streams = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Registration> resetListeners = new CopyOnWriteArrayList<>();
+    private final Counter resumes = MetricsRegistry.get().counter("ws.resume.requests");
+    private final Counter resets = MetricsRegistry.get().counter("ws.resume.resets");
+    private final Counter duplicates = MetricsRegistry.get().counter("ws.resume.duplicates");
+    private final Counter gaps = MetricsRegistry.get().counter("ws.resume.gaps");
+    private volatile String sessionId;
+    private volatile Set<String> pending;
+    private ScheduledFuture<?> ackTimeout;
+
+    public StreamResume() {
+        this(SharedScheduler.get());
+    }
+
+    // scheduler 用于 resume_ack 的超时
+    StreamResume(ScheduledExecutorService scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    // prefix 为流名前缀，例如 "chat:" 或 "chat:" + roomId
+    public void addResetListener(String prefix, ResetListener listener) {
+        resetListeners.add(new Registration(prefix, listener));
+    }
+
+    public void removeResetListener(ResetListener listener) {
+        for (Registration registration : resetListeners) {
+            if (registration.listener == listener) {
+                resetListeners.remove(registration);
+            }
+        }
+    }
+
+    void setSessionId(String sessionId) {
+        this.sessionId = sessionId;
+    }
+
+    // 返回 false 表示重复帧（续传补发和实时推送重叠），应丢弃
+    boolean accept(JSONObject frame) {
+        String stream = frame.optString("stream", null);
+        if (stream == null) {
+            return true;
+        }
+        long seq = frame.optLong("streamSeq", 0);
+        if (seq <= 0) {
+            return true;
+        }
+        StreamState state = streams.get(stream);
+        if (state == null) {
+            state = streams.computeIfAbsent(stream, key -> new StreamState());
+        }
+        boolean gap;
+        synchronized (state) {
+            long last = state.lastSeq;
+            if (last != 0 && seq <= last) {
+                duplicates.inc();
+                return false;
+            }
+            gap = last != 0 && seq > last + 1;
+            state.lastSeq = seq;
+        }
+        // 同一连接内也出现缺口时，该帧照常处理，缺失部分走快照补齐；正在续传的流等 resume_ack 再决定
+        Set<String> waiting = pending;
+        if (gap && (waiting == null || !waiting.contains(stream))) {
+            gaps.inc();
+            notifyReset(stream);
+        }
+        return true;
+    }
+
+    // 没有需要续传的流时返回 null
+    synchronized JSONObject buildResumeRequest() throws JSONException {
+        if (streams.isEmpty()) {
+            return null;
+        }
+        JSONObject positions = new JSONObject();
+        Set<String> requested = new HashSet<>();
+        for (Map.Entry<String, StreamState> entry : streams.entrySet()) {
+            long last;
+            synchronized (entry.getValue()) {
+                last = entry.getValue().lastSeq;
+            }
+            if (last > 0) {
+                positions.put(entry.getKey(), last);
+                requested.add(entry.getKey());
+            }
+        }
+        if (requested.isEmpty()) {
+            return null;
+        }
+        JSONObject request = new JSONObject();
+        request.put("type", "resume");
+        if (sessionId != null) {
+            request.put("sessionId", sessionId);
+        }
+        request.put("maxReplay", MAX_REPLAY);
+        request.put("streams", positions);
+
+        cancelAckTimeout();
+        pending = requested;
+        resumes.inc();
+        ackTimeout = scheduler.schedule(this::onAckTimeout, ACK_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        return request;
+    }
+
+    void onResumeAck(JSONObject ack) {
+        Set<String> expired = new HashSet<>();
+        JSONArray list = ack.optJSONArray("expired");
+        if (list != null) {
+            for (int i = 0; i < list.length(); i++) {
+                expired.add(list.optString(i));
+            }
+        }
+        List<String> reset = new ArrayList<>();
+        synchronized (this) {
+            cancelAckTimeout();
+            if (pending == null) {
+                return;
+            }
+            for (String stream : pending) {
+                if (expired.contains(stream)) {
+                    reset.add(stream);
+                }
+            }
+            pending = null;
+        }
+        resetAll(reset);
+    }
+
+    // 服务端不支持续传或没有响应，按全部过期处理
+    private void onAckTimeout() {
+        List<String> reset;
+        synchronized (this) {
+            ackTimeout = null;
+            if (pending == null) {
+                return;
+            }
+            reset = new ArrayList<>(pending);
+            pending = null;
+        }
+        resetAll(reset);
+    }
+
+    private void resetAll(List<String> reset) {
+        for (String stream : reset) {
+            StreamState state = streams.get(stream);
+            if (state != null) {
+                synchronized (state) {
+                    state.lastSeq = 0;
+                }
+            }
+            notifyReset(stream);
+        }
+    }
+
+    private void notifyReset(String stream) {
+        resets.inc();
+        for (Registration registration : resetListeners) {
+            if (stream.startsWith(registration.prefix)) {
+                registration.listener.onStreamReset(stream);
+            }
+        }
+    }
+
+    private void cancelAckTimeout() {
+        if (ackTimeout != null) {
+            ackTimeout.cancel(false);
+            ackTimeout = null;
+        }
+    }
+
+    // 主动断开或退出登录后不再续传
+    synchronized void clear() {
+        cancelAckTimeout();
+        pending = null;
+        sessionId = null;
+        streams.clear();
+    }
+
+    public int getTrackedStreamCount() {
+        return streams.size();
+    }
+}
@@ -0,0 +1,90 @@
+package com.potatochat.mobile.utils;
+
+import android.util.Log;
+import org.json.JSONObject;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+// 按 消息类型 + key（roomId / symbol / userId）索引的订阅表
+// 分发时只查找感兴趣的订阅者，回调中增删订阅是安全的
+public class SubscriptionIndex {
+    private static final String TAG = "SubscriptionIndex";
+    public static final String ANY = "*";
+
+    public interface MessageSubscriber {
+        void onMessage(JSONObject message);
+    }
+
+    public interface Subscription {
+        void unsubscribe();
+    }
+
+    private final ConcurrentHashMap<String, ConcurrentHashMap<String, CopyOnWriteArrayList<MessageSubscriber>>> index =
+            new ConcurrentHashMap<>();
+
+    // type 或 key 传 ANY 表示订阅全部
+    public Subscription subscribe(String type, String key, MessageSubscriber subscriber) {
+        String indexKey = key != null ? key : ANY;
+        ConcurrentHashMap<String, CopyOnWriteArrayList<MessageSubscriber>> byKey =
+                index.computeIfAbsent(type, t -> new ConcurrentHashMap<>());
+        byKey.compute(indexKey, (k, list) -> {
+            CopyOnWriteArrayList<MessageSubscriber> result = list != null ? list : new CopyOnWriteArrayList<>();
+            result.addIfAbsent(subscriber);
+            return result;
+        });
+        return () -> byKey.computeIfPresent(indexKey, (k, list) -> {
+            list.remove(subscriber);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    // 分发给 type/key 精确匹配、type 匹配任意 key、以及订阅了全部类型的订阅者
+    public void dispatch(String type, String key, JSONObject message) {
+        dispatchExact(type, key, message);
+        if (!ANY.equals(type)) {
+            deliver(index.get(ANY), key, message);
+        }
+    }
+
+    // 只分发给订阅了该类型的订阅者，不包括订阅全部类型的
+    public void dispatchExact(String type, String key, JSONObject message) {
+        deliver(index.get(type), key, message);
+    }
+
+    public int subscriberCount(String type, String key) {
+        ConcurrentHashMap<String, CopyOnWriteArrayList<MessageSubscriber>> byKey = index.get(type);
+        if (byKey == null) {
+            return 0;
+        }
+        CopyOnWriteArrayList<MessageSubscriber> list = byKey.get(key != null ? key : ANY);
+        return list != null ? list.size() : 0;
+    }
+
+    public void clear() {
+        index.clear();
+    }
+
+    private static void deliver(ConcurrentHashMap<String, CopyOnWriteArrayList<MessageSubscriber>> byKey,
+                                String key, JSONObject message) {
+        if (byKey == null) {
+            return;
+        }
+        if (key != null && !ANY.equals(key)) {
+            deliver(byKey.get(key), message);
+        }
+        deliver(byKey.get(ANY), message);
+    }
+
+    private static void deliver(CopyOnWriteArrayList<MessageSubscriber> subscribers, JSONObject message) {
+        if (subscribers == null) {
+            return;
+        }
+        for (MessageSubscriber subscriber : subscribers) {
+            try {
+                subscriber.onMessage(message);
+            } catch (Exception e) {
+                Log.e(TAG, "Subscriber error", e);
+            }
+        }
+    }
+}
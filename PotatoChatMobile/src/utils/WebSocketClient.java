@@ -0,0 +1,130 @@
+package com.potatochat.mobile.utils;
+
+import android.util.Log;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okio.ByteString;
+
+// 基于 OkHttp 的 WebSocket 客户端，回调在 OkHttp 的读线程上执行
+public abstract class WebSocketClient {
+    private static final String TAG = "WebSocketClient";
+    private static OkHttpClient defaultClient;
+
+    private final URI uri;
+    private final OkHttpClient client;
+    private volatile WebSocket socket;
+    private volatile String extensions;
+    private volatile int handshakeStatus;
+
+    public WebSocketClient(URI uri) {
+        this(uri, defaultClient());
+    }
+
+    public WebSocketClient(URI uri, OkHttpClient client) {
+        this.uri = uri;
+        this.client = client;
+    }
+
+    private static synchronized OkHttpClient defaultClient() {
+        if (defaultClient == null) {
+            // 心跳由 WebSocketManager 在应用层处理，读超时必须关闭
+            defaultClient = new OkHttpClient.Builder()
+                    .connectTimeout(10, TimeUnit.SECONDS)
+                    .readTimeout(0, TimeUnit.MILLISECONDS)
+                    .build();
+        }
+        return defaultClient;
+    }
+
+    public abstract void onOpen();
+
+    public abstract void onMessage(String message);
+
+    // 二进制帧，默认忽略
+    public void onMessage(ByteBuffer bytes) {
+    }
+
+    public abstract void onClose(int code, String reason);
+
+    public abstract void onError(Exception ex);
+
+    public void connect() {
+        Request request = new Request.Builder().url(uri.toString()).build();
+        socket = client.newWebSocket(request, new WebSocketListener() {
+            @Override
+            public void onOpen(WebSocket webSocket, Response response) {
+                extensions = response.header("Sec-WebSocket-Extensions");
+                WebSocketClient.this.onOpen();
+            }
+
+            @Override
+            public void onMessage(WebSocket webSocket, String text) {
+                WebSocketClient.this.onMessage(text);
+            }
+
+            @Override
+            public void onMessage(WebSocket webSocket, ByteString bytes) {
+                WebSocketClient.this.onMessage(bytes.asByteBuffer());
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                webSocket.close(code, null);
+            }
+
+            @Override
+            public void onClosed(WebSocket webSocket, int code, String reason) {
+                WebSocketClient.this.onClose(code, reason);
+            }
+
+            @Override
+            public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                if (response != null) {
+                    handshakeStatus = response.code();
+                }
+                Exception error = t instanceof Exception ? (Exception) t : new Exception(t);
+                WebSocketClient.this.onError(error);
+                // 异常断开时 OkHttp 不会回调 onClosed
+                WebSocketClient.this.onClose(1006, t.getMessage());
+            }
+        });
+    }
+
+    // 握手协商出的扩展，例如 permessage-deflate；未协商时为 null
+    public String getExtensions() {
+        return extensions;
+    }
+
+    // 握手失败时服务端返回的 HTTP 状态码，例如令牌失效时为 401；没有响应时为 0
+    public int getHandshakeStatus() {
+        return handshakeStatus;
+    }
+
+    // 返回 false 表示连接已关闭或发送缓冲区已满
+    public boolean send(String text) {
+        WebSocket current = socket;
+        return current != null && current.send(text);
+    }
+
+    public boolean send(byte[] data) {
+        WebSocket current = socket;
+        return current != null && current.send(ByteString.of(data));
+    }
+
+    public void close() {
+        WebSocket current = socket;
+        if (current != null) {
+            try {
+                current.close(1000, null);
+            } catch (Exception e) {
+                Log.e(TAG, "Close error", e);
+            }
+        }
+    }
+}
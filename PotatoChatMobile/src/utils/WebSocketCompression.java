@@ -0,0 +1,49 @@
+package com.potatochat.mobile.utils;
+
+// WebSocket permessage-deflate 配置，在下一次建立连接时生效
+public class WebSocketCompression {
+    private boolean enabled = true;
+    private boolean contextTakeover = true;
+    private long minMessageToCompress = 1024;
+
+    // 关闭后不再在握手中声明 permessage-deflate，服务端也不会压缩下行消息
+    public WebSocketCompression setEnabled(boolean enabled) {
+        this.enabled = enabled;
+        return this;
+    }
+
+    // 上下文保持：同一连接的多条消息共用压缩字典，重复的 JSON 字段名压缩效果更好，
+    // 代价是双方各多占用一个滑动窗口的内存
+    public WebSocketCompression setContextTakeover(boolean contextTakeover) {
+        this.contextTakeover = contextTakeover;
+        return this;
+    }
+
+    // 小于该字节数的上行消息不压缩
+    public WebSocketCompression setMinMessageToCompress(long bytes) {
+        this.minMessageToCompress = bytes;
+        return this;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isContextTakeover() {
+        return contextTakeover;
+    }
+
+    public long getMinMessageToCompress() {
+        return minMessageToCompress;
+    }
+
+    // 握手请求中的 Sec-WebSocket-Extensions，关闭时返回 null
+    String extensionHeader() {
+        if (!enabled) {
+            return null;
+        }
+        return contextTakeover
+                ? "permessage-deflate"
+                : "permessage-deflate; client_no_context_takeover; server_no_context_takeover";
+    }
+}
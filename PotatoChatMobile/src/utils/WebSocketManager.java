@@ -1,25 +1,77 @@
 package com.potatochat.mobile.utils;
 
-import android.util.Log;
+import android.content.Context;
+import com.potatochat.mobile.metrics.Counter;
+import com.potatochat.mobile.metrics.Histogram;
+import com.potatochat.mobile.metrics.MetricsRegistry;
+import com.potatochat.mobile.models.ChatMessage;
+import com.potatochat.mobile.storage.ChatMessageStore;
+import org.json.JSONArray;
 import org.json.JSONObject;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
 import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Map;
 
 public class WebSocketManager {
-    private static final String TAG = "WebSocketManager";
+    // 行情和心跳帧频率高，debug 日志按类型采样
+    private static final Logger log = new Logger("WebSocketManager")
+            .setSampleRate("trading_update", 100)
+            .setSampleRate("ping", 10)
+            .setSampleRate("pong", 10);
     private static final String WS_URL = "wss://ws.potatochat.com/v1";
     private static WebSocketManager instance;
     
-    private WebSocketClient webSocket;
-    private boolean isConnected = false;
-    private boolean shouldReconnect = true;
-    private int reconnectAttempts = 0;
-    private static final int MAX_RECONNECT_ATTEMPTS = 5;
-    private static final long RECONNECT_DELAY = 3000; // 3秒
+    private volatile WebSocketClient webSocket;
+    private volatile boolean isConnected = false;
+    private volatile boolean shouldReconnect = false;
+    private volatile int reconnectAttempts = 0;
+    private volatile String authToken;
+    private volatile TokenProvider tokenProvider;
+    private static final long HEARTBEAT_INTERVAL_MS = 30000; // 30秒
+    private static final long PONG_TIMEOUT_MS = 10000; // 10秒内未收到 pong 视为连接已断
+    private static final long BATCH_LINGER_MS = 20;
+    private final Backoff reconnectBackoff;
     
-    private List<WebSocketListener> listeners = new ArrayList<>();
+    // CopyOnWriteArrayList：回调中增删监听器不会抛 ConcurrentModificationException
+    private final CopyOnWriteArrayList<WebSocketListener> listeners = new CopyOnWriteArrayList<>();
+    private final SubscriptionIndex subscriptions = new SubscriptionIndex();
+    private final Map<WebSocketListener, Registration> registrations = new ConcurrentHashMap<>();
+    private volatile ChatMessageStore messageStore;
+    private final MarketDataPipeline marketDataPipeline = new MarketDataPipeline();
+    private final String url;
+    private final ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> heartbeatFuture;
+    private ScheduledFuture<?> pongTimeoutFuture;
+    private ScheduledFuture<?> reconnectFuture;
+    private NetworkMonitor networkMonitor;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+    private volatile boolean binaryCodecEnabled = false;
+    private volatile MessageCodec outboundCodec = JsonCodec.INSTANCE;
+    private volatile WebSocketCompression compression = new WebSocketCompression();
+    private final PayloadStats payloadStats = new PayloadStats();
+    private final StreamResume streamResume;
+    private OkHttpClient socketClient;
+    private volatile OutboundQueue outboundQueue =
+            new OutboundQueue(1000, OutboundQueue.OverflowPolicy.FAIL, 0);
+    private volatile long connectStartNanos;
+
+    // 指标：ws.connect 为握手耗时，ws.dispatch 为一帧从收到到全部处理完的耗时，单位微秒
+    private final Counter connectsMetric = MetricsRegistry.get().counter("ws.connects");
+    private final Counter disconnectsMetric = MetricsRegistry.get().counter("ws.disconnects");
+    private final Counter reconnectsMetric = MetricsRegistry.get().counter("ws.reconnects");
+    private final Counter framesInMetric = MetricsRegistry.get().counter("ws.frames_in");
+    private final Counter decodeErrorsMetric = MetricsRegistry.get().counter("ws.decode_errors");
+    private final Histogram connectMetric = MetricsRegistry.get().histogram("ws.connect");
+    private final Histogram dispatchMetric = MetricsRegistry.get().histogram("ws.dispatch");
 
     public interface WebSocketListener {
         void onConnected();
@@ -28,8 +80,66 @@ public class WebSocketManager {
         void onError(String error);
     }
 
+    // 令牌来源，和 HTTP 请求共用；每次建立连接时读取最新令牌
+    public interface TokenProvider {
+        String getAccessToken();
+
+        // 握手返回 401
+        void onTokenRejected(String rejectedToken);
+    }
+
+    private static final class Registration {
+        final WebSocketListener target;
+        final SubscriptionIndex.Subscription subscription;
+
+        Registration(WebSocketListener target, SubscriptionIndex.Subscription subscription) {
+            this.target = target;
+            this.subscription = subscription;
+        }
+    }
+
+    // 在指定线程上回调监听器
+    private static final class DeliveringListener implements WebSocketListener {
+        private final WebSocketListener listener;
+        private final Executor delivery;
+
+        DeliveringListener(WebSocketListener listener, Executor delivery) {
+            this.listener = listener;
+            this.delivery = delivery;
+        }
+
+        @Override
+        public void onConnected() {
+            delivery.execute(listener::onConnected);
+        }
+
+        @Override
+        public void onDisconnected() {
+            delivery.execute(listener::onDisconnected);
+        }
+
+        @Override
+        public void onMessage(JSONObject message) {
+            delivery.execute(() -> listener.onMessage(message));
+        }
+
+        @Override
+        public void onError(String error) {
+            delivery.execute(() -> listener.onError(error));
+        }
+    }
+
     private WebSocketManager() {
-        // 私有构造函数
+        this(WS_URL, SharedScheduler.get(), new Backoff(1000, 60000));
+    }
+
+    // 测试时连接本地服务端，心跳和重连计时交给假时钟，退避使用固定的抖动
+    WebSocketManager(String url, ScheduledExecutorService scheduler, Backoff reconnectBackoff) {
+        this.url = url;
+        this.scheduler = scheduler;
+        this.reconnectBackoff = reconnectBackoff;
+        this.streamResume = new StreamResume(scheduler);
+        MetricsRegistry.get().gauge("ws.outbound.depth", () -> outboundQueue.getDepth());
     }
 
     public static synchronized WebSocketManager getInstance() {
@@ -39,33 +149,237 @@ public class WebSocketManager {
         return instance;
     }
 
+    // 通过 addListener 注册的监听器接收连接事件和所有类型的消息（行情除外）
     public void addListener(WebSocketListener listener) {
-        if (!listeners.contains(listener)) {
-            listeners.add(listener);
+        addListener(listener, MainThreadDispatcher.IMMEDIATE);
+    }
+
+    // delivery 指定回调线程，例如 MainThreadDispatcher.get() 在主线程按帧合并回调
+    public void addListener(WebSocketListener listener, Executor delivery) {
+        synchronized (registrations) {
+            if (registrations.containsKey(listener)) {
+                return;
+            }
+            WebSocketListener target = delivery == MainThreadDispatcher.IMMEDIATE
+                    ? listener
+                    : new DeliveringListener(listener, delivery);
+            listeners.add(target);
+            registrations.put(listener, new Registration(target,
+                    subscriptions.subscribe(SubscriptionIndex.ANY, SubscriptionIndex.ANY, target::onMessage)));
         }
     }
 
     public void removeListener(WebSocketListener listener) {
-        listeners.remove(listener);
+        synchronized (registrations) {
+            Registration registration = registrations.remove(listener);
+            if (registration != null) {
+                listeners.remove(registration.target);
+                registration.subscription.unsubscribe();
+            }
+        }
+    }
+
+    // 按消息类型和 key 订阅，例如 ("chat_message", roomId)、("user_status", userId)
+    // key 传 null 表示该类型的全部消息
+    public SubscriptionIndex.Subscription subscribe(String type, String key,
+                                                    SubscriptionIndex.MessageSubscriber subscriber) {
+        return subscriptions.subscribe(type, key, subscriber);
+    }
+
+    public SubscriptionIndex.Subscription subscribe(String type, String key,
+                                                    SubscriptionIndex.MessageSubscriber subscriber,
+                                                    Executor delivery) {
+        if (delivery == MainThreadDispatcher.IMMEDIATE) {
+            return subscriptions.subscribe(type, key, subscriber);
+        }
+        return subscriptions.subscribe(type, key,
+                message -> delivery.execute(() -> subscriber.onMessage(message)));
+    }
+
+    // permessage-deflate 配置，下次建立连接时生效
+    public synchronized void setCompression(WebSocketCompression compression) {
+        this.compression = compression;
+        socketClient = null;
+    }
+
+    public WebSocketCompression getCompression() {
+        return compression;
+    }
+
+    // 按消息类型的原始字节数和连接的线上字节数
+    // 断线续传；无法续传的流通过 addResetListener 注册的回调改走 REST 快照
+    public StreamResume getStreamResume() {
+        return streamResume;
+    }
+
+    public PayloadStats getPayloadStats() {
+        return payloadStats;
+    }
+
+    private synchronized OkHttpClient socketClient() {
+        if (socketClient == null) {
+            WebSocketCompression config = compression;
+            String extensionHeader = config.extensionHeader();
+            // 心跳由应用层处理，读超时必须关闭
+            socketClient = new OkHttpClient.Builder()
+                    .connectTimeout(10, TimeUnit.SECONDS)
+                    .readTimeout(0, TimeUnit.MILLISECONDS)
+                    .socketFactory(new CountingSocketFactory(payloadStats))
+                    .minWebSocketMessageToCompress(config.isEnabled() ? config.getMinMessageToCompress() : Long.MAX_VALUE)
+                    // OkHttp 默认总是声明 permessage-deflate，这里按配置改写或去掉
+                    .addInterceptor(chain -> {
+                        Request request = chain.request();
+                        if (request.header("Sec-WebSocket-Extensions") == null) {
+                            return chain.proceed(request);
+                        }
+                        Request.Builder builder = request.newBuilder();
+                        if (extensionHeader == null) {
+                            builder.removeHeader("Sec-WebSocket-Extensions");
+                        } else {
+                            builder.header("Sec-WebSocket-Extensions", extensionHeader);
+                        }
+                        return chain.proceed(builder.build());
+                    })
+                    .build();
+        }
+        return socketClient;
+    }
+
+    // 收到的聊天消息同时写入本地存储
+    public void setMessageStore(ChatMessageStore messageStore) {
+        this.messageStore = messageStore;
+    }
+
+    // 行情更新不再广播给所有监听器，通过该管道按交易对合并后批量下发
+    public MarketDataPipeline getMarketDataPipeline() {
+        return marketDataPipeline;
     }
 
+    // 发送队列，可替换为不同容量或溢出策略的实例
+    public OutboundQueue getOutboundQueue() {
+        return outboundQueue;
+    }
+
+    public void setOutboundQueue(OutboundQueue outboundQueue) {
+        this.outboundQueue = outboundQueue;
+    }
+
+    // 请求服务端使用 MessagePack 二进制帧；服务端发来二进制帧后才切换发送格式，否则保持 JSON
+    public void setBinaryCodecEnabled(boolean enabled) {
+        this.binaryCodecEnabled = enabled;
+        if (!enabled) {
+            outboundCodec = JsonCodec.INSTANCE;
+        }
+    }
+
+    public MessageCodec getOutboundCodec() {
+        return outboundCodec;
+    }
+
+    // 网络恢复时立即重连，不必等待退避计时
+    public synchronized void attachNetworkMonitor(Context context) {
+        if (networkMonitor != null) {
+            return;
+        }
+        networkMonitor = new NetworkMonitor(context, new NetworkMonitor.Listener() {
+            @Override
+            public void onNetworkAvailable() {
+                if (shouldReconnect && !isConnected) {
+                    log.d("Network available, reconnecting now");
+                    cancelReconnect();
+                    reconnectAttempts = 0;
+                    scheduler.execute(() -> openConnection(currentToken()));
+                }
+            }
+
+            @Override
+            public void onNetworkLost() {
+                log.d("Network lost");
+            }
+        });
+        networkMonitor.start();
+    }
+
+    // 设置了 TokenProvider 时 authToken 只在取不到令牌时使用
     public void connect(String authToken) {
+        this.authToken = authToken;
+        shouldReconnect = true;
+        openConnection(currentToken());
+    }
+
+    public void connect() {
+        connect(null);
+    }
+
+    public void setTokenProvider(TokenProvider tokenProvider) {
+        this.tokenProvider = tokenProvider;
+    }
+
+    private String currentToken() {
+        TokenProvider provider = tokenProvider;
+        String token = provider != null ? provider.getAccessToken() : null;
+        return token != null ? token : authToken;
+    }
+
+    // 令牌变化后调用：已连接的会话不受影响；未连上时立即用新令牌重连，令牌被清除时断开
+    public void onAuthTokenChanged(String token) {
+        if (token == null) {
+            if (tokenProvider != null) {
+                disconnect();
+            }
+            return;
+        }
+        if (shouldReconnect && !isConnected) {
+            cancelReconnect();
+            reconnectAttempts = 0;
+            openConnection(token);
+        }
+    }
+
+    private synchronized void openConnection(String authToken) {
         if (isConnected) {
-            Log.d(TAG, "WebSocket already connected");
+            log.d("WebSocket already connected");
+            return;
+        }
+        if (authToken == null) {
+            log.w("No auth token, not connecting");
             return;
         }
 
         try {
-            URI uri = URI.create(WS_URL + "?token=" + authToken);
-            webSocket = new WebSocketClient(uri) {
+            String url = this.url + "?token=" + authToken;
+            if (binaryCodecEnabled) {
+                url += "&codec=" + MessagePackCodec.INSTANCE.name();
+            }
+            URI uri = URI.create(url);
+            WebSocketClient previous = webSocket;
+            webSocket = null;
+            if (previous != null) {
+                previous.close();
+            }
+            connectStartNanos = System.nanoTime();
+            webSocket = new WebSocketClient(uri, socketClient()) {
                 @Override
                 public void onOpen() {
-                    Log.d(TAG, "WebSocket connected");
+                    if (webSocket != this) {
+                        return;
+                    }
+                    log.i("WebSocket connected", "extensions", getExtensions());
+                    connectsMetric.inc();
+                    connectMetric.recordNanos(System.nanoTime() - connectStartNanos);
+                    payloadStats.setNegotiatedExtensions(getExtensions());
                     isConnected = true;
                     reconnectAttempts = 0;
+                    outboundCodec = JsonCodec.INSTANCE;
                     
                     // 发送心跳
                     startHeartbeat();
+
+                    // 续传请求要先于排队的消息发出
+                    sendResumeRequest(this);
+
+                    // 发出断线期间排队的消息
+                    flushOutbound();
                     
                     // 通知监听器
                     for (WebSocketListener listener : listeners) {
@@ -75,97 +389,238 @@ public class WebSocketManager {
 
                 @Override
                 public void onMessage(String message) {
-                    Log.d(TAG, "WebSocket message received: " + message);
+                    if (webSocket != this) {
+                        return;
+                    }
+                    long start = System.nanoTime();
+                    framesInMetric.inc();
                     try {
                         JSONObject jsonMessage = new JSONObject(message);
-                        
-                        // 处理不同类型的消息
-                        String type = jsonMessage.optString("type");
-                        switch (type) {
-                            case "chat_message":
-                                handleChatMessage(jsonMessage);
-                                break;
-                            case "trading_update":
-                                handleTradingUpdate(jsonMessage);
-                                break;
-                            case "user_status":
-                                handleUserStatus(jsonMessage);
-                                break;
-                            case "system_notification":
-                                handleSystemNotification(jsonMessage);
-                                break;
-                            default:
-                                // 通知所有监听器
-                                for (WebSocketListener listener : listeners) {
-                                    listener.onMessage(jsonMessage);
-                                }
-                                break;
-                        }
+                        payloadStats.recordInbound(jsonMessage.optString("type"), message);
+                        handleFrame(jsonMessage);
                     } catch (Exception e) {
-                        Log.e(TAG, "Error parsing WebSocket message", e);
+                        decodeErrorsMetric.inc();
+                        log.e("Error parsing WebSocket message", "bytes", message.length(), e);
                     }
+                    dispatchMetric.recordNanos(System.nanoTime() - start);
                 }
 
                 @Override
-                public void onClose(int code, String reason) {
-                    Log.d(TAG, "WebSocket closed: " + code + " - " + reason);
-                    isConnected = false;
-                    stopHeartbeat();
-                    
-                    // 通知监听器
-                    for (WebSocketListener listener : listeners) {
-                        listener.onDisconnected();
+                public void onMessage(ByteBuffer bytes) {
+                    if (webSocket != this) {
+                        return;
                     }
-                    
-                    // 尝试重连
-                    if (shouldReconnect && reconnectAttempts < MAX_RECONNECT_ATTEMPTS) {
-                        scheduleReconnect(authToken);
+                    long start = System.nanoTime();
+                    framesInMetric.inc();
+                    try {
+                        byte[] data = new byte[bytes.remaining()];
+                        bytes.get(data);
+                        JSONObject jsonMessage = MessagePackCodec.INSTANCE.decode(data, 0, data.length);
+                        payloadStats.recordInbound(jsonMessage.optString("type"), data);
+                        // 服务端已使用二进制帧，之后发送也切换为 MessagePack
+                        if (binaryCodecEnabled) {
+                            outboundCodec = MessagePackCodec.INSTANCE;
+                        }
+                        handleFrame(jsonMessage);
+                    } catch (Exception e) {
+                        decodeErrorsMetric.inc();
+                        log.e("Error decoding binary WebSocket message", e);
                     }
+                    dispatchMetric.recordNanos(System.nanoTime() - start);
+                }
+
+                @Override
+                public void onClose(int code, String reason) {
+                    log.i("WebSocket closed", "code", code, "reason", reason);
+                    handleConnectionLost(this);
                 }
 
                 @Override
                 public void onError(Exception ex) {
-                    Log.e(TAG, "WebSocket error", ex);
+                    log.e("WebSocket error", ex);
+                    TokenProvider provider = tokenProvider;
+                    if (getHandshakeStatus() == 401 && provider != null) {
+                        provider.onTokenRejected(authToken);
+                    }
                     
                     // 通知监听器
                     for (WebSocketListener listener : listeners) {
                         listener.onError(ex.getMessage());
                     }
+
+                    // 握手失败时可能收不到 onClose
+                    if (!isConnected) {
+                        handleConnectionLost(this);
+                    }
                 }
             };
 
             webSocket.connect();
             
         } catch (Exception e) {
-            Log.e(TAG, "Failed to connect WebSocket", e);
+            log.e("Failed to connect WebSocket", e);
             for (WebSocketListener listener : listeners) {
                 listener.onError(e.getMessage());
             }
+            if (shouldReconnect) {
+                scheduleReconnect();
+            }
+        }
+    }
+
+    // 处理不同类型的消息
+    private void handleFrame(JSONObject jsonMessage) {
+        String type = jsonMessage.optString("type");
+        log.sampled(type, "Received", "type", type);
+        if (!streamResume.accept(jsonMessage)) {
+            return;
+        }
+        switch (type) {
+            case "pong":
+                onPong();
+                break;
+            case "session":
+                streamResume.setSessionId(jsonMessage.optString("sessionId", null));
+                break;
+            case "resume_ack":
+                streamResume.onResumeAck(jsonMessage);
+                break;
+            case "chat_message":
+                handleChatMessage(jsonMessage);
+                break;
+            case "trading_update":
+                handleTradingUpdate(jsonMessage);
+                break;
+            case "user_status":
+                handleUserStatus(jsonMessage);
+                break;
+            case "system_notification":
+                handleSystemNotification(jsonMessage);
+                break;
+            default:
+                subscriptions.dispatch(type, null, jsonMessage);
+                break;
+        }
+    }
+
+    // 连接断开（关闭、握手失败或心跳超时），只处理当前连接的回调
+    private void handleConnectionLost(WebSocketClient socket) {
+        boolean wasConnected;
+        synchronized (this) {
+            if (webSocket != socket) {
+                return;
+            }
+            wasConnected = isConnected;
+            isConnected = false;
+            stopHeartbeat();
+        }
+
+        if (wasConnected) {
+            disconnectsMetric.inc();
+            // 通知监听器
+            for (WebSocketListener listener : listeners) {
+                listener.onDisconnected();
+            }
+        }
+
+        // 尝试重连
+        if (shouldReconnect) {
+            scheduleReconnect();
         }
     }
 
     public void disconnect() {
         shouldReconnect = false;
-        stopHeartbeat();
-        
-        if (webSocket != null) {
-            webSocket.close();
-            webSocket = null;
+        cancelReconnect();
+        streamResume.clear();
+
+        synchronized (this) {
+            stopHeartbeat();
+            if (webSocket != null) {
+                WebSocketClient socket = webSocket;
+                webSocket = null;
+                socket.close();
+            }
+            isConnected = false;
         }
-        
-        isConnected = false;
     }
 
-    public void sendMessage(JSONObject message) {
+    // 消息先进入发送队列；未连接时暂存，重连后按顺序发出。返回 false 表示队列拒收
+    public boolean sendMessage(JSONObject message) {
+        try {
+            if (!outboundQueue.offer(message)) {
+                log.w("Outbound queue full, message rejected", "type", message.optString("type"));
+                return false;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+
         if (isConnected && webSocket != null) {
-            try {
-                webSocket.send(message.toString());
-                Log.d(TAG, "Message sent: " + message.toString());
-            } catch (Exception e) {
-                Log.e(TAG, "Failed to send message", e);
+            // 可合并的小消息稍等片刻，让同一批次一起发出
+            if (outboundQueue.isBatchingEnabled() && OutboundQueue.isCoalesced(message)) {
+                scheduleFlush();
+            } else {
+                flushOutbound();
+            }
+        }
+        return true;
+    }
+
+    private void sendResumeRequest(WebSocketClient socket) {
+        try {
+            JSONObject request = streamResume.buildResumeRequest();
+            if (request != null) {
+                log.i("Resuming streams", "count", streamResume.getTrackedStreamCount());
+                // 握手后还没有收到二进制帧，此时总是 JSON
+                socket.send(request.toString());
             }
-        } else {
-            Log.w(TAG, "WebSocket not connected, message not sent");
+        } catch (Exception e) {
+            log.e("Failed to send resume request", e);
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            scheduler.schedule(() -> {
+                flushScheduled.set(false);
+                flushOutbound();
+            }, BATCH_LINGER_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void flushOutbound() {
+        WebSocketClient socket = webSocket;
+        if (!isConnected || socket == null) {
+            return;
+        }
+        outboundQueue.flush(message -> sendFrame(socket, message));
+    }
+
+    private boolean sendFrame(WebSocketClient socket, JSONObject message) {
+        try {
+            MessageCodec codec = outboundCodec;
+            String type = message.optString("type");
+            if (codec.isBinary()) {
+                byte[] data = codec.encode(message);
+                if (!socket.send(data)) {
+                    return false;
+                }
+                payloadStats.recordOutbound(type, data);
+                log.sampled(type, "Sent", "type", type, "bytes", data.length);
+            } else {
+                String text = message.toString();
+                if (!socket.send(text)) {
+                    return false;
+                }
+                payloadStats.recordOutbound(type, text);
+                log.sampled(type, "Sent", "type", type, "chars", text.length());
+            }
+            return true;
+        } catch (Exception e) {
+            log.e("Failed to send message", e);
+            return false;
         }
     }
 
@@ -181,24 +636,32 @@ public class WebSocketManager {
             
             sendMessage(message);
         } catch (Exception e) {
-            Log.e(TAG, "Failed to create chat message", e);
+            log.e("Failed to create chat message", e);
         }
     }
 
-    // 发送交易订单
-    public void sendTradingOrder(String symbol, String orderType, double amount, double price) {
+    // 带幂等键的下单帧，由 OrderGateway 调用；未连接或发送失败时返回 false，由调用方改走 REST。
+    // 下单帧不进发送队列，否则重连后重放会和 REST 重试各下一单
+    public boolean sendTradingOrder(String symbol, String orderType, double amount, double price,
+                                    String clientOrderId) {
+        WebSocketClient socket = webSocket;
+        if (!isConnected || socket == null) {
+            return false;
+        }
         try {
             JSONObject message = new JSONObject();
             message.put("type", "trading_order");
+            message.put("clientOrderId", clientOrderId);
             message.put("symbol", symbol);
             message.put("orderType", orderType);
             message.put("amount", amount);
             message.put("price", price);
             message.put("timestamp", System.currentTimeMillis());
-            
-            sendMessage(message);
+
+            return sendFrame(socket, message);
         } catch (Exception e) {
-            Log.e(TAG, "Failed to create trading order", e);
+            log.e("Failed to create trading order", e);
+            return false;
         }
     }
 
@@ -211,105 +674,129 @@ public class WebSocketManager {
             
             sendMessage(message);
         } catch (Exception e) {
-            Log.e(TAG, "Failed to subscribe price updates", e);
+            log.e("Failed to subscribe price updates", e);
         }
     }
 
     // 处理聊天消息
     private void handleChatMessage(JSONObject message) {
-        Log.d(TAG, "Handling chat message: " + message.toString());
-        
-        // 通知监听器
-        for (WebSocketListener listener : listeners) {
-            listener.onMessage(message);
+        ChatMessageStore store = messageStore;
+        if (store != null) {
+            store.insertAsync(ChatMessage.fromJson(message));
         }
+
+        subscriptions.dispatch("chat_message", message.optString("roomId", null), message);
     }
 
-    // 处理交易更新
+    // 处理交易更新：成交价只进合并管道，界面按批次拿最新报价；深度帧和订单确认帧只发给按 trading_update 显式订阅的订阅者
     private void handleTradingUpdate(JSONObject message) {
-        Log.d(TAG, "Handling trading update: " + message.toString());
-        
-        // 通知监听器
-        for (WebSocketListener listener : listeners) {
-            listener.onMessage(message);
+        JSONObject data = message.optJSONObject("data");
+        if (data == null) {
+            data = message;
         }
+        if (MarketDataPipeline.isQuote(data)) {
+            marketDataPipeline.onTick(message);
+            return;
+        }
+        subscriptions.dispatchExact("trading_update", data.optString("symbol", message.optString("symbol", null)),
+                message);
     }
 
     // 处理用户状态
     private void handleUserStatus(JSONObject message) {
-        Log.d(TAG, "Handling user status: " + message.toString());
-        
-        // 通知监听器
-        for (WebSocketListener listener : listeners) {
-            listener.onMessage(message);
-        }
+        subscriptions.dispatch("user_status", message.optString("userId", null), message);
     }
 
     // 处理系统通知
     private void handleSystemNotification(JSONObject message) {
-        Log.d(TAG, "Handling system notification: " + message.toString());
-        
-        // 通知监听器
-        for (WebSocketListener listener : listeners) {
-            listener.onMessage(message);
+        subscriptions.dispatch("system_notification", null, message);
+    }
+
+    // 心跳机制：定时发送 ping，超时未收到 pong 则判定连接已断
+    private synchronized void startHeartbeat() {
+        stopHeartbeat();
+        heartbeatFuture = scheduler.scheduleWithFixedDelay(this::sendHeartbeat,
+                HEARTBEAT_INTERVAL_MS, HEARTBEAT_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void stopHeartbeat() {
+        if (heartbeatFuture != null) {
+            heartbeatFuture.cancel(false);
+            heartbeatFuture = null;
+        }
+        if (pongTimeoutFuture != null) {
+            pongTimeoutFuture.cancel(false);
+            pongTimeoutFuture = null;
         }
     }
 
-    // 心跳机制
-    private Runnable heartbeatRunnable;
-    private Thread heartbeatThread;
+    private void sendHeartbeat() {
+        if (!isConnected) {
+            return;
+        }
+        try {
+            JSONObject ping = new JSONObject();
+            ping.put("type", "ping");
+            ping.put("timestamp", System.currentTimeMillis());
+            sendMessage(ping);
+        } catch (Exception e) {
+            log.e("Heartbeat error", e);
+            return;
+        }
 
-    private void startHeartbeat() {
-        stopHeartbeat();
-        
-        heartbeatRunnable = new Runnable() {
-            @Override
-            public void run() {
-                while (isConnected && !Thread.currentThread().isInterrupted()) {
-                    try {
-                        JSONObject ping = new JSONObject();
-                        ping.put("type", "ping");
-                        ping.put("timestamp", System.currentTimeMillis());
-                        sendMessage(ping);
-                        
-                        Thread.sleep(30000); // 30秒心跳
-                    } catch (InterruptedException e) {
-                        Thread.currentThread().interrupt();
-                        break;
-                    } catch (Exception e) {
-                        Log.e(TAG, "Heartbeat error", e);
-                        break;
-                    }
-                }
+        synchronized (this) {
+            if (pongTimeoutFuture == null) {
+                WebSocketClient socket = webSocket;
+                pongTimeoutFuture = scheduler.schedule(() -> onPongTimeout(socket),
+                        PONG_TIMEOUT_MS, TimeUnit.MILLISECONDS);
             }
-        };
-        
-        heartbeatThread = new Thread(heartbeatRunnable);
-        heartbeatThread.start();
+        }
+    }
+
+    private synchronized void onPong() {
+        if (pongTimeoutFuture != null) {
+            pongTimeoutFuture.cancel(false);
+            pongTimeoutFuture = null;
+        }
     }
 
-    private void stopHeartbeat() {
-        if (heartbeatThread != null && heartbeatThread.isAlive()) {
-            heartbeatThread.interrupt();
-            heartbeatThread = null;
+    private void onPongTimeout(WebSocketClient socket) {
+        log.w("Pong timeout, connection considered dead");
+        synchronized (this) {
+            pongTimeoutFuture = null;
+        }
+        handleConnectionLost(socket);
+        if (socket != null) {
+            socket.close();
         }
     }
 
-    // 重连机制
-    private void scheduleReconnect(String authToken) {
+    // 重连机制：指数退避 + 全抖动，不设次数上限；网络恢复时由 NetworkMonitor 立即触发
+    private synchronized void scheduleReconnect() {
+        if (reconnectFuture != null && !reconnectFuture.isDone()) {
+            return;
+        }
+        long delay = reconnectBackoff.delayFor(reconnectAttempts);
         reconnectAttempts++;
-        Log.d(TAG, "Scheduling reconnect attempt " + reconnectAttempts);
-        
-        new Thread(() -> {
-            try {
-                Thread.sleep(RECONNECT_DELAY * reconnectAttempts);
-                if (shouldReconnect) {
-                    connect(authToken);
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+        reconnectsMetric.inc();
+        log.d("Scheduling reconnect", "attempt", reconnectAttempts, "delayMs", delay);
+
+        reconnectFuture = scheduler.schedule(() -> {
+            // 先清掉自己：新连接可能在本任务返回前就断开，那时要能安排下一次重连
+            synchronized (this) {
+                reconnectFuture = null;
             }
-        }).start();
+            if (shouldReconnect) {
+                openConnection(currentToken());
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private synchronized void cancelReconnect() {
+        if (reconnectFuture != null) {
+            reconnectFuture.cancel(false);
+            reconnectFuture = null;
+        }
     }
 
     public boolean isConnected() {
@@ -324,7 +811,16 @@ public class WebSocketManager {
     public void cleanup() {
         shouldReconnect = false;
         disconnect();
+        synchronized (this) {
+            if (networkMonitor != null) {
+                networkMonitor.stop();
+                networkMonitor = null;
+            }
+        }
         listeners.clear();
+        registrations.clear();
+        subscriptions.clear();
+        outboundQueue.clear();
     }
 }
 